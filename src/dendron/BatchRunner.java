@@ -0,0 +1,431 @@
+package dendron;
+
+import dendron.machine.BinaryFormat;
+import dendron.machine.CompiledProgram;
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+import dendron.machine.PeepholeOptimizer;
+import dendron.tree.ParseTree;
+import dendron.tree.Tokenizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Run many Dendron programs in one JVM, several at a time.
+ * Each program is assembled (.denm), loaded (.denb) or parsed and
+ * compiled (.txt), then executed by a Machine of its own whose output
+ * goes to a buffer of its own, so programs running at the same time
+ * never see each other's state. The outputs are written in the order
+ * the programs were listed, no matter which finished first, so they
+ * are the same from run to run and match what InstructionReader would
+ * have written for each file.
+ *
+ * The programs come from a directory, in file name order, or from a
+ * manifest: a text file naming one program per line, relative to the
+ * manifest's directory, with blank lines and lines starting with "#"
+ * ignored.
+ *
+ * A program that Errors.report stops does not stop the others. Its
+ * result holds what it wrote before the error, and the error itself.
+ * The same goes for a program whose file cannot be read or that fails
+ * inside Dendron itself, as a DendronServer request would with the
+ * type INTERNAL.
+ *
+ * @author William Johnson
+ */
+public class BatchRunner {
+
+    /** the kinds of file this runner knows how to run */
+    private static final List< String > EXTENSIONS =
+            List.of( ".denm", ".denb", ".txt" );
+
+    /**
+     * What running one program produced.
+     */
+    public static final class Result {
+        /** the program's file */
+        private final Path path;
+        /** everything the program's Machine wrote */
+        private final byte[] output;
+        /** the warnings the program's assembler wrote */
+        private final byte[] warnings;
+        /** how long it took to prepare and run the program */
+        private final long nanos;
+        /** the error that stopped the program, or null */
+        private final Throwable error;
+
+        /**
+         * Record the result of running one program.
+         * @param path the program's file
+         * @param output the program's output
+         * @param warnings the program's assembler warnings
+         * @param nanos its latency in nanoseconds
+         * @param error the error that stopped the program, or null if
+         *              it ran to the end
+         */
+        Result( Path path, byte[] output, byte[] warnings, long nanos,
+                Throwable error ) {
+            this.path = path;
+            this.output = output;
+            this.warnings = warnings;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        /**
+         * Show which program this is the result of
+         * @return the program's file
+         */
+        public Path getPath() {
+            return this.path;
+        }
+
+        /**
+         * Show what the program wrote
+         * @return the program's output, which must not be modified
+         */
+        public byte[] getOutput() {
+            return this.output;
+        }
+
+        /**
+         * Show what the assembler reported about malformed lines
+         * @return the program's warnings, which must not be modified
+         */
+        public byte[] getWarnings() {
+            return this.warnings;
+        }
+
+        /**
+         * Show how long the program took, from reading its file to the
+         * end of its symbol table dump
+         * @return the latency in nanoseconds
+         */
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        /**
+         * Show what error, if any, stopped the program: a
+         * DendronException, an IOException if its file could not be
+         * read, or anything else that went wrong inside Dendron
+         * @return the error, or null if the program ran to the end
+         */
+        public Throwable getError() {
+            return this.error;
+        }
+
+        /**
+         * Describe the error that stopped the program, starting with
+         * the program's file
+         * @return the error's message, or null if the program ran to the end
+         */
+        public String getErrorMessage() {
+            if ( this.error == null ) {
+                return null;
+            }
+            if ( this.error instanceof IOException ) {
+                // already names the file
+                return this.error.getMessage();
+            }
+            if ( this.error instanceof DendronException ) {
+                return this.path + ": " + this.error.getMessage();
+            }
+            if ( this.error instanceof StackOverflowError ) {
+                return this.path + ": expression nested too deeply: " + this.error;
+            }
+            return this.path + ": " + this.error;
+        }
+    }
+
+    /** the threads the programs run on */
+    private final ForkJoinPool pool;
+    /** whether to run the PeepholeOptimizer over assembled code */
+    private final boolean optimize;
+
+    /**
+     * Create a runner.
+     *
+     * @param threads how many programs to run at once
+     * @param optimize whether to run the PeepholeOptimizer over
+     *                 assembled and compiled code, as with
+     *                 InstructionReader -O
+     */
+    public BatchRunner( int threads, boolean optimize ) {
+        this.pool = new ForkJoinPool( threads );
+        this.optimize = optimize;
+    }
+
+    /**
+     * Find the programs to run.
+     *
+     * @param location a directory of programs, or a manifest file
+     * @return the programs' files, in the order their outputs are written
+     * @throws IOException if the directory or manifest cannot be read
+     */
+    public static List< Path > programs( Path location ) throws IOException {
+        if ( Files.isDirectory( location ) ) {
+            try ( Stream< Path > files = Files.list( location ) ) {
+                return files.filter( BatchRunner::isProgram )
+                        .sorted()
+                        .collect( Collectors.toList() );
+            }
+        }
+        Path dir = location.toAbsolutePath().getParent();
+        List< Path > result = new ArrayList<>();
+        for ( String line: Files.readAllLines( location ) ) {
+            line = line.trim();
+            if ( !line.isEmpty() && !line.startsWith( "#" ) ) {
+                result.add( dir.resolve( line ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tell whether a file has the name of a program this runner can run.
+     * @param file the file
+     * @return true for .denm, .denb and .txt files
+     */
+    private static boolean isProgram( Path file ) {
+        String name = file.getFileName().toString();
+        return EXTENSIONS.stream().anyMatch( name::endsWith );
+    }
+
+    /**
+     * Run programs, all at once as far as the pool allows.
+     *
+     * @param programs the programs' files
+     * @return the results, in the same order as the programs
+     * @throws IOException if interrupted while waiting for them
+     */
+    public List< Result > run( List< Path > programs ) throws IOException {
+        List< Future< Result > > futures = new ArrayList<>( programs.size() );
+        for ( Path program: programs ) {
+            futures.add( this.pool.submit( () -> runOne( program ) ) );
+        }
+        List< Result > results = new ArrayList<>( programs.size() );
+        try {
+            for ( Future< Result > future: futures ) {
+                results.add( future.get() );
+            }
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "interrupted", e );
+        }
+        catch ( ExecutionException e ) {
+            // only errors that leave the JVM unusable get this far
+            if ( e.getCause() instanceof Error ) {
+                throw ( Error ) e.getCause();
+            }
+            throw new IllegalStateException( e.getCause() );
+        }
+        return results;
+    }
+
+    /**
+     * Stop the runner's threads once the programs given so far are done.
+     */
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * Prepare and run one program in a Machine of its own.
+     *
+     * @param program the program's file
+     * @return what the program wrote, how long it took, and the error
+     *         that stopped it, if any
+     */
+    private Result runOne( Path program ) {
+        long start = System.nanoTime();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream warningBytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream( bytes );
+        PrintStream warnings = new PrintStream( warningBytes );
+        Throwable error = null;
+        try {
+            runOne( program, new Machine( out ), warnings );
+        }
+        catch ( DendronException | IOException e ) {
+            error = e;
+        }
+        catch ( VirtualMachineError e ) {
+            if ( !( e instanceof StackOverflowError ) ) {
+                // out of memory or worse: the JVM itself may be unusable
+                throw e;
+            }
+            // the stack unwinds to here, so only this program is lost
+            error = e;
+        }
+        catch ( RuntimeException | Error e ) {
+            // a failure in Dendron itself must not lose the other results
+            error = e;
+        }
+        out.flush();
+        warnings.flush();
+        return new Result( program, bytes.toByteArray(),
+                warningBytes.toByteArray(), System.nanoTime() - start, error );
+    }
+
+    /**
+     * Prepare and run one program.
+     *
+     * @param program the program's file
+     * @param machine the Machine to run it in
+     * @param warnings where the assembler reports malformed lines
+     * @throws IOException if the file cannot be read
+     */
+    private void runOne( Path program, Machine machine, PrintStream warnings )
+            throws IOException {
+        String name = program.toString();
+        if ( name.endsWith( ".denb" ) && !this.optimize ) {
+            machine.execute( BinaryFormat.load( program ) );
+        }
+        else {
+            List< Machine.Instruction > code;
+            if ( name.endsWith( ".denb" ) ) {
+                code = BinaryFormat.load( program ).getInstructions();
+            }
+            else if ( name.endsWith( ".txt" ) ) {
+                code = compile( program );
+            }
+            else {
+                code = InstructionReader.assemble( name, warnings );
+            }
+            if ( this.optimize ) {
+                code = new PeepholeOptimizer().optimize( code );
+            }
+            machine.execute( new CompiledProgram( code ) );
+        }
+    }
+
+    /**
+     * Parse and compile a Dendron source file.
+     *
+     * @param source the file
+     * @return the compiled Machine instructions
+     * @throws IOException if the file cannot be read
+     */
+    private static List< Machine.Instruction > compile( Path source )
+            throws IOException {
+        List< String > tokens = new ArrayList<>();
+        try ( Reader in = Files.newBufferedReader( source ) ) {
+            new Tokenizer( in ).forEachRemaining( tokens::add );
+        }
+        return new ParseTree( tokens ).compile();
+    }
+
+    /**
+     * Find a latency percentile.
+     *
+     * @param sorted latencies in increasing order
+     * @param percent which percentile, from 0 to 100
+     * @return the latency at or below which that percentage fall
+     */
+    static long percentile( long[] sorted, double percent ) {
+        if ( sorted.length == 0 ) {
+            return 0;
+        }
+        int index = ( int ) Math.ceil( percent / 100 * sorted.length ) - 1;
+        return sorted[ Math.max( 0, Math.min( sorted.length - 1, index ) ) ];
+    }
+
+    /**
+     * Run every program in a directory or manifest. Each program's output
+     * is written to standard output after a header line naming it, or,
+     * with -d, to a file of the same name ending in ".out" in the given
+     * directory. Throughput and latency percentiles go to standard error,
+     * as do the errors that stopped any of the programs; if there were
+     * any, the exit status is {@link Errors#DENDRON_ABORT}.
+     *
+     * @param args optionally -O, -t and a thread count, and -d and an
+     *             output directory, then the directory or manifest
+     * @throws IOException if a program or the output cannot be written
+     */
+    public static void main( String[] args ) throws IOException {
+        boolean optimize = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path outDir = null;
+        int arg = 0;
+        for ( ; arg < args.length - 1; ++arg ) {
+            if ( args[ arg ].equals( "-O" ) ) {
+                optimize = true;
+            }
+            else if ( args[ arg ].equals( "-t" ) && arg + 2 < args.length ) {
+                threads = Integer.parseInt( args[ ++arg ] );
+            }
+            else if ( args[ arg ].equals( "-d" ) && arg + 2 < args.length ) {
+                outDir = Paths.get( args[ ++arg ] );
+            }
+            else {
+                break;
+            }
+        }
+        if ( arg != args.length - 1 ) {
+            System.err.println( "Usage: java BatchRunner [-O] [-t threads] "
+                    + "[-d output-directory] directory-or-manifest" );
+            System.exit( 1 );
+        }
+        List< Path > programs = programs( Paths.get( args[ arg ] ) );
+        BatchRunner runner = new BatchRunner( threads, optimize );
+        long start = System.nanoTime();
+        List< Result > results = runner.run( programs );
+        long elapsed = System.nanoTime() - start;
+        runner.shutdown();
+
+        if ( outDir != null ) {
+            Files.createDirectories( outDir );
+        }
+        int failed = 0;
+        for ( Result result: results ) {
+            System.err.write( result.getWarnings() );
+            if ( result.getError() != null ) {
+                System.err.println( result.getErrorMessage() );
+                ++failed;
+            }
+            if ( outDir == null ) {
+                System.out.println( "==> " + result.getPath() + " <==" );
+                System.out.write( result.getOutput() );
+            }
+            else {
+                String name = result.getPath().getFileName().toString();
+                name = name.substring( 0, name.lastIndexOf( '.' ) ) + ".out";
+                Files.write( outDir.resolve( name ), result.getOutput() );
+            }
+        }
+        System.out.flush();
+
+        long[] latencies = new long[ results.size() ];
+        for ( int i = 0; i < latencies.length; ++i ) {
+            latencies[ i ] = results.get( i ).getNanos();
+        }
+        Arrays.sort( latencies );
+        System.err.printf( "%d programs on %d threads in %.3f s: %.1f programs/s%n",
+                results.size(), threads, elapsed / 1e9,
+                results.size() / Math.max( elapsed / 1e9, 1e-9 ) );
+        System.err.printf( "latency (us): p50 %.1f  p90 %.1f  p99 %.1f  max %.1f%n",
+                percentile( latencies, 50 ) / 1e3, percentile( latencies, 90 ) / 1e3,
+                percentile( latencies, 99 ) / 1e3, percentile( latencies, 100 ) / 1e3 );
+        if ( failed > 0 ) {
+            System.err.printf( "%d of %d programs stopped with an error%n",
+                    failed, results.size() );
+            System.exit( Errors.DENDRON_ABORT );
+        }
+    }
+}
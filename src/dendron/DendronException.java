@@ -0,0 +1,53 @@
+package dendron;
+
+/**
+ * A Dendron program error, thrown by {@link Errors#report} so that one
+ * bad program does not have to stop the whole JVM. The command-line
+ * programs catch it and stop with {@link Errors#DENDRON_ABORT} after
+ * printing the same message they always have; a long-lived caller such
+ * as {@link DendronServer} reports it and carries on.
+ *
+ * These errors are in the program being run, not in the code that runs
+ * it, so no stack trace is recorded; that keeps throwing one as cheap
+ * as possible.
+ *
+ * @author William Johnson
+ */
+public class DendronException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** the kind of error */
+    private final Errors.Type type;
+    /** the additional value printed after the error, or null */
+    private final transient Object info;
+
+    /**
+     * Create an exception for a Dendron program error.
+     *
+     * @param type the kind of error
+     * @param info if not null, an additional value to be printed after a colon
+     */
+    public DendronException( Errors.Type type, Object info ) {
+        super( info == null ? type.getMessage() : type.getMessage() + ": " + info,
+                null, false, false );
+        this.type = type;
+        this.info = info;
+    }
+
+    /**
+     * Show what kind of error this is
+     * @return the error's type
+     */
+    public Errors.Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Show the additional value that was reported with the error
+     * @return the value, or null if there was none
+     */
+    public Object getInfo() {
+        return this.info;
+    }
+}
@@ -0,0 +1,524 @@
+package dendron;
+
+import dendron.machine.Assembler;
+import dendron.machine.CompiledProgram;
+import dendron.machine.Machine;
+import dendron.machine.PeepholeOptimizer;
+import dendron.tree.CompileCache;
+import dendron.tree.ParseTree;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived Dendron service, so that running a program costs neither
+ * a JVM start nor a cold JIT compiler. Programs arrive on standard input
+ * or, with -s, over a Unix domain socket, as requests of this form:
+ *
+ * <pre>
+ * source | assembly
+ * the program, on any number of lines
+ * .
+ * </pre>
+ *
+ * Each program is compiled or assembled and run in a Machine of its
+ * own, writing to buffers of its own, so requests never see each
+ * other's variables or output, even when several connections are
+ * served at once. Compiled source is kept in a {@link CompileCache}, so
+ * a program sent again is not compiled again. The reply holds what the
+ * program would have written had it been run on its own from the
+ * command line:
+ *
+ * <pre>
+ * ok | error output-length diagnostics-length [error-type]
+ * output-length bytes of output
+ * diagnostics-length bytes of diagnostics
+ * </pre>
+ *
+ * An error that would have stopped the JVM stops only its own request;
+ * its message ends the diagnostics, and the name of its
+ * {@link Errors.Type} ends the header. A request this server cannot
+ * read has the error type BAD_REQUEST. One that fails inside Dendron
+ * itself has the type INTERNAL, such as an expression nested too
+ * deeply for the compiler's stack. Only errors that leave the JVM
+ * unusable, such as running out of memory, stop the server.
+ *
+ * The request "stats" is answered, as output, with the throughput and
+ * latency percentiles of the most recent requests. The same report is
+ * written to standard error when the server stops and, with -r, every
+ * so many seconds.
+ *
+ * @author William Johnson
+ */
+public class DendronServer {
+
+    /** the request for Dendron source code */
+    public static final String SOURCE = "source";
+
+    /** the request for Dendron machine assembly code */
+    public static final String ASSEMBLY = "assembly";
+
+    /** the request for the server's statistics */
+    public static final String STATS = "stats";
+
+    /** the line that ends a program */
+    public static final String END = ".";
+
+    /** the error type of a request that could not be understood */
+    public static final String BAD_REQUEST = "BAD_REQUEST";
+
+    /** the error type of a failure in Dendron itself */
+    public static final String INTERNAL = "INTERNAL";
+
+    /** how many of the most recent requests the statistics cover */
+    private static final int WINDOW = 10_000;
+
+    /**
+     * What running one request produced.
+     */
+    public static final class Reply {
+        /** the type of the error that stopped the request, or null */
+        private final String error;
+        /** what the program wrote to its output */
+        private final byte[] output;
+        /** the warnings and error message the program caused */
+        private final byte[] diagnostics;
+
+        /**
+         * Record the result of one request.
+         * @param error the type of the error that stopped the request,
+         *              or null if it ran to the end
+         * @param output the program's output
+         * @param diagnostics the program's warnings and error message
+         */
+        Reply( String error, byte[] output, byte[] diagnostics ) {
+            this.error = error;
+            this.output = output;
+            this.diagnostics = diagnostics;
+        }
+
+        /**
+         * Show what kind of error, if any, stopped the request
+         * @return the name of an Errors.Type, BAD_REQUEST or INTERNAL,
+         *         or null if the program ran to the end
+         */
+        public String getError() {
+            return this.error;
+        }
+
+        /**
+         * Show what the program wrote
+         * @return the output, which must not be modified
+         */
+        public byte[] getOutput() {
+            return this.output;
+        }
+
+        /**
+         * Show what the program would have written on standard error
+         * @return the diagnostics, which must not be modified
+         */
+        public byte[] getDiagnostics() {
+            return this.diagnostics;
+        }
+
+        /**
+         * Send the reply in the form described by {@link DendronServer}.
+         * @param out where to write it
+         * @throws IOException if it cannot be written
+         */
+        void write( OutputStream out ) throws IOException {
+            String header = ( this.error == null ? "ok " : "error " )
+                    + this.output.length + " " + this.diagnostics.length
+                    + ( this.error == null ? "" : " " + this.error ) + "\n";
+            out.write( header.getBytes( StandardCharsets.US_ASCII ) );
+            out.write( this.output );
+            out.write( this.diagnostics );
+        }
+    }
+
+    /**
+     * The latencies of the most recent requests, and totals since the
+     * server started.
+     */
+    private static final class Statistics {
+        /** the latency of each recent request, oldest overwritten first */
+        private final long[] latencies;
+        /** when each recent request finished, from System.nanoTime */
+        private final long[] finished;
+        /** when the server started */
+        private final long started;
+        /** how many requests have been served */
+        private long requests;
+        /** how many requests stopped with an error */
+        private long errors;
+
+        /**
+         * Start with no requests.
+         */
+        Statistics() {
+            this.latencies = new long[ WINDOW ];
+            this.finished = new long[ WINDOW ];
+            this.started = System.nanoTime();
+        }
+
+        /**
+         * Add a request that has been served.
+         * @param nanos how long it took, from reading it to replying
+         * @param failed whether it stopped with an error
+         */
+        synchronized void record( long nanos, boolean failed ) {
+            int i = ( int ) ( this.requests % WINDOW );
+            this.latencies[ i ] = nanos;
+            this.finished[ i ] = System.nanoTime();
+            ++this.requests;
+            if ( failed ) {
+                ++this.errors;
+            }
+        }
+
+        /**
+         * Describe the throughput and latency of the requests so far.
+         * @return one line of text, without a line separator
+         */
+        synchronized String report() {
+            double seconds = ( System.nanoTime() - this.started ) / 1e9;
+            int recent = ( int ) Math.min( this.requests, WINDOW );
+            long[] sorted = Arrays.copyOf( this.latencies, recent );
+            Arrays.sort( sorted );
+            // the rate of the recent requests is measured between the
+            // first and last of them, so idle time before them is not counted
+            double rate = 0;
+            if ( recent > 1 ) {
+                long first = this.finished[ ( int ) ( ( this.requests - recent ) % WINDOW ) ];
+                long last = this.finished[ ( int ) ( ( this.requests - 1 ) % WINDOW ) ];
+                rate = ( recent - 1 ) / Math.max( ( last - first ) / 1e9, 1e-9 );
+            }
+            return String.format( "%d requests (%d errors) in %.1f s; last %d: "
+                            + "%.1f requests/s, latency (us) p50 %.1f  p99 %.1f  max %.1f",
+                    this.requests, this.errors, seconds, recent, rate,
+                    BatchRunner.percentile( sorted, 50 ) / 1e3,
+                    BatchRunner.percentile( sorted, 99 ) / 1e3,
+                    BatchRunner.percentile( sorted, 100 ) / 1e3 );
+        }
+    }
+
+    /** the threads that serve socket connections */
+    private final ExecutorService pool;
+    /** whether to run the PeepholeOptimizer over the code */
+    private final boolean optimize;
+    /** compiled source programs, or null if they are not kept */
+    private final CompileCache cache;
+    /** the requests served so far */
+    private final Statistics statistics;
+    /** the socket being listened on, or null */
+    private volatile ServerSocketChannel listener;
+
+    /**
+     * Create a server.
+     *
+     * @param threads how many socket connections to serve at once; any
+     *                more wait for one of them to close
+     * @param optimize whether to run the PeepholeOptimizer over
+     *                 assembled and compiled code, as with
+     *                 InstructionReader -O
+     * @param capacity how many instructions of compiled source to keep,
+     *                 or 0 to compile every source program afresh
+     * @throws IOException if the cache cannot be created
+     */
+    public DendronServer( int threads, boolean optimize, long capacity )
+            throws IOException {
+        this.pool = Executors.newFixedThreadPool( threads );
+        this.optimize = optimize;
+        this.cache = capacity > 0 ? new CompileCache( capacity, null ) : null;
+        this.statistics = new Statistics();
+    }
+
+    /**
+     * Compile or assemble one program and run it in a Machine of its own.
+     *
+     * @param kind {@link #SOURCE} or {@link #ASSEMBLY}
+     * @param lines the program's text
+     * @return what the program wrote, and the error that stopped it, if any
+     */
+    public Reply handle( String kind, List< String > lines ) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream( output );
+        PrintStream err = new PrintStream( diagnostics );
+        String error = null;
+        try {
+            List< Machine.Instruction > code;
+            if ( kind.equals( SOURCE ) ) {
+                code = compile( lines );
+            }
+            else if ( kind.equals( ASSEMBLY ) ) {
+                code = assemble( lines, err );
+            }
+            else {
+                err.print( "unknown request: " + kind );
+                error = BAD_REQUEST;
+                code = null;
+            }
+            if ( code != null ) {
+                if ( this.optimize ) {
+                    code = new PeepholeOptimizer().optimize( code );
+                }
+                new Machine( out ).execute( new CompiledProgram( code ) );
+            }
+        }
+        catch ( DendronException e ) {
+            err.print( e.getMessage() );
+            error = e.getType().name();
+        }
+        catch ( StackOverflowError e ) {
+            // the tree passes after parsing recurse once per level of
+            // nesting; the stack unwinds to here, so only this request is lost
+            err.print( "expression nested too deeply: " + e );
+            error = INTERNAL;
+        }
+        catch ( VirtualMachineError e ) {
+            // out of memory or worse: the JVM itself may be unusable
+            throw e;
+        }
+        catch ( RuntimeException | Error e ) {
+            // a failure in Dendron itself must not take the server down
+            err.print( e );
+            error = INTERNAL;
+        }
+        out.flush();
+        err.flush();
+        return new Reply( error, output.toByteArray(), diagnostics.toByteArray() );
+    }
+
+    /**
+     * Parse and compile some Dendron source code, or find it in the cache.
+     *
+     * @param lines the source code
+     * @return the compiled Machine instructions
+     */
+    private List< Machine.Instruction > compile( List< String > lines ) {
+        List< String > tokens = new ArrayList<>();
+        for ( String line: lines ) {
+            for ( String token: line.trim().split( "\\s+" ) ) {
+                if ( !token.isEmpty() ) {
+                    tokens.add( token );
+                }
+            }
+        }
+        return this.cache != null ? this.cache.compile( tokens )
+                                  : new ParseTree( tokens ).compile();
+    }
+
+    /**
+     * Assemble some Dendron machine code.
+     *
+     * @param lines the assembly code
+     * @param warnings where malformed lines are reported
+     * @return the Machine instructions
+     */
+    private static List< Machine.Instruction > assemble( List< String > lines,
+                                                         PrintStream warnings ) {
+        byte[] text = ( String.join( "\n", lines ) + "\n" )
+                .getBytes( StandardCharsets.UTF_8 );
+        try {
+            return new Assembler( new ByteArrayInputStream( text ), warnings )
+                    .assemble( text.length );
+        }
+        catch ( IOException e ) {
+            // a byte array cannot fail to be read
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Answer requests until the end of the input.
+     *
+     * @param in where the requests come from
+     * @param out where the replies go
+     * @throws IOException if a request cannot be read or a reply written
+     */
+    public void serve( InputStream in, OutputStream out ) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader( in, StandardCharsets.UTF_8 ) );
+        OutputStream writer = new BufferedOutputStream( out );
+        String kind;
+        while ( ( kind = reader.readLine() ) != null ) {
+            kind = kind.trim();
+            if ( kind.isEmpty() ) {
+                continue;
+            }
+            if ( kind.equals( STATS ) ) {
+                new Reply( null, ( report() + "\n" ).getBytes( StandardCharsets.UTF_8 ),
+                        new byte[ 0 ] ).write( writer );
+                writer.flush();
+                continue;
+            }
+            long start = System.nanoTime();
+            List< String > lines = new ArrayList<>();
+            String line;
+            while ( ( line = reader.readLine() ) != null && !line.trim().equals( END ) ) {
+                lines.add( line );
+            }
+            Reply reply = handle( kind, lines );
+            reply.write( writer );
+            writer.flush();
+            this.statistics.record( System.nanoTime() - start, reply.getError() != null );
+        }
+    }
+
+    /**
+     * Accept connections on a Unix domain socket, serving each one on a
+     * thread of its own, until {@link #stop()} is called.
+     *
+     * @param socket the socket's path, which must not exist yet; it is
+     *               deleted when the server stops
+     * @throws IOException if the socket cannot be created
+     */
+    public void listen( Path socket ) throws IOException {
+        try ( ServerSocketChannel server = ServerSocketChannel.open( StandardProtocolFamily.UNIX ) ) {
+            server.bind( UnixDomainSocketAddress.of( socket ) );
+            this.listener = server;
+            while ( true ) {
+                SocketChannel client = server.accept();
+                this.pool.execute( () -> connection( client ) );
+            }
+        }
+        catch ( ClosedChannelException e ) {
+            // stop() closed the socket
+        }
+        finally {
+            this.listener = null;
+            Files.deleteIfExists( socket );
+        }
+    }
+
+    /**
+     * Serve one connection until the client closes it.
+     * @param client the connection
+     */
+    private void connection( SocketChannel client ) {
+        try ( client ) {
+            serve( Channels.newInputStream( client ), Channels.newOutputStream( client ) );
+        }
+        catch ( IOException e ) {
+            // the client went away; there is no one to reply to
+        }
+    }
+
+    /**
+     * Stop accepting connections, and stop serving the open ones once
+     * their clients close them.
+     * @throws IOException if the socket cannot be closed
+     */
+    public void stop() throws IOException {
+        ServerSocketChannel server = this.listener;
+        if ( server != null ) {
+            server.close();
+        }
+        this.pool.shutdown();
+    }
+
+    /**
+     * Describe the throughput and latency of the requests so far
+     * @return one line of text, without a line separator
+     */
+    public String report() {
+        return this.statistics.report();
+    }
+
+    /**
+     * Serve requests from standard input, replying on standard output,
+     * or from a Unix domain socket.
+     *
+     * @param args optionally -O, -t and a thread count, -c and how many
+     *             instructions of compiled source to cache, -r and how
+     *             many seconds apart to report, and -s and a socket path
+     * @throws IOException if requests cannot be read or replies written
+     */
+    public static void main( String[] args ) throws IOException {
+        boolean optimize = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long capacity = 1_000_000;
+        int interval = 0;
+        Path socket = null;
+        int arg = 0;
+        for ( ; arg < args.length; ++arg ) {
+            if ( args[ arg ].equals( "-O" ) ) {
+                optimize = true;
+            }
+            else if ( args[ arg ].equals( "-t" ) && arg + 1 < args.length ) {
+                threads = Integer.parseInt( args[ ++arg ] );
+            }
+            else if ( args[ arg ].equals( "-c" ) && arg + 1 < args.length ) {
+                capacity = Long.parseLong( args[ ++arg ] );
+            }
+            else if ( args[ arg ].equals( "-r" ) && arg + 1 < args.length ) {
+                interval = Integer.parseInt( args[ ++arg ] );
+            }
+            else if ( args[ arg ].equals( "-s" ) && arg + 1 < args.length ) {
+                socket = Paths.get( args[ ++arg ] );
+            }
+            else {
+                break;
+            }
+        }
+        if ( arg != args.length ) {
+            System.err.println( "Usage: java DendronServer [-O] [-t threads] "
+                    + "[-c cache-instructions] [-r report-seconds] [-s socket-path]" );
+            System.exit( 1 );
+        }
+        DendronServer server = new DendronServer( threads, optimize, capacity );
+        if ( interval > 0 ) {
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor( r -> {
+                Thread thread = new Thread( r, "dendron-report" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+            reporter.scheduleAtFixedRate( () -> System.err.println( server.report() ),
+                    interval, interval, TimeUnit.SECONDS );
+        }
+        if ( socket == null ) {
+            server.serve( System.in, System.out );
+            server.stop();
+            System.err.println( server.report() );
+        }
+        else {
+            Path path = socket;
+            Runtime.getRuntime().addShutdownHook( new Thread( () -> {
+                System.err.println( server.report() );
+                try {
+                    Files.deleteIfExists( path );
+                }
+                catch ( IOException e ) {
+                    // the socket is left behind
+                }
+            } ) );
+            server.listen( socket );
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package dendron;
 
+import dendron.machine.SymbolTable;
+
+import java.io.PrintStream;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -18,7 +22,7 @@ public class Errors {
 
     /**
      * The exit status returned by the Java virtual machine if an
-     * error is reported via this class
+     * error reported via this class reaches a command-line program
      */
     public static final int DENDRON_ABORT = 1;
 
@@ -27,26 +31,47 @@ public class Errors {
         DIVIDE_BY_ZERO( "divide by zero" ),
         ILLEGAL_VALUE( "illegal value encountered in source" ),
         UNINITIALIZED( "uninitialized variable in expression" ),
-        PREMATURE_END( "premature end of statement" );
+        PREMATURE_END( "premature end of statement" ),
+        STACK_UNDERFLOW( "not enough values on the stack" );
 
         private final String message;
 
         Type( String message ) {
             this.message = message;
         }
+
+        /**
+         * Show how this kind of error is described to the user
+         * @return the description, such as "divide by zero"
+         */
+        public String getMessage() {
+            return this.message;
+        }
     }
 
     /**
-     * Report an error and stop the program. All output goes to standard error.
+     * Report an error, stopping the program being compiled or run.
+     * Nothing is printed here; the error is thrown to whoever started
+     * the program, and a command-line program passes it to
+     * {@link #abort(DendronException)}.
      *
      * @param type The kind of error, printed first
      * @param info if not null, an additional value to be printed after a colon
+     * @throws DendronException always
      */
     public static void report( Type type, Object info ) {
-        System.err.print( type.message );
-        if ( info != null ) {
-            System.err.print( ": " + info );
-        }
+        throw new DendronException( type, info );
+    }
+
+    /**
+     * Print a reported error on standard error and stop the Java
+     * virtual machine with the status {@link #DENDRON_ABORT}.
+     * Only command-line entry points should call this.
+     *
+     * @param error the error that was reported
+     */
+    public static void abort( DendronException error ) {
+        System.err.print( error.getMessage() );
         System.exit( DENDRON_ABORT );
     }
 
@@ -55,9 +80,46 @@ public class Errors {
      * @param table the program's symbol table
      */
     public static void dump( Map< String, Integer > table ) {
-        System.out.println( "Symbol Table Contents\n=====================\n" );
+        dump( System.out, table );
+    }
+
+    /**
+     * Show the values of all the variables in the table.
+     * @param out where to write the values
+     * @param table the program's symbol table
+     */
+    public static void dump( PrintStream out, Map< String, Integer > table ) {
+        out.println( "Symbol Table Contents\n=====================\n" );
         for ( String ident: table.keySet() ) {
-            System.out.printf( "%12s : %11d\n", ident, table.get( ident ) );
+            out.printf( "%12s : %11d\n", ident, table.get( ident ) );
+        }
+    }
+
+    /**
+     * Show on standard output the values of all the variables in a frame,
+     * by name, in the same order as {@link #dump(Map)} would.
+     * @param symbols the names of the frame's slots
+     * @param frame the program's variable values, indexed by slot
+     */
+    public static void dump( SymbolTable symbols, int[] frame ) {
+        dump( System.out, symbols, frame );
+    }
+
+    /**
+     * Show the values of all the variables in a frame, by name.
+     * Compiler temporaries and slots with no name are not shown.
+     * @param out where to write the values
+     * @param symbols the names of the frame's slots
+     * @param frame the program's variable values, indexed by slot
+     */
+    public static void dump( PrintStream out, SymbolTable symbols, int[] frame ) {
+        Map< String, Integer > table = new HashMap<>();
+        for ( int slot = 0; slot < symbols.size(); ++slot ) {
+            String name = symbols.getName( slot );
+            if ( name != null && !SymbolTable.isTemporary( name ) ) {
+                table.put( name, frame[ slot ] );
+            }
         }
+        dump( out, table );
     }
 }
@@ -0,0 +1,126 @@
+package dendron.bench;
+
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
+import dendron.tree.ParseTree;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Compare the byte-level assembler behind InstructionReader.assemble
+ * with the Scanner-based reader it replaced, on a large generated
+ * .denm file.
+ *
+ * @author William Johnson
+ */
+public class AssemblerBenchmark {
+
+    /**
+     * Assemble a file the way InstructionReader used to: with a
+     * Scanner, a lookup per mnemonic, and a LinkedList of results.
+     *
+     * @param file the .denm file
+     * @return the instructions
+     * @throws IOException if the file cannot be read
+     */
+    private static List<Machine.Instruction> assembleWithScanner(Path file) throws IOException {
+        try (FileInputStream fileStr = new FileInputStream(file.toFile())) {
+            List<Machine.Instruction> result = new LinkedList<>();
+            SymbolTable symbols = new SymbolTable();
+            Scanner in = new Scanner(fileStr);
+            while (in.hasNext()) {
+                String mnemonic = in.next();
+                switch (mnemonic) {
+                    case "PUSH":
+                        result.add(new Machine.PushConst(in.nextInt()));
+                        break;
+                    case "LOAD": {
+                        String v = in.next();
+                        result.add(new Machine.Load(symbols.load(v), v));
+                        break;
+                    }
+                    case "STORE": {
+                        String v = in.next();
+                        result.add(new Machine.Store(symbols.store(v), v));
+                        break;
+                    }
+                    case "ADD": result.add(new Machine.Add()); break;
+                    case "SUB": result.add(new Machine.Subtract()); break;
+                    case "MUL": result.add(new Machine.Multiply()); break;
+                    case "DIV": result.add(new Machine.Divide()); break;
+                    case "NEG": result.add(new Machine.Negate()); break;
+                    case "SQRT": result.add(new Machine.SquareRoot()); break;
+                    case "PRINT": result.add(new Machine.Print()); break;
+                    default:
+                        System.err.println("Illegal assembly instr " + mnemonic);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Write a .denm file of at least the given size.
+     *
+     * @param file where to write it
+     * @param bytes the minimum size
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeProgram(Path file, long bytes) throws IOException {
+        List<Machine.Instruction> code =
+                new ParseTree(Programs.generate(1_000_000, 42)).emit();
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            long written = 0;
+            while (written < bytes) {
+                for (Machine.Instruction instr : code) {
+                    String line = instr.toString();
+                    out.write(line);
+                    out.newLine();
+                    written += line.length() + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Time both assemblers.
+     *
+     * @param args optional: the file size in megabytes (default 100)
+     */
+    public static void main(String[] args) throws IOException {
+        long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 100;
+        Path file = Files.createTempFile("assembler", ".denm");
+        try {
+            writeProgram(file, megabytes << 20);
+            System.out.printf("%d MB file, %s%n", Files.size(file) >> 20, file);
+            long fast = Long.MAX_VALUE;
+            long slow = Long.MAX_VALUE;
+            int count = 0;
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                count = InstructionReader.assemble(file.toString()).size();
+                fast = Math.min(fast, System.nanoTime() - start);
+                start = System.nanoTime();
+                int check = assembleWithScanner(file).size();
+                slow = Math.min(slow, System.nanoTime() - start);
+                if (check != count) {
+                    System.err.println("Assemblers disagree: " + count + " vs " + check);
+                }
+            }
+            System.out.printf("%d instructions%n", count);
+            System.out.printf("byte-level assembler: %10.1f ms%n", fast / 1e6);
+            System.out.printf("Scanner assembler:    %10.1f ms%n", slow / 1e6);
+            System.out.printf("speedup: %.1fx%n", (double) slow / fast);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package dendron.bench;
+
+import dendron.machine.BatchProgram;
+import dendron.machine.Machine;
+import dendron.tree.ParseTree;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compare running a program once per row in the packed interpreter
+ * with running it column-at-a-time as a BatchProgram. Both are given
+ * the same input columns, and their results are checked against each
+ * other before any times are shown.
+ *
+ * @author William Johnson
+ */
+public class BatchBenchmark {
+
+    /** the names of the input columns */
+    private static final List<String> INPUTS = List.of("x", "y", "z");
+
+    /** the programs to run, over the inputs above */
+    private static final String[][] PROGRAMS = {
+            { "sum", ":= s + + x y z" },
+            { "poly", ":= p + * * 3 x x + * 5 y - z 7" },
+            { "distance", ":= d # + * - x y - x y * - y z - y z @ d" },
+            { "several", ":= a * + x 1 - y 2 := b - * a a * z 4 "
+                    + ":= c / + a b 3 := x _ c @ + a x" },
+    };
+
+    /**
+     * Time both ways of running one program and print a line of results.
+     *
+     * @param name what to call the program
+     * @param source the program's text
+     * @param columns the input columns
+     * @param rows how many rows the columns have
+     */
+    private static void compare(String name, String source, int[][] columns, int rows) {
+        List<String> tokens = Arrays.asList(source.trim().split("\\s+"));
+        BatchProgram batch = new BatchProgram(new ParseTree(tokens, INPUTS).compile(), INPUTS);
+        Machine machine = new Machine(new PrintStream(OutputStream.nullOutputStream()));
+        List<String> outputs = batch.getOutputs();
+        int[] outputSlots = batch.getOutputSlots();
+        int variables = outputSlots.length;
+        int[] inputSlots = batch.getInputSlots();
+        int[][] rowResults = new int[variables][rows];
+        int[] values = new int[columns.length];
+        Map<String, int[]> batchResults = null;
+        long rowTime = Long.MAX_VALUE;
+        long batchTime = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int row = 0; row < rows; row++) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = columns[i][row];
+                }
+                machine.run(batch.getProgram(), inputSlots, values);
+                for (int i = 0; i < variables; i++) {
+                    rowResults[i][row] = machine.getValue(outputSlots[i]);
+                }
+            }
+            rowTime = Math.min(rowTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            batchResults = batch.run(columns, rows);
+            batchTime = Math.min(batchTime, System.nanoTime() - start);
+        }
+        for (int i = 0; i < variables; i++) {
+            if (!Arrays.equals(rowResults[i], batchResults.get(outputs.get(i)))) {
+                throw new IllegalStateException(name + ": column " + outputs.get(i) + " differs");
+            }
+        }
+        System.out.printf("%-12s %8d %12.2f %12.2f %8.2fx%n", name, batch.getProgram().getLength(),
+                (double) rowTime / rows, (double) batchTime / rows, (double) rowTime / batchTime);
+    }
+
+    /**
+     * Run the comparison.
+     *
+     * @param args optional: the number of rows (default 4,000,000)
+     */
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        Random random = new Random(1);
+        int[][] columns = new int[INPUTS.size()][rows];
+        for (int[] column : columns) {
+            for (int row = 0; row < rows; row++) {
+                column[row] = random.nextInt(2001) - 1000;
+            }
+        }
+        System.out.printf("%-12s %8s %12s %12s %9s%n", "program", "length",
+                "row ns/row", "batch ns/row", "speedup");
+        for (String[] program : PROGRAMS) {
+            compare(program[0], program[1], columns, rows);
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package dendron.bench;
+
+import dendron.machine.CompiledProgram;
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+import dendron.tree.ParseTree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * The benchmarks that tell whether a change makes the usual workload
+ * faster or slower: parsing, compiling, assembling, executing and
+ * displaying programs from the source and assy corpora and generated
+ * programs of several sizes.
+ *
+ * Each benchmark is warmed up, then measured over several iterations
+ * of roughly fixed length. For each one the suite reports the mean
+ * time per operation and its 99.9% confidence interval, the bytes
+ * allocated per operation, and how many collections and how much
+ * collection time the measurement caused. The results can be written
+ * as CSV or JSON, and two CSV result files can be compared, so results
+ * from two releases can be diffed.
+ *
+ * @author William Johnson
+ */
+public class BenchmarkSuite {
+
+    /** the CSV header line, which is also the order of the JSON fields */
+    private static final String CSV_HEADER =
+            "benchmark,input,iterations,ns_per_op,error_ns,alloc_bytes_per_op,gc_count,gc_ms";
+
+    /** the Student's t value for a 99.9% confidence interval, by degrees of freedom */
+    private static final double[] T_999 = {
+            Double.NaN, 636.6, 31.60, 12.92, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781,
+            4.587, 4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850
+    };
+
+    /** where everything written by the code being measured goes */
+    private static final PrintStream SINK = new PrintStream(OutputStream.nullOutputStream());
+
+    /** values computed by benchmarks, kept so the JIT cannot discard the work */
+    private static volatile int consumed;
+
+    /**
+     * One benchmark: an operation to repeat on one input.
+     */
+    private static final class Benchmark {
+        private final String name;
+        private final String input;
+        private final Supplier<Object> operation;
+
+        /**
+         * Describe a benchmark.
+         */
+        Benchmark(String name, String input, Supplier<Object> operation) {
+            this.name = name;
+            this.input = input;
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * What measuring one benchmark found.
+     */
+    private static final class Result {
+        private final String name;
+        private final String input;
+        private final int iterations;
+        private final double nanosPerOp;
+        private final double error;
+        private final double bytesPerOp;
+        private final long collections;
+        private final long collectionMillis;
+
+        /**
+         * Record the results of one benchmark.
+         */
+        Result(String name, String input, int iterations, double nanosPerOp, double error,
+               double bytesPerOp, long collections, long collectionMillis) {
+            this.name = name;
+            this.input = input;
+            this.iterations = iterations;
+            this.nanosPerOp = nanosPerOp;
+            this.error = error;
+            this.bytesPerOp = bytesPerOp;
+            this.collections = collections;
+            this.collectionMillis = collectionMillis;
+        }
+
+        /**
+         * Show the result as a line of CSV.
+         */
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%s,%d,%.1f,%.1f,%.1f,%d,%d", this.name, this.input,
+                    this.iterations, this.nanosPerOp, this.error, this.bytesPerOp,
+                    this.collections, this.collectionMillis);
+        }
+
+        /**
+         * Show the result as a JSON object.
+         */
+        String toJson() {
+            return String.format(Locale.ROOT, "{\"benchmark\": \"%s\", \"input\": \"%s\", "
+                            + "\"iterations\": %d, \"ns_per_op\": %.1f, \"error_ns\": %.1f, "
+                            + "\"alloc_bytes_per_op\": %.1f, \"gc_count\": %d, \"gc_ms\": %d}",
+                    this.name, this.input, this.iterations, this.nanosPerOp, this.error,
+                    this.bytesPerOp, this.collections, this.collectionMillis);
+        }
+    }
+
+    /** how many warmup iterations to run */
+    private final int warmups;
+    /** how many iterations to measure */
+    private final int iterations;
+    /** roughly how long each iteration lasts, in nanoseconds */
+    private final long iterationNanos;
+    /** the thread allocation counter, or null if the JVM has none */
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Create a suite.
+     *
+     * @param warmups how many warmup iterations to run
+     * @param iterations how many iterations to measure
+     * @param iterationMillis roughly how long each iteration lasts
+     */
+    private BenchmarkSuite(int warmups, int iterations, long iterationMillis) {
+        this.warmups = warmups;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            this.threads = (com.sun.management.ThreadMXBean) bean;
+            this.threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.threads = null;
+        }
+    }
+
+    /**
+     * Show how many bytes the current thread has allocated.
+     */
+    private long allocated() {
+        return this.threads == null ? 0 : this.threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Add up the collection counts, or times, of all the collectors.
+     */
+    private static long collections(boolean time) {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, time ? gc.getCollectionTime() : gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    /**
+     * Run an operation enough times to fill one iteration.
+     *
+     * @param operation the operation
+     * @param ops how many times to run it
+     * @return how long the runs took, in nanoseconds
+     */
+    private static long iterate(Supplier<Object> operation, long ops) {
+        int hash = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < ops; i++) {
+            hash += System.identityHashCode(operation.get());
+        }
+        long elapsed = System.nanoTime() - start;
+        consumed += hash;
+        return elapsed;
+    }
+
+    /**
+     * Warm up and measure one benchmark.
+     *
+     * @param benchmark the benchmark
+     * @return what was measured
+     */
+    private Result measure(Benchmark benchmark) {
+        // find how many operations fill an iteration
+        long ops = 1;
+        long elapsed = iterate(benchmark.operation, ops);
+        while (elapsed < this.iterationNanos / 10 && ops < Long.MAX_VALUE / 2) {
+            ops *= 2;
+            elapsed = iterate(benchmark.operation, ops);
+        }
+        ops = Math.max(1, ops * this.iterationNanos / Math.max(1, elapsed));
+        for (int i = 0; i < this.warmups; i++) {
+            iterate(benchmark.operation, ops);
+        }
+
+        double[] nanosPerOp = new double[this.iterations];
+        long bytes = allocated();
+        long gcCount = collections(false);
+        long gcTime = collections(true);
+        for (int i = 0; i < this.iterations; i++) {
+            nanosPerOp[i] = (double) iterate(benchmark.operation, ops) / ops;
+        }
+        bytes = allocated() - bytes;
+        gcCount = collections(false) - gcCount;
+        gcTime = collections(true) - gcTime;
+
+        double mean = Arrays.stream(nanosPerOp).average().orElse(0);
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean);
+        }
+        int freedom = this.iterations - 1;
+        double error = freedom == 0 ? Double.NaN
+                : T_999[Math.min(freedom, T_999.length - 1)]
+                  * Math.sqrt(variance / freedom / this.iterations);
+        return new Result(benchmark.name, benchmark.input, this.iterations, mean, error,
+                (double) bytes / ops / this.iterations, gcCount, gcTime);
+    }
+
+    /**
+     * Read the tokens of every .txt file in a directory.
+     */
+    private static List<List<String>> readSources(String dir) throws IOException {
+        List<List<String>> result = new ArrayList<>();
+        File[] files = new File(dir).listFiles((d, name) -> name.endsWith(".txt"));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                String text = new String(Files.readAllBytes(file.toPath())).trim();
+                result.add(Arrays.asList(text.split("\\s+")));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Build the list of benchmarks.
+     *
+     * @param sourceDir the directory of the source corpus
+     * @param assyDir the directory of the assembly corpus
+     * @param sizes the token counts of the generated programs
+     * @return the benchmarks, in the order they are run
+     * @throws IOException if a corpus cannot be read
+     */
+    private static List<Benchmark> benchmarks(String sourceDir, String assyDir, int[] sizes)
+            throws IOException {
+        Map<String, List<List<String>>> inputs = new LinkedHashMap<>();
+        inputs.put("source", readSources(sourceDir));
+        for (int size : sizes) {
+            inputs.put("generated-" + size, List.of(Programs.generate(size, 1, Programs.SAFE_OPERATORS)));
+        }
+
+        List<Benchmark> result = new ArrayList<>();
+        for (Map.Entry<String, List<List<String>>> input : inputs.entrySet()) {
+            List<List<String>> programs = input.getValue();
+            List<ParseTree> trees = new ArrayList<>();
+            List<CompiledProgram> compiled = new ArrayList<>();
+            for (List<String> tokens : programs) {
+                ParseTree tree = new ParseTree(tokens);
+                trees.add(tree);
+                compiled.add(new CompiledProgram(tree.compile()));
+            }
+            result.add(new Benchmark("parse", input.getKey(), () -> {
+                Object last = null;
+                for (List<String> tokens : programs) {
+                    last = new ParseTree(tokens);
+                }
+                return last;
+            }));
+            result.add(new Benchmark("compile", input.getKey(), () -> {
+                Object last = null;
+                for (ParseTree tree : trees) {
+                    last = tree.compile();
+                }
+                return last;
+            }));
+            result.add(new Benchmark("execute", input.getKey(), () -> execute(compiled)));
+            result.add(new Benchmark("infixDisplay", input.getKey(), () -> {
+                PrintStream out = System.out;
+                System.setOut(SINK);
+                try {
+                    for (ParseTree tree : trees) {
+                        tree.infixDisplay();
+                    }
+                } finally {
+                    System.setOut(out);
+                }
+                return trees;
+            }));
+        }
+
+        File[] files = new File(assyDir).listFiles((d, name) -> name.endsWith(".denm"));
+        List<String> assy = new ArrayList<>();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                assy.add(file.getPath());
+            }
+        }
+        List<CompiledProgram> assembled = new ArrayList<>();
+        for (String file : assy) {
+            assembled.add(new CompiledProgram(InstructionReader.assemble(file)));
+        }
+        result.add(new Benchmark("assemble", "assy", () -> {
+            Object last = null;
+            for (String file : assy) {
+                last = InstructionReader.assemble(file);
+            }
+            return last;
+        }));
+        result.add(new Benchmark("execute", "assy", () -> execute(assembled)));
+        return result;
+    }
+
+    /**
+     * Execute programs in a Machine, with the report going to the sink.
+     */
+    private static Object execute(List<CompiledProgram> programs) {
+        Machine machine = new Machine(SINK);
+        for (CompiledProgram program : programs) {
+            machine.execute(program);
+        }
+        return machine;
+    }
+
+    /**
+     * Read a CSV result file.
+     *
+     * @param file the file
+     * @return each result's ns/op and bytes/op, keyed by benchmark and input
+     * @throws IOException if the file cannot be read
+     */
+    private static Map<String, double[]> readCsv(Path file) throws IOException {
+        Map<String, double[]> result = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            String[] fields = line.split(",");
+            if (fields.length == 8 && !line.equals(CSV_HEADER)) {
+                result.put(fields[0] + "/" + fields[1], new double[] {
+                        Double.parseDouble(fields[3]), Double.parseDouble(fields[4]),
+                        Double.parseDouble(fields[5]) });
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compare two CSV result files, showing how each benchmark's time
+     * and allocation changed. A change in time larger than the two
+     * error margins together is marked as significant.
+     *
+     * @param before the older results
+     * @param after the newer results
+     * @throws IOException if either file cannot be read
+     */
+    private static void compare(Path before, Path after) throws IOException {
+        Map<String, double[]> old = readCsv(before);
+        Map<String, double[]> current = readCsv(after);
+        System.out.printf("%-34s %14s %14s %9s %14s %14s%n", "benchmark", "before ns/op",
+                "after ns/op", "change", "before B/op", "after B/op");
+        for (Map.Entry<String, double[]> entry : current.entrySet()) {
+            double[] was = old.get(entry.getKey());
+            if (was == null) {
+                continue;
+            }
+            double[] now = entry.getValue();
+            boolean significant = Math.abs(now[0] - was[0]) > now[1] + was[1];
+            System.out.printf("%-34s %14.1f %14.1f %+8.1f%%%s %14.1f %14.1f%n", entry.getKey(),
+                    was[0], now[0], 100 * (now[0] - was[0]) / was[0], significant ? "*" : " ",
+                    was[2], now[2]);
+        }
+    }
+
+    /**
+     * Run the benchmarks, or compare two result files.
+     * <p>
+     * Usage: {@code BenchmarkSuite [-b regex] [-w warmups] [-i iterations]
+     * [-t ms-per-iteration] [-s size,size,...] [-o results.csv|results.json]}
+     * or {@code BenchmarkSuite -compare before.csv after.csv}.
+     *
+     * @param args the options above
+     * @throws IOException if a corpus or result file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("-compare")) {
+            compare(Paths.get(args[1]), Paths.get(args[2]));
+            return;
+        }
+        Pattern filter = Pattern.compile(".*");
+        int warmups = 5;
+        int iterations = 10;
+        long millis = 200;
+        int[] sizes = { 1_000, 100_000 };
+        Path output = null;
+        for (int arg = 0; arg + 1 < args.length; arg += 2) {
+            String value = args[arg + 1];
+            switch (args[arg]) {
+                case "-b":
+                    filter = Pattern.compile(value);
+                    break;
+                case "-w":
+                    warmups = Integer.parseInt(value);
+                    break;
+                case "-i":
+                    iterations = Integer.parseInt(value);
+                    break;
+                case "-t":
+                    millis = Long.parseLong(value);
+                    break;
+                case "-s":
+                    sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "-o":
+                    output = Paths.get(value);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[arg]);
+                    System.exit(1);
+            }
+        }
+
+        BenchmarkSuite suite = new BenchmarkSuite(warmups, iterations, millis);
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-14s %-18s %14s %12s %14s %6s %7s%n", "benchmark", "input",
+                "ns/op", "error", "B/op", "gcs", "gc ms");
+        for (Benchmark benchmark : benchmarks("source", "assy", sizes)) {
+            if (!filter.matcher(benchmark.name + "/" + benchmark.input).find()) {
+                continue;
+            }
+            Result result = suite.measure(benchmark);
+            results.add(result);
+            System.out.printf("%-14s %-18s %14.1f %12.1f %14.1f %6d %7d%n", result.name,
+                    result.input, result.nanosPerOp, result.error, result.bytesPerOp,
+                    result.collections, result.collectionMillis);
+        }
+
+        if (output != null) {
+            List<String> lines = new ArrayList<>();
+            if (output.toString().endsWith(".json")) {
+                lines.add("[");
+                for (int i = 0; i < results.size(); i++) {
+                    lines.add("  " + results.get(i).toJson() + (i + 1 < results.size() ? "," : ""));
+                }
+                lines.add("]");
+            } else {
+                lines.add(CSV_HEADER);
+                for (Result result : results) {
+                    lines.add(result.toCsv());
+                }
+            }
+            Files.write(output, lines);
+        }
+    }
+}
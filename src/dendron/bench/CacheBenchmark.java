@@ -0,0 +1,124 @@
+package dendron.bench;
+
+import dendron.machine.Machine;
+import dendron.tree.CompileCache;
+import dendron.tree.ParseTree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measure how long compiling takes with a CompileCache: cold, when the
+ * program must be compiled; warm from disk, as for another job that
+ * compiles the same source; and warm from memory. The programs are the
+ * source corpus and some larger generated ones.
+ *
+ * @author William Johnson
+ */
+public class CacheBenchmark {
+
+    /** how many times to repeat each measurement, keeping the best */
+    private static final int ROUNDS = 5;
+
+    /**
+     * Read the tokens of every .txt file in a directory.
+     *
+     * @param dir the directory, normally "source"
+     * @return the programs, keyed by file name, in name order
+     * @throws IOException if a file cannot be read
+     */
+    private static Map<String, List<String>> readAll(String dir) throws IOException {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        try (Stream<Path> files = Files.list(Paths.get(dir))) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".txt")).sorted()
+                    .collect(Collectors.toList())) {
+                String text = new String(Files.readAllBytes(file)).trim();
+                result.put(file.getFileName().toString(), Arrays.asList(text.split("\\s+")));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Time compiling one program cold, warm from disk and warm from
+     * memory, and print a line of results.
+     *
+     * @param name what to call the program
+     * @param tokens the program's tokens
+     * @param root a directory for the disk tier
+     * @throws IOException if the disk tier cannot be used
+     */
+    private static void compare(String name, List<String> tokens, Path root) throws IOException {
+        long cold = Long.MAX_VALUE;
+        long disk = Long.MAX_VALUE;
+        long warm = Long.MAX_VALUE;
+        String expected = new ParseTree(tokens).compile().toString();
+        for (int round = 0; round < ROUNDS; round++) {
+            Path dir = Files.createTempDirectory(root, "round");
+            CompileCache cache = new CompileCache(Long.MAX_VALUE, dir);
+            long start = System.nanoTime();
+            List<Machine.Instruction> code = cache.compile(tokens);
+            cold = Math.min(cold, System.nanoTime() - start);
+            check(name, expected, code);
+
+            cache = new CompileCache(Long.MAX_VALUE, dir);
+            start = System.nanoTime();
+            code = cache.compile(tokens);
+            disk = Math.min(disk, System.nanoTime() - start);
+            check(name, expected, code);
+
+            start = System.nanoTime();
+            code = cache.compile(tokens);
+            warm = Math.min(warm, System.nanoTime() - start);
+            check(name, expected, code);
+        }
+        System.out.printf("%-28s %9d %12.1f %12.1f %12.1f%n", name, tokens.size(),
+                cold / 1e3, disk / 1e3, warm / 1e3);
+    }
+
+    /**
+     * Make sure a cached program is the one the compiler generates.
+     */
+    private static void check(String name, String expected, List<Machine.Instruction> code) {
+        if (!expected.equals(code.toString())) {
+            throw new IllegalStateException(name + ": cached code differs");
+        }
+    }
+
+    /**
+     * Run the comparison, then show the statistics of a small cache
+     * that the corpus is run through several times.
+     *
+     * @param args optional: the source directory (default "source")
+     * @throws IOException if the source or a temporary directory cannot be used
+     */
+    public static void main(String[] args) throws IOException {
+        String dir = args.length > 0 ? args[0] : "source";
+        Map<String, List<String>> programs = readAll(dir);
+        for (int size = 10_000; size <= 1_000_000; size *= 10) {
+            programs.put("generated-" + size, Programs.generate(size, 1, Programs.SAFE_OPERATORS));
+        }
+        Path root = Files.createTempDirectory("dendron-cache");
+        System.out.printf("%-28s %9s %12s %12s %12s%n", "program", "tokens",
+                "cold us", "disk us", "memory us");
+        for (Map.Entry<String, List<String>> entry : programs.entrySet()) {
+            compare(entry.getKey(), entry.getValue(), root);
+        }
+
+        CompileCache cache = new CompileCache(75_000, root.resolve("small"));
+        for (int pass = 0; pass < 3; pass++) {
+            for (List<String> tokens : programs.values()) {
+                cache.compile(tokens);
+            }
+        }
+        System.out.println("cache of 75000 instructions, 3 passes: " + cache);
+    }
+}
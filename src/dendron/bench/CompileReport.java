@@ -0,0 +1,74 @@
+package dendron.bench;
+
+import dendron.tree.ParseTree;
+import dendron.tree.Tokenizer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Show, for each program, how many instructions the compiler's
+ * optimizations save: the literal translation from emit(), the count
+ * after simplification, and the count after common subexpressions are
+ * shared, which is what compile() produces.
+ *
+ * @author William Johnson
+ */
+public class CompileReport {
+
+    /**
+     * Compile one program and print its line of the report.
+     *
+     * @param name the program's name
+     * @param tokens the program's tokens
+     */
+    private static void report(String name, List<String> tokens) {
+        ParseTree tree = new ParseTree(tokens);
+        int literal = tree.emit().size();
+        int compiled = tree.compile().size();
+        long simplified = compiled + tree.getSharedSavings();
+        System.out.printf("%-28s %10d %12d %10d %8d %7.1f%%%n", name, literal, simplified,
+                compiled, literal - compiled, 100.0 * (literal - compiled) / literal);
+    }
+
+    /**
+     * Read the tokens of a source file.
+     *
+     * @param file the Dendron source file
+     * @return its tokens
+     * @throws IOException if the file cannot be read
+     */
+    private static List<String> read(Path file) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (Reader in = Files.newBufferedReader(file)) {
+            new Tokenizer(in).forEachRemaining(tokens::add);
+        }
+        return tokens;
+    }
+
+    /**
+     * Print the report.
+     *
+     * @param args optional: the source directory (default "source")
+     * @throws IOException if a source file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "source");
+        System.out.printf("%-28s %10s %12s %10s %8s %8s%n",
+                "program", "literal", "simplified", "compiled", "saved", "");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.txt")) {
+            for (Path file : files) {
+                report(file.getFileName().toString(), read(file));
+            }
+        }
+        for (int size = 1_000; size <= 1_000_000; size *= 10) {
+            report("generated-" + size, Programs.generate(size, size, Programs.SAFE_OPERATORS));
+        }
+    }
+}
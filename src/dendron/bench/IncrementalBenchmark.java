@@ -0,0 +1,82 @@
+package dendron.bench;
+
+import dendron.machine.Machine;
+import dendron.tree.IncrementalCompiler;
+import dendron.tree.ParseTree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare compiling an edited program from scratch with recompiling it
+ * incrementally. A large generated program is compiled once; then one
+ * token in the middle of it is changed, as an analyst editing one line
+ * would, and the program is compiled again both ways.
+ *
+ * @author William Johnson
+ */
+public class IncrementalBenchmark {
+
+    /**
+     * Change the first constant at or after a position in a program.
+     *
+     * @param tokens the program's tokens
+     * @param position where to start looking
+     * @param round which edit this is, so successive edits differ
+     * @return a new token list with one constant changed
+     */
+    private static List<String> edit(List<String> tokens, int position, int round) {
+        List<String> result = new ArrayList<>(tokens);
+        for (int i = position; i < result.size(); i++) {
+            if (ParseTree.isInteger(result.get(i))) {
+                result.set(i, String.valueOf(1000 + round));
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Run the comparison.
+     *
+     * @param args optional: the number of tokens in the program
+     *             (default 2,000,000, about 200,000 statements)
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        List<String> tokens = Programs.generate(size, 1, Programs.SAFE_OPERATORS);
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        long start = System.nanoTime();
+        compiler.compile(tokens);
+        System.out.printf("first compile: %d statements in %.1f ms%n",
+                compiler.getCompiled(), (System.nanoTime() - start) / 1e6);
+
+        long full = Long.MAX_VALUE;
+        long fresh = Long.MAX_VALUE;
+        long incremental = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            tokens = edit(tokens, tokens.size() / 2 + round, round);
+
+            start = System.nanoTime();
+            new ParseTree(tokens).compile();
+            full = Math.min(full, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            List<Machine.Instruction> expected = new IncrementalCompiler().compile(tokens);
+            fresh = Math.min(fresh, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            List<Machine.Instruction> code = compiler.compile(tokens);
+            incremental = Math.min(incremental, System.nanoTime() - start);
+
+            if (!code.toString().equals(expected.toString())) {
+                throw new IllegalStateException("incremental code differs after edit " + round);
+            }
+        }
+        System.out.printf("after an edit: %d statements reused, %d compiled%n",
+                compiler.getReused(), compiler.getCompiled());
+        System.out.printf("%-34s %10.1f ms%n", "ParseTree + compile()", full / 1e6);
+        System.out.printf("%-34s %10.1f ms%n", "IncrementalCompiler, empty cache", fresh / 1e6);
+        System.out.printf("%-34s %10.1f ms%n", "IncrementalCompiler, warm cache", incremental / 1e6);
+    }
+}
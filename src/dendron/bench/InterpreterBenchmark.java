@@ -0,0 +1,92 @@
+package dendron.bench;
+
+import dendron.machine.CompiledProgram;
+import dendron.machine.JitProgram;
+import dendron.machine.Machine;
+import dendron.machine.PackedProgram;
+import dendron.tree.ParseTree;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compare the object-per-instruction interpreter, the packed
+ * switch-loop interpreter with and without superinstructions, and
+ * code compiled to JVM bytecode, on the
+ * assy corpus and on large generated programs. Output from PRINT
+ * instructions is discarded. Each is timed after warming up over
+ * several rounds, and the best round is kept.
+ *
+ * @author William Johnson
+ */
+public class InterpreterBenchmark {
+
+    /** roughly how many instructions to execute per measurement */
+    private static final long WORK = 5_000_000;
+
+    /**
+     * Time each way of running one program and print a line of results.
+     *
+     * @param name what to call the program
+     * @param instructions the program's code
+     */
+    private static void compare(String name, List<Machine.Instruction> instructions) {
+        CompiledProgram compiled = new CompiledProgram(instructions);
+        PackedProgram packed = new PackedProgram(compiled, false);
+        PackedProgram fused = new PackedProgram(compiled);
+        JitProgram jit = new JitProgram(packed);
+        Machine machine = new Machine(new PrintStream(OutputStream.nullOutputStream()));
+        int reps = (int) Math.max(1, WORK / Math.max(1, instructions.size()));
+        long objectTime = Long.MAX_VALUE;
+        long packedTime = Long.MAX_VALUE;
+        long fusedTime = Long.MAX_VALUE;
+        long jitTime = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                machine.run(compiled);
+            }
+            objectTime = Math.min(objectTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                machine.run(packed);
+            }
+            packedTime = Math.min(packedTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                machine.run(fused);
+            }
+            fusedTime = Math.min(fusedTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                machine.run(jit);
+            }
+            jitTime = Math.min(jitTime, System.nanoTime() - start);
+        }
+        double executed = (double) reps * instructions.size();
+        System.out.printf("%-24s %9d %10.2f %10.2f %10.2f %10.2f %7.2fx %7.2fx %7.2fx%n",
+                name, instructions.size(), objectTime / executed, packedTime / executed,
+                fusedTime / executed, jitTime / executed, (double) objectTime / packedTime,
+                (double) objectTime / fusedTime, (double) objectTime / jitTime);
+    }
+
+    /**
+     * Run the comparison.
+     *
+     * @param args optional: the assembly directory (default "assy")
+     */
+    public static void main(String[] args) {
+        String dir = args.length > 0 ? args[0] : "assy";
+        System.out.printf("%-24s %9s %10s %10s %10s %10s %8s %8s %8s%n", "program", "instrs",
+                "object", "packed", "fused", "jit", "packed", "fused", "jit");
+        for (Map.Entry<String, List<Machine.Instruction>> entry : Programs.assembleAll(dir).entrySet()) {
+            compare(entry.getKey(), entry.getValue());
+        }
+        for (int size = 10_000; size <= 1_000_000; size *= 10) {
+            List<String> tokens = Programs.generate(size, size, Programs.SAFE_OPERATORS);
+            compare("generated-" + size, new ParseTree(tokens).compile());
+        }
+    }
+}
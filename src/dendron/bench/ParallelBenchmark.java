@@ -0,0 +1,127 @@
+package dendron.bench;
+
+import dendron.tree.ParseTree;
+import dendron.tree.StatementGraph;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Time running programs' statements level by level, as a StatementGraph
+ * does, on different numbers of threads. For each program it shows how
+ * many levels the statements fall into, how many statements the widest
+ * level has, and how long a run takes on each number of threads.
+ *
+ * @author William Johnson
+ */
+public class ParallelBenchmark {
+
+    /** how many variables the independent statements read */
+    private static final int INPUTS = 16;
+
+    /** the thread counts to try */
+    private static final int[] THREADS = { 1, 2, 4, 8 };
+
+    /**
+     * Build a program that assigns a few variables, then assigns many
+     * more, each from an expression of the first few only, so that all
+     * of the later statements are independent of each other.
+     *
+     * @param statements how many independent statements to generate
+     * @param depth how deeply each expression is nested
+     * @return the program's tokens
+     */
+    private static List<String> independentProgram(int statements, int depth) {
+        Random rand = new Random(statements);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < INPUTS; i++) {
+            tokens.add(":=");
+            tokens.add("b" + i);
+            tokens.add(String.valueOf(i + 2));
+        }
+        for (int i = 0; i < statements; i++) {
+            tokens.add(":=");
+            tokens.add("v" + i);
+            expression(tokens, rand, depth);
+        }
+        return tokens;
+    }
+
+    /**
+     * Append the tokens of a random expression over the first few
+     * variables, nested to the given depth.
+     */
+    private static void expression(List<String> tokens, Random rand, int depth) {
+        if (depth == 0) {
+            tokens.add(rand.nextBoolean() ? "b" + rand.nextInt(INPUTS)
+                    : String.valueOf(rand.nextInt(100) + 1));
+            return;
+        }
+        String op = Programs.SAFE_OPERATORS[rand.nextInt(Programs.SAFE_OPERATORS.length)];
+        tokens.add(op);
+        expression(tokens, rand, depth - 1);
+        if (!op.equals("_") && !op.equals("#")) {
+            expression(tokens, rand, depth - 1);
+        }
+    }
+
+    /**
+     * Time one program on each number of threads and print a line of
+     * results. The final frames of all the runs must be the same.
+     *
+     * @param name what to call the program
+     * @param tokens the program's tokens
+     */
+    private static void compare(String name, List<String> tokens) {
+        ParseTree tree = new ParseTree(tokens);
+        StatementGraph graph = tree.getDependencyGraph();
+        int[] expected = null;
+        StringBuilder times = new StringBuilder();
+        for (int threads : THREADS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long best = Long.MAX_VALUE;
+            int[] frame = null;
+            for (int round = 0; round < 10; round++) {
+                frame = new int[tree.getSymbols().size()];
+                long start = System.nanoTime();
+                graph.execute(frame, pool);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            if (expected == null) {
+                expected = frame;
+            } else if (!Arrays.equals(expected, frame)) {
+                throw new IllegalStateException(name + ": results differ on " + threads + " threads");
+            }
+            times.append(String.format(" %10.3f", best / 1e6));
+        }
+        System.err.printf("%-24s %8d %8d %8d%s%n", name, tree.getSymbols().size(),
+                graph.getLevelCount(), graph.getWidestLevel(), times);
+    }
+
+    /**
+     * Run the comparison. Results go to standard error, because the
+     * programs' own output is discarded.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        StringBuilder header = new StringBuilder();
+        for (int threads : THREADS) {
+            header.append(String.format(" %7d ms", threads));
+        }
+        System.err.printf("%-24s %8s %8s %8s%s%n", "program", "slots", "levels", "widest", header);
+        for (int statements = 10_000; statements <= 100_000; statements *= 10) {
+            compare("independent-" + statements, independentProgram(statements, 6));
+        }
+        compare("generated-1000000", Programs.generate(1_000_000, 1, Programs.SAFE_OPERATORS));
+        System.setOut(out);
+    }
+}
@@ -0,0 +1,103 @@
+package dendron.bench;
+
+import dendron.tree.ParseTree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measure how long it takes to build a ParseTree as the number
+ * of tokens in the program grows from one thousand to ten million,
+ * first with many short statements and then with a single statement
+ * nested more and more deeply. If parsing is linear, the time per
+ * token stays roughly constant in both.
+ *
+ * @author William Johnson
+ */
+public class ParseBenchmark {
+
+    /**
+     * Build a program of one print statement whose expression nests
+     * its operators as deeply as possible: each operator's second
+     * operand is the next operator.
+     *
+     * @param operators how many operators the statement has
+     * @return the program's tokens
+     */
+    private static List<String> deepStatement(int operators) {
+        String[] cycle = {"+", "-", "*", "_", "#"};
+        List<String> tokens = new ArrayList<>(2 * operators + 4);
+        tokens.add(":=");
+        tokens.add("x");
+        tokens.add("3");
+        tokens.add("@");
+        for (int i = 0; i < operators; i++) {
+            String operator = cycle[i % cycle.length];
+            tokens.add(operator);
+            if (!operator.equals("_") && !operator.equals("#")) {
+                tokens.add(i % 2 == 0 ? "x" : "2");
+            }
+        }
+        tokens.add("1");
+        return tokens;
+    }
+
+    /**
+     * Time the parse of a series of programs and print the time per
+     * token for each.
+     *
+     * @param name what the series varies
+     * @param programs the programs, smallest first
+     */
+    private static void series(String name, List<List<String>> programs) {
+        System.out.printf("%s%n%12s %14s %12s%n", name, "tokens", "best ms", "ns/token");
+        double first = 0;
+        double last = 0;
+        for (List<String> tokens : programs) {
+            int reps = Math.max(3, 10_000_000 / tokens.size());
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < reps; i++) {
+                long start = System.nanoTime();
+                new ParseTree(tokens);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            double perToken = (double) best / tokens.size();
+            if (first == 0) {
+                first = perToken;
+            }
+            last = perToken;
+            System.out.printf("%12d %14.3f %12.2f%n", tokens.size(), best / 1e6, perToken);
+        }
+        System.out.printf("ns/token ratio, largest vs smallest: %.2f%n%n", last / first);
+    }
+
+    /**
+     * Time the parse of programs of increasing size, made of many
+     * statements and then of one deep statement.
+     *
+     * @param args optional: the largest program size (default
+     *             10,000,000), then the most operators in the deep
+     *             statement (default 1,000,000)
+     */
+    public static void main(String[] args) {
+        int largest = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int deepest = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        // warm up the parser before taking any measurements
+        List<String> warmup = Programs.generate(100_000, 1);
+        List<String> deepWarmup = deepStatement(50_000);
+        for (int i = 0; i < 20; i++) {
+            new ParseTree(warmup);
+            new ParseTree(deepWarmup);
+        }
+        List<List<String>> statements = new ArrayList<>();
+        for (int size = 1_000; size <= largest; size *= 10) {
+            statements.add(Programs.generate(size, size));
+        }
+        series("many statements", statements);
+        List<List<String>> depths = new ArrayList<>();
+        for (int depth = 1_000; depth <= deepest; depth *= 10) {
+            depths.add(deepStatement(depth));
+        }
+        series("one deep statement", depths);
+    }
+}
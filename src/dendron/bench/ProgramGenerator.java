@@ -0,0 +1,304 @@
+package dendron.bench;
+
+import dendron.Errors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A generator of valid Dendron programs of any size and shape, along
+ * with the output they must produce. The same settings and seed always
+ * give the same program.
+ *
+ * The generator computes every value itself as it builds the program,
+ * so the expected output does not depend on the parser, compiler or
+ * Machine it is used to test. A division whose divisor would be zero
+ * has a nonzero constant added to the divisor, so generated programs
+ * never abort.
+ *
+ * @author William Johnson
+ */
+public class ProgramGenerator {
+
+    /** how deeply the operand off the longest path of an expression may be nested */
+    private static final int SHALLOW = 2;
+
+    /** how many statements to generate */
+    private final int statements;
+    /** how deeply every expression is nested */
+    private final int depth;
+    /** the operators to choose from; an operator listed twice is chosen twice as often */
+    private final String[] operators;
+    /** how many distinct variables to use */
+    private final int variables;
+    /** the chance that an operand is a variable rather than a constant */
+    private final double reuse;
+    /** the chance that a statement is "@" rather than ":=" */
+    private final double prints;
+
+    /**
+     * A program and what it must print when compiled and executed.
+     */
+    public static final class Program {
+        private final List<String> tokens;
+        private final String expected;
+
+        /**
+         * Record a generated program.
+         */
+        Program(List<String> tokens, String expected) {
+            this.tokens = tokens;
+            this.expected = expected;
+        }
+
+        /**
+         * Show the program
+         * @return its tokens
+         */
+        public List<String> getTokens() {
+            return this.tokens;
+        }
+
+        /**
+         * Show what the program must print when compiled and run by
+         * Machine.execute, in the form of the .out files in assy
+         * @return the expected output
+         */
+        public String getExpected() {
+            return this.expected;
+        }
+    }
+
+    /**
+     * Set up a generator.
+     *
+     * @param statements how many statements to generate
+     * @param depth how deeply every expression is nested; 0 gives single
+     *              constants and variables
+     * @param operators the operators to choose from, with repeats to
+     *                  make some more likely than others
+     * @param variables how many distinct variables to use
+     * @param reuse the chance, from 0 to 1, that an operand reads a
+     *              variable rather than being a constant
+     * @param prints the chance, from 0 to 1, that a statement prints
+     *               rather than assigns
+     */
+    public ProgramGenerator(int statements, int depth, String[] operators, int variables,
+                            double reuse, double prints) {
+        this.statements = statements;
+        this.depth = depth;
+        this.operators = operators.clone();
+        this.variables = Math.max(1, variables);
+        this.reuse = reuse;
+        this.prints = prints;
+    }
+
+    /**
+     * Generate a program.
+     *
+     * @param seed the random number seed
+     * @return the program and its expected output
+     */
+    public Program generate(long seed) {
+        Random rand = new Random(seed);
+        String[] names = new String[this.variables];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "v" + i;
+        }
+        int[] values = new int[this.variables];
+        // the variables assigned so far, in the order of their first assignment
+        int[] order = new int[this.variables];
+        boolean[] assigned = new boolean[this.variables];
+        int count = 0;
+
+        List<String> tokens = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        out.println("Executing compiled code...");
+        for (int s = 0; s < this.statements; s++) {
+            if (count > 0 && rand.nextDouble() < this.prints) {
+                tokens.add("@");
+                out.println("*** " + expression(tokens, rand, this.depth, names, values, order, count));
+            } else {
+                int target = rand.nextInt(this.variables);
+                tokens.add(":=");
+                tokens.add(names[target]);
+                values[target] = expression(tokens, rand, this.depth, names, values, order, count);
+                if (!assigned[target]) {
+                    assigned[target] = true;
+                    order[count++] = target;
+                }
+            }
+        }
+        out.println("Machine: execution ended with 0 items left on the stack.");
+        out.println();
+        // insert the variables in slot order, as the Machine's dump does
+        Map<String, Integer> table = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            table.put(names[order[i]], values[order[i]]);
+        }
+        Errors.dump(out, table);
+        out.flush();
+        return new Program(tokens, bytes.toString());
+    }
+
+    /**
+     * Append a random prefix expression and compute its value.
+     *
+     * @param tokens where to append the expression
+     * @param rand the random number generator
+     * @param depth how much deeper the expression may be nested
+     * @param names the variable names
+     * @param values the current value of each variable
+     * @param order the variables that have values
+     * @param count how many variables have values
+     * @return the value of the expression
+     */
+    private int expression(List<String> tokens, Random rand, int depth, String[] names,
+                           int[] values, int[] order, int count) {
+        if (depth == 0 || this.operators.length == 0) {
+            if (count > 0 && rand.nextDouble() < this.reuse) {
+                int variable = order[rand.nextInt(count)];
+                tokens.add(names[variable]);
+                return values[variable];
+            }
+            int constant = rand.nextInt(100) + 1;
+            tokens.add(String.valueOf(constant));
+            return constant;
+        }
+        String op = this.operators[rand.nextInt(this.operators.length)];
+        tokens.add(op);
+        // one operand carries the full depth; the other stays shallow, so
+        // the expression's size grows linearly with its depth
+        boolean deepLeft = op.equals("_") || op.equals("#") || rand.nextBoolean();
+        int shallow = Math.min(depth - 1, SHALLOW);
+        int left = expression(tokens, rand, deepLeft ? depth - 1 : shallow,
+                names, values, order, count);
+        switch (op) {
+            case "_":
+                return -left;
+            case "#":
+                return (int) Math.pow(left, 0.5);
+            default:
+                break;
+        }
+        int mark = tokens.size();
+        int right = expression(tokens, rand, deepLeft ? shallow : depth - 1,
+                names, values, order, count);
+        switch (op) {
+            case "+":
+                return left + right;
+            case "-":
+                return left - right;
+            case "*":
+                return left * right;
+            default:
+                if (right == 0) {
+                    // keep the divisor, which may be the deep operand
+                    right = rand.nextInt(9) + 1;
+                    tokens.add(mark, "+");
+                    tokens.add(String.valueOf(right));
+                }
+                return left / right;
+        }
+    }
+
+    /**
+     * Write generated programs and their expected outputs.
+     * <p>
+     * Usage: {@code ProgramGenerator [-n statements] [-d depth] [-v variables]
+     * [-r reuse] [-p prints] [-o operators] [-c count] seed directory}.
+     * The operators are given as one string, such as "++-*_#/"; program
+     * i is written to gen-i.txt and its output to gen-i.out, using seed
+     * plus i.
+     *
+     * @param args the options above
+     * @throws IOException if a file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int statements = 1000;
+        int depth = 4;
+        int variables = 64;
+        double reuse = 0.5;
+        double prints = 0.1;
+        String operators = "+-*/_#";
+        int count = 1;
+        int arg = 0;
+        for (; arg + 2 < args.length && args[arg].startsWith("-"); arg += 2) {
+            String value = args[arg + 1];
+            switch (args[arg]) {
+                case "-n":
+                    statements = Integer.parseInt(value);
+                    break;
+                case "-d":
+                    depth = Integer.parseInt(value);
+                    break;
+                case "-v":
+                    variables = Integer.parseInt(value);
+                    break;
+                case "-r":
+                    reuse = Double.parseDouble(value);
+                    break;
+                case "-p":
+                    prints = Double.parseDouble(value);
+                    break;
+                case "-o":
+                    operators = value;
+                    break;
+                case "-c":
+                    count = Integer.parseInt(value);
+                    break;
+                default:
+                    arg = args.length;
+            }
+        }
+        if (arg != args.length - 2) {
+            System.err.println("Usage: java ProgramGenerator [-n statements] [-d depth] "
+                    + "[-v variables] [-r reuse] [-p prints] [-o operators] [-c count] "
+                    + "seed directory");
+            System.exit(1);
+        }
+        long seed = Long.parseLong(args[arg]);
+        Path dir = Paths.get(args[arg + 1]);
+        Files.createDirectories(dir);
+        ProgramGenerator generator = new ProgramGenerator(statements, depth,
+                operators.chars().mapToObj(c -> String.valueOf((char) c)).toArray(String[]::new),
+                variables, reuse, prints);
+        for (int i = 0; i < count; i++) {
+            Program program = generator.generate(seed + i);
+            Files.write(dir.resolve("gen-" + i + ".txt"), lines(program.getTokens()));
+            Files.writeString(dir.resolve("gen-" + i + ".out"), program.getExpected());
+        }
+    }
+
+    /**
+     * Lay out a program one statement per line, as in the source corpus.
+     */
+    private static List<String> lines(List<String> tokens) {
+        List<String> result = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        for (String token : tokens) {
+            if ((token.equals(":=") || token.equals("@")) && line.length() > 0) {
+                result.add(line.toString());
+                line.setLength(0);
+            }
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(token);
+        }
+        if (line.length() > 0) {
+            result.add(line.toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+package dendron.bench;
+
+import dendron.machine.InstructionReader;
+import dendron.machine.Machine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks: generated programs of any size,
+ * and the assembly programs in the assy directory.
+ *
+ * @author William Johnson
+ */
+public class Programs {
+
+    private Programs() {}
+
+    /** all the operators of the language */
+    public static final String[] ALL_OPERATORS = { "+", "-", "*", "/", "_", "#" };
+
+    /** the operators that can never fail at run time */
+    public static final String[] SAFE_OPERATORS = { "+", "-", "*", "_", "#" };
+
+    /** how many distinct variables the generated programs use */
+    private static final int VARIABLES = 64;
+
+    /**
+     * Generate a random, well-formed Dendron program with at least the
+     * given number of tokens. Token strings are shared so that the list
+     * itself, not the strings, dominates memory use.
+     *
+     * @param size the minimum number of tokens
+     * @param seed the random number seed
+     * @return the program tokens
+     */
+    public static List<String> generate(int size, long seed) {
+        return generate(size, seed, ALL_OPERATORS);
+    }
+
+    /**
+     * Generate a random, well-formed Dendron program with at least the
+     * given number of tokens, using only some of the operators.
+     *
+     * @param size the minimum number of tokens
+     * @param seed the random number seed
+     * @param operators the operators that may appear
+     * @return the program tokens
+     */
+    public static List<String> generate(int size, long seed, String[] operators) {
+        Random rand = new Random(seed);
+        String[] names = new String[VARIABLES];
+        for (int i = 0; i < VARIABLES; i++) {
+            names[i] = "v" + i;
+        }
+        String[] constants = new String[100];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = String.valueOf(i + 1);
+        }
+        List<String> tokens = new ArrayList<>(size + 64);
+        int assigned = 0;
+        while (tokens.size() < size) {
+            int readable = Math.min(assigned, VARIABLES);
+            if (assigned > 0 && rand.nextInt(10) == 0) {
+                tokens.add("@");
+            } else {
+                tokens.add(":=");
+                tokens.add(names[assigned % VARIABLES]);
+                assigned++;
+            }
+            generateExpr(tokens, rand, operators, 4, names, readable, constants);
+        }
+        return tokens;
+    }
+
+    /**
+     * Append a random prefix expression of bounded depth.
+     */
+    private static void generateExpr(List<String> tokens, Random rand,
+                                     String[] operators, int depth,
+                                     String[] names, int assigned, String[] constants) {
+        if (depth == 0 || rand.nextInt(3) == 0) {
+            if (assigned > 0 && rand.nextBoolean()) {
+                tokens.add(names[rand.nextInt(assigned)]);
+            } else {
+                tokens.add(constants[rand.nextInt(constants.length)]);
+            }
+            return;
+        }
+        String op = operators[rand.nextInt(operators.length)];
+        tokens.add(op);
+        generateExpr(tokens, rand, operators, depth - 1, names, assigned, constants);
+        if (!op.equals("_") && !op.equals("#")) {
+            generateExpr(tokens, rand, operators, depth - 1, names, assigned, constants);
+        }
+    }
+
+    /**
+     * Assemble every .denm file in a directory.
+     *
+     * @param dir the directory, normally "assy"
+     * @return the assembled programs, keyed by file name, in name order
+     */
+    public static Map<String, List<Machine.Instruction>> assembleAll(String dir) {
+        Map<String, List<Machine.Instruction>> result = new LinkedHashMap<>();
+        File[] files = new File(dir).listFiles((d, name) -> name.endsWith(".denm"));
+        if (files == null) {
+            System.err.println("Could not read directory " + dir);
+            return result;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            result.put(file.getName(), InstructionReader.assemble(file.getPath()));
+        }
+        return result;
+    }
+}
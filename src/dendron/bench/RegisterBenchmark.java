@@ -0,0 +1,128 @@
+package dendron.bench;
+
+import dendron.machine.CompiledProgram;
+import dendron.machine.Machine;
+import dendron.machine.PackedProgram;
+import dendron.machine.RegisterProgram;
+import dendron.tree.ParseTree;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compare the packed stack interpreter with the register interpreter,
+ * on the assy corpus and on programs with deep expressions. For each
+ * program it shows how many instructions each interpreter dispatches
+ * and how long each takes.
+ *
+ * @author William Johnson
+ */
+public class RegisterBenchmark {
+
+    /** roughly how many stack instructions to execute per measurement */
+    private static final long WORK = 5_000_000;
+
+    /** how many variables the deep-expression programs read */
+    private static final int VARIABLES = 8;
+
+    /**
+     * Build a program that assigns a few variables and then evaluates,
+     * several times, an expression nested to the given depth.
+     * The nesting alternates "-" and "*", so the stack grows by one
+     * at every level; "balanced" instead splits each level in two.
+     *
+     * @param depth how deeply the expression is nested
+     * @param balanced whether to build a full binary tree instead of a chain
+     * @return the program's tokens
+     */
+    private static List<String> deepProgram(int depth, boolean balanced) {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < VARIABLES; i++) {
+            tokens.add(":=");
+            tokens.add("v" + i);
+            tokens.add(String.valueOf(i + 2));
+        }
+        for (int statement = 0; statement < 4; statement++) {
+            tokens.add(":=");
+            tokens.add("r" + statement);
+            expression(tokens, depth, balanced, statement);
+        }
+        return tokens;
+    }
+
+    /**
+     * Append the tokens of a nested expression.
+     */
+    private static void expression(List<String> tokens, int depth, boolean balanced, int leaf) {
+        if (depth == 0) {
+            tokens.add("v" + (leaf % VARIABLES));
+            return;
+        }
+        tokens.add(depth % 2 == 0 ? "-" : "*");
+        if (balanced) {
+            expression(tokens, depth - 1, true, leaf);
+            expression(tokens, depth - 1, true, leaf + (1 << (depth - 1)));
+        } else {
+            tokens.add("v" + (leaf % VARIABLES));
+            expression(tokens, depth - 1, false, leaf + 1);
+        }
+    }
+
+    /**
+     * Time both interpreters on one program and print a line of results.
+     *
+     * @param name what to call the program
+     * @param instructions the program's code
+     */
+    private static void compare(String name, List<Machine.Instruction> instructions) {
+        PackedProgram packed = new PackedProgram(new CompiledProgram(instructions));
+        RegisterProgram registers = new RegisterProgram(packed);
+        Machine machine = new Machine(new PrintStream(OutputStream.nullOutputStream()));
+        int reps = (int) Math.max(1, WORK / Math.max(1, instructions.size()));
+        long stackTime = Long.MAX_VALUE;
+        long registerTime = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                machine.run(packed);
+            }
+            stackTime = Math.min(stackTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                machine.run(registers);
+            }
+            registerTime = Math.min(registerTime, System.nanoTime() - start);
+        }
+        System.out.printf("%-28s %10d %10d %9.1f%% %12.1f %12.1f %8.2fx%n", name,
+                registers.getStackLength(), registers.getLength(),
+                100.0 * (registers.getStackLength() - registers.getLength())
+                        / Math.max(1, registers.getStackLength()),
+                (double) stackTime / reps, (double) registerTime / reps,
+                (double) stackTime / registerTime);
+    }
+
+    /**
+     * Run the comparison.
+     *
+     * @param args optional: the assembly directory (default "assy")
+     */
+    public static void main(String[] args) {
+        String dir = args.length > 0 ? args[0] : "assy";
+        System.out.printf("%-28s %10s %10s %10s %12s %12s %9s%n", "program",
+                "stack", "register", "fewer", "stack ns", "register ns", "speedup");
+        for (Map.Entry<String, List<Machine.Instruction>> entry : Programs.assembleAll(dir).entrySet()) {
+            compare(entry.getKey(), entry.getValue());
+        }
+        for (int depth = 8; depth <= 512; depth *= 4) {
+            compare("chain-" + depth, new ParseTree(deepProgram(depth, false)).emit());
+        }
+        for (int depth = 4; depth <= 16; depth += 4) {
+            compare("balanced-" + depth, new ParseTree(deepProgram(depth, true)).emit());
+        }
+        List<String> tokens = Programs.generate(1_000_000, 1, Programs.SAFE_OPERATORS);
+        compare("generated-1000000", new ParseTree(tokens).compile());
+    }
+}
@@ -0,0 +1,175 @@
+package dendron.bench;
+
+import dendron.machine.CompiledProgram;
+import dendron.machine.Machine;
+import dendron.tree.ParseTree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A check that parsing, compiling and executing take time and memory
+ * in proportion to the size of the program. Programs are generated at
+ * several sizes, first by adding statements and then by nesting
+ * expressions more deeply, and each one is run through ParseTree and
+ * the Machine; its output must match the generator's. The growth rate
+ * of the time and of the memory the tree and compiled code hold is the
+ * slope of a least-squares fit on a log-log scale, which is 1 for
+ * linear growth. If either slope is too steep the harness exits with
+ * status 1, so it can fail a build.
+ *
+ * @author William Johnson
+ */
+public class ScalingHarness {
+
+    /** the steepest time slope that still counts as linear */
+    private static final double TIME_LIMIT = 1.3;
+
+    /** the steepest memory slope that still counts as linear */
+    private static final double MEMORY_LIMIT = 1.15;
+
+    /** how many times each size is run, keeping the best time */
+    private static final int ROUNDS = 3;
+
+    /**
+     * Parse, compile and execute one program.
+     *
+     * @param program the program and its expected output
+     * @return how long it took, in nanoseconds
+     */
+    private static long run(ProgramGenerator.Program program) {
+        long start = System.nanoTime();
+        List<Machine.Instruction> code = new ParseTree(program.getTokens()).compile();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        new Machine(out).execute(new CompiledProgram(code));
+        long elapsed = System.nanoTime() - start;
+        out.flush();
+        if (!bytes.toString().equals(program.getExpected())) {
+            System.err.println("Output differs from the generator's for a program of "
+                    + program.getTokens().size() + " tokens");
+            System.exit(1);
+        }
+        return elapsed;
+    }
+
+    /**
+     * Measure how many bytes a parse tree and its compiled code hold on to.
+     * Collection is not exact, so this is the median of three tries.
+     *
+     * @param tokens the program
+     * @return the growth of the heap, after collection, while both are reachable
+     */
+    private static long retained(List<String> tokens) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long[] tries = new long[3];
+        for (int i = 0; i < tries.length; i++) {
+            System.gc();
+            long before = memory.getHeapMemoryUsage().getUsed();
+            ParseTree tree = new ParseTree(tokens);
+            CompiledProgram program = new CompiledProgram(tree.compile());
+            System.gc();
+            tries[i] = memory.getHeapMemoryUsage().getUsed() - before;
+            Reference.reachabilityFence(tree);
+            Reference.reachabilityFence(program);
+        }
+        Arrays.sort(tries);
+        return Math.max(1, tries[1]);
+    }
+
+    /**
+     * Find the slope of the least-squares line through points on a
+     * log-log scale.
+     *
+     * @param x the sizes
+     * @param y the measurements
+     * @return the slope; 1 means y grows in proportion to x
+     */
+    private static double slope(double[] x, double[] y) {
+        double mx = 0;
+        double my = 0;
+        for (int i = 0; i < x.length; i++) {
+            mx += Math.log(x[i]) / x.length;
+            my += Math.log(y[i]) / x.length;
+        }
+        double sxy = 0;
+        double sxx = 0;
+        for (int i = 0; i < x.length; i++) {
+            sxy += (Math.log(x[i]) - mx) * (Math.log(y[i]) - my);
+            sxx += (Math.log(x[i]) - mx) * (Math.log(x[i]) - mx);
+        }
+        return sxy / sxx;
+    }
+
+    /**
+     * Run one series of programs and check its growth.
+     *
+     * @param name what the series varies
+     * @param generators one generator per size, smallest first
+     * @return true if both time and memory grew linearly
+     */
+    private static boolean series(String name, ProgramGenerator[] generators) {
+        double[] tokens = new double[generators.length];
+        double[] times = new double[generators.length];
+        double[] bytes = new double[generators.length];
+        System.out.printf("%s%n%12s %12s %12s %14s %12s%n", name, "tokens", "best ms",
+                "ns/token", "retained KB", "B/token");
+        for (int i = 0; i < generators.length; i++) {
+            ProgramGenerator.Program program = generators[i].generate(i + 1);
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                // start every round with an empty heap, so that garbage
+                // left by a smaller program is not charged to this one
+                System.gc();
+                best = Math.min(best, run(program));
+            }
+            tokens[i] = program.getTokens().size();
+            times[i] = best;
+            bytes[i] = retained(program.getTokens());
+            System.out.printf("%12d %12.1f %12.1f %14.1f %12.1f%n", (long) tokens[i],
+                    best / 1e6, best / tokens[i], bytes[i] / 1024, bytes[i] / tokens[i]);
+        }
+        double time = slope(tokens, times);
+        double memory = slope(tokens, bytes);
+        boolean linear = time <= TIME_LIMIT && memory <= MEMORY_LIMIT;
+        System.out.printf("slope: time %.2f (limit %.2f), memory %.2f (limit %.2f): %s%n%n",
+                time, TIME_LIMIT, memory, MEMORY_LIMIT, linear ? "ok" : "SUPER-LINEAR");
+        return linear;
+    }
+
+    /**
+     * Run both series, exiting with status 1 if either grows faster
+     * than linearly.
+     *
+     * @param args optional: the operators to use (default "+-*_#/")
+     */
+    public static void main(String[] args) {
+        String[] operators = (args.length > 0 ? args[0] : "+-*_#/").split("");
+        // warm up the parser, compiler and Machine before measuring
+        ProgramGenerator wide = new ProgramGenerator(20_000, 4, operators, 64, 0.5, 0.1);
+        ProgramGenerator deep = new ProgramGenerator(200, 200, operators, 64, 0.5, 0.1);
+        for (int i = 0; i < 5; i++) {
+            run(wide.generate(i));
+            run(deep.generate(i));
+        }
+
+        ProgramGenerator[] statements = new ProgramGenerator[5];
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = new ProgramGenerator(12_500 << i, 4, operators, 1000, 0.5, 0.05);
+        }
+        ProgramGenerator[] depths = new ProgramGenerator[5];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = new ProgramGenerator(1000, 50 << i, operators, 64, 0.5, 0.05);
+        }
+        boolean linear = series("more statements", statements);
+        linear &= series("deeper expressions", depths);
+        if (!linear) {
+            System.exit(1);
+        }
+    }
+}
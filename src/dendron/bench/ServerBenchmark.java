@@ -0,0 +1,286 @@
+package dendron.bench;
+
+import dendron.DendronServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measure what a long-lived DendronServer gains over starting a JVM for
+ * every program. Random programs, some of which divide by zero, are
+ * sent as source requests, first to a fresh JVM per program and then
+ * from several clients at once to one server over a Unix domain
+ * socket, after a warm-up pass. The replies must be the same both ways.
+ * Each way's throughput and client-side latency percentiles are shown,
+ * followed by the server's own report. A program nested far too deeply
+ * for the compiler's stack must cost only its own request.
+ *
+ * @author William Johnson
+ */
+public class ServerBenchmark {
+
+    /** how many different programs there are */
+    private static final int PROGRAMS = 500;
+
+    /** how many tokens each program has, at least */
+    private static final int SIZE = 60;
+
+    /** how many clients send requests to the server at once */
+    private static final int CLIENTS = 4;
+
+    /** how many times each client sends every program */
+    private static final int ROUNDS = 5;
+
+    /** how many programs are run in a JVM of their own */
+    private static final int FRESH = 10;
+
+    /** how deeply the program that checks for stack overflow nests */
+    private static final int DEEP = 1_000_000;
+
+    /**
+     * A connection to a DendronServer.
+     */
+    private static final class Client implements AutoCloseable {
+        /** the connection */
+        private final SocketChannel channel;
+        /** where requests are written */
+        private final OutputStream out;
+        /** where replies are read */
+        private final InputStream in;
+
+        /**
+         * Connect to a server.
+         *
+         * @param socket the server's socket
+         * @throws IOException if the server cannot be reached
+         */
+        Client(Path socket) throws IOException {
+            this.channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            this.out = Channels.newOutputStream(this.channel);
+            this.in = Channels.newInputStream(this.channel);
+        }
+
+        /**
+         * Send one request and wait for its reply.
+         *
+         * @param request the whole request, ending with its "." line
+         * @return the whole reply
+         * @throws IOException if the connection fails
+         */
+        String send(byte[] request) throws IOException {
+            this.out.write(request);
+            return read(this.in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Read one reply.
+     *
+     * @param in where the reply comes from
+     * @return the header, output and diagnostics, as text
+     * @throws IOException if the reply is cut short
+     */
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("the server closed the connection");
+            }
+            header.write(c);
+        }
+        String line = header.toString(StandardCharsets.US_ASCII);
+        String[] fields = line.split(" ");
+        byte[] body = in.readNBytes(Integer.parseInt(fields[1]) + Integer.parseInt(fields[2]));
+        return line + "\n" + new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Find a latency percentile.
+     *
+     * @param sorted latencies in increasing order
+     * @param percent which percentile, from 0 to 100
+     * @return the latency at or below which that percentage fall
+     */
+    private static long percentile(long[] sorted, double percent) {
+        int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Show the throughput and latency of some requests.
+     *
+     * @param name how the requests were served
+     * @param latencies how long each request took, in nanoseconds
+     * @param elapsed how long they all took
+     */
+    private static void show(String name, long[] latencies, long elapsed) {
+        Arrays.sort(latencies);
+        System.out.printf("%-24s %8d %12.1f %12.1f %12.1f%n", name, latencies.length,
+                latencies.length / (elapsed / 1e9), percentile(latencies, 50) / 1e3,
+                percentile(latencies, 99) / 1e3);
+    }
+
+    /**
+     * Run some requests, each in a JVM of its own reading it from
+     * standard input.
+     *
+     * @param requests the requests
+     * @param latencies where to put how long each one took
+     * @return the replies
+     * @throws IOException if a JVM cannot be started
+     * @throws InterruptedException if interrupted while waiting for one
+     */
+    private static List<String> fresh(List<byte[]> requests, long[] latencies)
+            throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> replies = new ArrayList<>();
+        for (int i = 0; i < latencies.length; i++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    DendronServer.class.getName(), "-c", "0")
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            try (OutputStream in = process.getOutputStream()) {
+                in.write(requests.get(i));
+            }
+            replies.add(read(process.getInputStream()));
+            process.waitFor();
+            latencies[i] = System.nanoTime() - start;
+        }
+        return replies;
+    }
+
+    /**
+     * Check that a program nested too deeply for the compiler costs only
+     * its own request: the server must reply to it with an INTERNAL
+     * error, and then go on to answer the next request on the same
+     * connection.
+     *
+     * @param client a connection to the server
+     * @throws IOException if the connection fails
+     */
+    private static void checkDeep(Client client) throws IOException {
+        StringBuilder deep = new StringBuilder(DendronServer.SOURCE + "\n@");
+        for (int i = 0; i < DEEP; i++) {
+            deep.append(" + 1");
+        }
+        deep.append(" 1\n" + DendronServer.END + "\n");
+        String reply = client.send(deep.toString().getBytes(StandardCharsets.UTF_8));
+        String next = client.send((DendronServer.SOURCE + "\n@ 1\n" + DendronServer.END + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        if (!reply.startsWith("error") || !reply.split("\n", 2)[0].endsWith(" INTERNAL")
+                || !next.startsWith("ok") || !next.contains("*** 1")) {
+            System.err.println("The server did not survive a program " + DEEP + " levels deep");
+            System.exit(1);
+        }
+        System.out.println("a program " + DEEP + " levels deep: " + reply.split("\n", 2)[0]);
+    }
+
+    /**
+     * Compare a fresh JVM per program with one server under load.
+     *
+     * @param args none
+     * @throws Exception if a JVM or the server fails
+     */
+    public static void main(String[] args) throws Exception {
+        List<byte[]> requests = new ArrayList<>();
+        for (int i = 0; i < PROGRAMS; i++) {
+            String text = DendronServer.SOURCE + "\n" + String.join(" ", Programs.generate(SIZE, i))
+                    + "\n" + DendronServer.END + "\n";
+            requests.add(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Path directory = Files.createTempDirectory("dendron");
+        Path socket = directory.resolve("server.sock");
+        DendronServer server = new DendronServer(CLIENTS, false, 1_000_000);
+        Thread listener = new Thread(() -> {
+            try {
+                server.listen(socket);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        listener.start();
+        while (!Files.exists(socket)) {
+            Thread.sleep(10);
+        }
+
+        System.out.printf("%-24s %8s %12s %12s %12s%n", "", "requests", "requests/s", "p50 us", "p99 us");
+        long[] freshLatencies = new long[FRESH];
+        long start = System.nanoTime();
+        List<String> expected = fresh(requests, freshLatencies);
+        show("JVM per program", freshLatencies, System.nanoTime() - start);
+
+        int errors = 0;
+        try (Client client = new Client(socket)) {
+            for (int i = 0; i < PROGRAMS; i++) {
+                String reply = client.send(requests.get(i));
+                if (i < FRESH && !reply.equals(expected.get(i))) {
+                    System.err.println("The server's reply to program " + i
+                            + " differs from a fresh JVM's");
+                    System.exit(1);
+                }
+                if (reply.startsWith("error")) {
+                    errors++;
+                }
+            }
+            checkDeep(client);
+        }
+
+        long[][] latencies = new long[CLIENTS][PROGRAMS * ROUNDS];
+        Thread[] clients = new Thread[CLIENTS];
+        start = System.nanoTime();
+        for (int c = 0; c < CLIENTS; c++) {
+            int offset = c * PROGRAMS / CLIENTS;
+            long[] mine = latencies[c];
+            clients[c] = new Thread(() -> {
+                try (Client client = new Client(socket)) {
+                    for (int i = 0; i < mine.length; i++) {
+                        long sent = System.nanoTime();
+                        client.send(requests.get((offset + i) % PROGRAMS));
+                        mine[i] = System.nanoTime() - sent;
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            clients[c].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        long[] all = new long[CLIENTS * PROGRAMS * ROUNDS];
+        for (int c = 0; c < CLIENTS; c++) {
+            System.arraycopy(latencies[c], 0, all, c * PROGRAMS * ROUNDS, PROGRAMS * ROUNDS);
+        }
+        show(CLIENTS + " clients, one server", all, elapsed);
+        System.out.printf("%d of %d programs stopped with an error%n", errors, PROGRAMS);
+
+        try (Client client = new Client(socket)) {
+            System.out.print("server: " + client.send(
+                    (DendronServer.STATS + "\n").getBytes(StandardCharsets.UTF_8)).split("\n", 2)[1]);
+        }
+        server.stop();
+        listener.join();
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,161 @@
+package dendron.bench;
+
+import dendron.machine.CompiledProgram;
+import dendron.machine.Machine;
+import dendron.machine.MachineStatistics;
+import dendron.machine.PackedProgram;
+import dendron.tree.ParseTree;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Measure what collecting MachineStatistics costs. Whether statistics
+ * are collected is fixed when the JVM starts, so this runs itself twice
+ * in child JVMs, once with -Ddendron.statistics=false and once with
+ * true, and compares the times. Each child times one large program,
+ * which shows the cost per instruction, and many small ones, which
+ * shows the cost per program, on both the object and the packed
+ * interpreters.
+ *
+ * @author William Johnson
+ */
+public class StatisticsBenchmark {
+
+    /** how many times to repeat each measurement, keeping the best */
+    private static final int ROUNDS = 20;
+
+    /** how many small programs make up one measurement */
+    private static final int SMALL = 2_000;
+
+    /** the names of the measurements, in the order a child prints them */
+    private static final String[] NAMES = {
+            "large, object", "large, packed", "small, object", "small, packed"
+    };
+
+    /**
+     * Time running programs, keeping the best of several rounds.
+     *
+     * @param machine the Machine to run them on
+     * @param programs the programs, in either CompiledProgram or
+     *                 PackedProgram form
+     * @return the best time for running them all, in nanoseconds
+     */
+    private static long time(Machine machine, List<?> programs) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (Object program : programs) {
+                if (program instanceof PackedProgram) {
+                    machine.run((PackedProgram) program);
+                } else {
+                    machine.run((CompiledProgram) program);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * Run the measurements in this JVM and print one line of times.
+     *
+     * @throws JMException if statistics are enabled but cannot be read back
+     */
+    private static void child() throws JMException {
+        CompiledProgram large = new CompiledProgram(
+                new ParseTree(Programs.generate(1_000_000, 1, Programs.SAFE_OPERATORS)).compile());
+        List<CompiledProgram> small = new ArrayList<>();
+        List<PackedProgram> smallPacked = new ArrayList<>();
+        for (int i = 0; i < SMALL; i++) {
+            CompiledProgram program = new CompiledProgram(
+                    new ParseTree(Programs.generate(40, i, Programs.SAFE_OPERATORS)).compile());
+            small.add(program);
+            smallPacked.add(new PackedProgram(program));
+        }
+        Machine machine = new Machine(new PrintStream(OutputStream.nullOutputStream()));
+        long[] times = {
+                time(machine, List.of(large)),
+                time(machine, List.of(new PackedProgram(large))),
+                time(machine, small),
+                time(machine, smallPacked)
+        };
+        StringBuilder line = new StringBuilder();
+        for (long nanos : times) {
+            line.append(nanos).append(' ');
+        }
+        System.out.println(line.toString().trim());
+
+        if (MachineStatistics.ENABLED) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MachineStatistics.NAME);
+            System.err.println("through JMX: " + server.getAttribute(name, "Programs")
+                    + " programs, " + server.getAttribute(name, "Instructions")
+                    + " instructions, stack high-water mark "
+                    + server.getAttribute(name, "StackHighWaterMark")
+                    + ", largest symbol table " + server.getAttribute(name, "LargestSymbolTableSize")
+                    + ", p50 " + server.getAttribute(name, "WallTimeP50Nanos")
+                    + " ns, p99 " + server.getAttribute(name, "WallTimeP99Nanos") + " ns");
+        }
+    }
+
+    /**
+     * Run the measurements in a child JVM.
+     *
+     * @param enabled whether the child collects statistics
+     * @return the child's times, in the order of NAMES
+     * @throws IOException if the child cannot be started
+     * @throws InterruptedException if interrupted while waiting for it
+     */
+    private static long[] fork(boolean enabled) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-Ddendron.statistics=" + enabled,
+                "-cp", System.getProperty("java.class.path"),
+                StatisticsBenchmark.class.getName(), "-child")
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String line;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            line = reader.readLine();
+        }
+        if (process.waitFor() != 0 || line == null) {
+            throw new IllegalStateException("the child JVM failed");
+        }
+        String[] fields = line.split(" ");
+        long[] times = new long[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            times[i] = Long.parseLong(fields[i]);
+        }
+        return times;
+    }
+
+    /**
+     * Compare running with and without statistics.
+     *
+     * @param args none; "-child" is used internally
+     * @throws Exception if a child JVM fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("-child")) {
+            child();
+            return;
+        }
+        long[] off = fork(false);
+        long[] on = fork(true);
+        System.out.printf("%-16s %12s %12s %9s%n", "programs", "off ms", "on ms", "overhead");
+        for (int i = 0; i < NAMES.length; i++) {
+            System.out.printf("%-16s %12.2f %12.2f %8.1f%%%n", NAMES[i], off[i] / 1e6, on[i] / 1e6,
+                    100.0 * (on[i] - off[i]) / off[i]);
+        }
+    }
+}
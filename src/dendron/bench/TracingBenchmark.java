@@ -0,0 +1,114 @@
+package dendron.bench;
+
+import dendron.machine.CompiledProgram;
+import dendron.machine.Machine;
+import dendron.machine.PackedProgram;
+import dendron.tree.ParseTree;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Measure what the Dendron flight recorder events cost. The same
+ * programs are parsed, compiled and run with no recording, with a
+ * recording using the JDK's default settings but without the Dendron
+ * events, and with the default settings as they are, which include the
+ * Dendron events and the sampled instruction events. The programs are
+ * one large program, which shows the cost of sampling, and many small
+ * ones, which shows the cost per program.
+ *
+ * @author William Johnson
+ */
+public class TracingBenchmark {
+
+    /** how many times to repeat each measurement, keeping the best */
+    private static final int ROUNDS = 20;
+
+    /** how many small programs make up one measurement */
+    private static final int SMALL = 2_000;
+
+    /** the Dendron events */
+    private static final String[] EVENTS = {
+            "dendron.Parse", "dendron.Compile", "dendron.Assemble",
+            "dendron.Execute", "dendron.Instruction"
+    };
+
+    /**
+     * Time parsing, compiling and running programs, keeping the best of
+     * several rounds.
+     *
+     * @param sources the programs' tokens
+     * @param packed whether to run the packed form rather than the object form
+     * @return the best time for all of them, in nanoseconds
+     */
+    private static long time(List<List<String>> sources, boolean packed) {
+        Machine machine = new Machine(new PrintStream(OutputStream.nullOutputStream()));
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (List<String> tokens : sources) {
+                CompiledProgram program = new CompiledProgram(new ParseTree(tokens).compile());
+                if (packed) {
+                    machine.execute(new PackedProgram(program));
+                } else {
+                    machine.execute(program);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * Time every workload under one kind of recording and print a line.
+     *
+     * @param name what to call the kind of recording
+     * @param recording the recording, or null for none
+     * @param large the large program
+     * @param small the small programs
+     */
+    private static void measure(String name, Recording recording,
+                                List<List<String>> large, List<List<String>> small) {
+        if (recording != null) {
+            recording.start();
+        }
+        System.out.printf("%-22s %12.2f %12.2f %12.2f %12.2f%n", name,
+                time(large, false) / 1e6, time(large, true) / 1e6,
+                time(small, false) / 1e6, time(small, true) / 1e6);
+        if (recording != null) {
+            recording.stop();
+            recording.close();
+        }
+    }
+
+    /**
+     * Run the comparison.
+     *
+     * @param args none
+     * @throws IOException if the default recording settings cannot be read
+     * @throws ParseException if the default recording settings cannot be parsed
+     */
+    public static void main(String[] args) throws IOException, ParseException {
+        List<List<String>> large = List.of(Programs.generate(1_000_000, 1, Programs.SAFE_OPERATORS));
+        List<List<String>> small = new ArrayList<>();
+        for (int i = 0; i < SMALL; i++) {
+            small.add(Programs.generate(40, i, Programs.SAFE_OPERATORS));
+        }
+        Configuration defaults = Configuration.getConfiguration("default");
+        System.out.printf("%-22s %12s %12s %12s %12s%n", "recording (ms)",
+                "large object", "large packed", "small object", "small packed");
+        measure("none", null, large, small);
+        Recording without = new Recording(defaults);
+        for (String event : EVENTS) {
+            without.disable(event);
+        }
+        measure("default, no Dendron", without, large, small);
+        measure("default", new Recording(defaults), large, small);
+    }
+}
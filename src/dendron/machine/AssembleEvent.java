@@ -0,0 +1,30 @@
+package dendron.machine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for assembling one file with
+ * {@link InstructionReader#assemble(String)}.
+ *
+ * @author William Johnson
+ */
+@Name( "dendron.Assemble" )
+@Label( "Assemble" )
+@Category( "Dendron" )
+@Description( "A Dendron assembly file read and assembled" )
+final class AssembleEvent extends jdk.jfr.Event {
+
+    @Label( "File" )
+    String file;
+
+    @Label( "Bytes" )
+    @Description( "The size of the file" )
+    long bytes;
+
+    @Label( "Instructions" )
+    @Description( "How many instructions were assembled" )
+    int instructions;
+}
@@ -0,0 +1,437 @@
+package dendron.machine;
+
+import dendron.Errors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fast reader for the text (.denm) assembly format. The input is
+ * scanned a line at a time straight out of a byte buffer: mnemonics are
+ * matched byte by byte, integers are accumulated digit by digit, and
+ * each variable name is turned into a String only the first time it is
+ * seen. Results go into an ArrayList presized from the input length.
+ * Malformed lines are reported with their line numbers.
+ *
+ * @author William Johnson
+ */
+public class Assembler {
+    /** how many bytes to read from the input at a time; also the longest line */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** a rough lower bound on the bytes per instruction, for presizing */
+    private static final int BYTES_PER_INSTRUCTION = 6;
+
+    /** where the assembly code comes from */
+    private final InputStream in;
+    /** where malformed lines are reported */
+    private final PrintStream warnings;
+    /** bytes read but not yet scanned */
+    private final byte[] buffer;
+    /** the next unscanned byte in buffer */
+    private int pos;
+    /** the number of valid bytes in buffer */
+    private int limit;
+    /** true once the input has been exhausted */
+    private boolean eof;
+    /** the number of the line being scanned, counting from 1 */
+    private int line;
+
+    /** the slots of the variables seen so far */
+    private final SymbolTable symbols;
+    /** a hash table from name bytes to slot, so names need not be
+     *  turned into Strings more than once; entries are slot + 1 */
+    private int[] nameTable;
+    /** the name bytes of each slot, for comparison */
+    private final List< byte[] > nameBytes;
+
+    /** the smallest constant whose PUSH instruction is reused */
+    private static final int LOW_CONSTANT = -128;
+    /** PUSH instructions for small constants, created on first use */
+    private final Machine.Instruction[] pushes;
+    /** the LOAD instruction for each slot, created on first use */
+    private final List< Machine.Instruction > loads;
+    /** the STORE instruction for each slot, created on first use */
+    private final List< Machine.Instruction > stores;
+
+    /**
+     * Create an assembler that reports malformed lines on standard error.
+     * @param in the assembly code; it is not closed by this class
+     */
+    public Assembler( InputStream in ) {
+        this( in, System.err );
+    }
+
+    /**
+     * Create an assembler.
+     * @param in the assembly code; it is not closed by this class
+     * @param warnings where malformed lines are reported
+     */
+    public Assembler( InputStream in, PrintStream warnings ) {
+        this.in = in;
+        this.warnings = warnings;
+        this.buffer = new byte[ BUFFER_SIZE ];
+        this.pos = 0;
+        this.limit = 0;
+        this.eof = false;
+        this.line = 0;
+        this.symbols = new SymbolTable();
+        this.nameTable = new int[ 64 ];
+        this.nameBytes = new ArrayList<>();
+        this.pushes = new Machine.Instruction[ 1024 ];
+        this.loads = new ArrayList<>();
+        this.stores = new ArrayList<>();
+    }
+
+    /**
+     * Read the whole input and translate it to internal form.
+     * Unknown mnemonics and malformed operands are reported as warnings
+     * with their line numbers, and the line is skipped; a LOAD of
+     * a variable that has not been stored is a fatal error.
+     *
+     * @param sizeHint the length of the input in bytes, if known, or 0
+     * @return the instructions, in order
+     * @throws IOException if the input cannot be read
+     */
+    public List< Machine.Instruction > assemble( long sizeHint )
+            throws IOException {
+        List< Machine.Instruction > result = new ArrayList<>(
+                (int) Math.min( Integer.MAX_VALUE - 8,
+                        Math.max( 16, sizeHint / BYTES_PER_INSTRUCTION ) ) );
+        int end;
+        while ( ( end = nextLine() ) >= 0 ) {
+            Machine.Instruction instr = parseLine( end );
+            if ( instr != null ) {
+                result.add( instr );
+            }
+            this.pos = end + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Make sure a whole line is in the buffer.
+     * @return the index of the end of the line (a newline, or the end of
+     *         the data at end of input), or -1 if there are no more lines
+     * @throws IOException if the input cannot be read
+     */
+    private int nextLine() throws IOException {
+        int scan = this.pos;
+        while ( true ) {
+            while ( scan < this.limit ) {
+                if ( this.buffer[ scan ] == '\n' ) {
+                    ++this.line;
+                    return scan;
+                }
+                ++scan;
+            }
+            if ( this.eof ) {
+                if ( this.pos < this.limit ) {
+                    ++this.line;
+                    return this.limit;
+                }
+                return -1;
+            }
+            int kept = this.limit - this.pos;
+            if ( kept == this.buffer.length ) {
+                Errors.report( Errors.Type.ILLEGAL_VALUE,
+                        "line " + ( this.line + 1 ) + " is too long" );
+            }
+            System.arraycopy( this.buffer, this.pos, this.buffer, 0, kept );
+            scan -= this.pos;
+            this.pos = 0;
+            this.limit = kept;
+            int n = this.in.read( this.buffer, this.limit,
+                    this.buffer.length - this.limit );
+            if ( n < 0 ) {
+                this.eof = true;
+            }
+            else {
+                this.limit += n;
+            }
+        }
+    }
+
+    /**
+     * Tell whether a byte separates tokens.
+     * @param b the byte
+     * @return true for spaces, tabs and carriage returns
+     */
+    private static boolean isBlank( byte b ) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+    }
+
+    /**
+     * Skip blanks within the current line.
+     * @param at where to start
+     * @param end the end of the line
+     * @return the index of the next non-blank byte, or end
+     */
+    private int skipBlanks( int at, int end ) {
+        while ( at < end && isBlank( this.buffer[ at ] ) ) {
+            ++at;
+        }
+        return at;
+    }
+
+    /**
+     * Find the end of the token that starts at a given index.
+     * @param at the start of the token
+     * @param end the end of the line
+     * @return the index just past the token
+     */
+    private int tokenEnd( int at, int end ) {
+        while ( at < end && !isBlank( this.buffer[ at ] ) ) {
+            ++at;
+        }
+        return at;
+    }
+
+    /**
+     * Check whether a token in the buffer spells a given mnemonic.
+     */
+    private boolean matches( int start, int length, String mnemonic ) {
+        if ( length != mnemonic.length() ) {
+            return false;
+        }
+        for ( int i = 0; i < length; ++i ) {
+            if ( this.buffer[ start + i ] != mnemonic.charAt( i ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Translate a mnemonic to its opcode without creating a String.
+     * @param start where the mnemonic starts in the buffer
+     * @param length how many bytes it has
+     * @return one of the constants in {@link Opcodes}, or -1 if unknown
+     */
+    private int opcode( int start, int length ) {
+        switch ( this.buffer[ start ] ) {
+            case 'P':
+                return matches( start, length, "PUSH" ) ? Opcodes.PUSH
+                        : matches( start, length, "PRINT" ) ? Opcodes.PRINT : -1;
+            case 'L':
+                return matches( start, length, "LOAD" ) ? Opcodes.LOAD : -1;
+            case 'S':
+                return matches( start, length, "STORE" ) ? Opcodes.STORE
+                        : matches( start, length, "SUB" ) ? Opcodes.SUB
+                        : matches( start, length, "SQRT" ) ? Opcodes.SQRT : -1;
+            case 'A':
+                return matches( start, length, "ADD" ) ? Opcodes.ADD : -1;
+            case 'M':
+                return matches( start, length, "MUL" ) ? Opcodes.MUL : -1;
+            case 'D':
+                return matches( start, length, "DIV" ) ? Opcodes.DIV
+                        : matches( start, length, "DUP" ) ? Opcodes.DUP : -1;
+            case 'N':
+                return matches( start, length, "NEG" ) ? Opcodes.NEG : -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Report a malformed line as a warning.
+     * @param message what is wrong with the line
+     */
+    private void complain( String message ) {
+        this.warnings.println( message + " at line " + this.line );
+    }
+
+    /**
+     * Translate one line of assembly code.
+     * @param end the index of the end of the line
+     * @return the instruction, or null for a blank or malformed line
+     */
+    private Machine.Instruction parseLine( int end ) {
+        int start = skipBlanks( this.pos, end );
+        if ( start == end ) {
+            return null;
+        }
+        int stop = tokenEnd( start, end );
+        int opcode = opcode( start, stop - start );
+        if ( opcode < 0 ) {
+            complain( "Illegal assembly instr " + new String( this.buffer,
+                    start, stop - start, StandardCharsets.UTF_8 ) );
+            return null;
+        }
+        int operand = 0;
+        String name = null;
+        int next = skipBlanks( stop, end );
+        if ( Opcodes.hasOperand( opcode ) ) {
+            if ( next == end ) {
+                complain( "Missing operand for " + Opcodes.mnemonic( opcode ) );
+                return null;
+            }
+            stop = tokenEnd( next, end );
+            if ( opcode == Opcodes.PUSH ) {
+                long value = parseInteger( next, stop );
+                if ( value == Long.MIN_VALUE ) {
+                    complain( "Illegal integer " + new String( this.buffer,
+                            next, stop - next, StandardCharsets.UTF_8 ) );
+                    return null;
+                }
+                operand = (int) value;
+            }
+            else {
+                operand = slot( next, stop - next, opcode == Opcodes.STORE );
+                name = this.symbols.getName( operand );
+            }
+            next = skipBlanks( stop, end );
+        }
+        if ( next != end ) {
+            complain( "Extra tokens after " + Opcodes.mnemonic( opcode ) );
+            return null;
+        }
+        return instruction( opcode, operand, name );
+    }
+
+    /**
+     * Find the instruction object for a line. Instructions are
+     * immutable, so each distinct LOAD, STORE and small PUSH is created
+     * only once per program instead of once per line.
+     * @param opcode one of the constants in {@link Opcodes}
+     * @param operand the constant or slot
+     * @param name the variable name, for LOAD and STORE
+     * @return the instruction
+     */
+    private Machine.Instruction instruction( int opcode, int operand,
+                                             String name ) {
+        if ( opcode == Opcodes.PUSH ) {
+            int index = operand - LOW_CONSTANT;
+            if ( index < 0 || index >= this.pushes.length ) {
+                return Machine.instruction( opcode, operand, null );
+            }
+            if ( this.pushes[ index ] == null ) {
+                this.pushes[ index ] =
+                        Machine.instruction( opcode, operand, null );
+            }
+            return this.pushes[ index ];
+        }
+        if ( opcode == Opcodes.LOAD || opcode == Opcodes.STORE ) {
+            List< Machine.Instruction > cache =
+                    opcode == Opcodes.LOAD ? this.loads : this.stores;
+            while ( cache.size() <= operand ) {
+                cache.add( null );
+            }
+            if ( cache.get( operand ) == null ) {
+                cache.set( operand, Machine.instruction( opcode, operand, name ) );
+            }
+            return cache.get( operand );
+        }
+        return Machine.instruction( opcode, operand, name );
+    }
+
+    /**
+     * Parse a decimal integer in the buffer without creating a String.
+     * @param start the first byte of the integer
+     * @param stop just past the last byte
+     * @return the value, or Long.MIN_VALUE if it is not a valid int
+     */
+    private long parseInteger( int start, int stop ) {
+        boolean negative = false;
+        if ( this.buffer[ start ] == '-' || this.buffer[ start ] == '+' ) {
+            negative = this.buffer[ start ] == '-';
+            ++start;
+        }
+        if ( start == stop ) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for ( int i = start; i < stop; ++i ) {
+            int digit = this.buffer[ i ] - '0';
+            if ( digit < 0 || digit > 9 ) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+            if ( value > (long) Integer.MAX_VALUE + 1 ) {
+                return Long.MIN_VALUE;
+            }
+        }
+        value = negative ? -value : value;
+        return value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+    }
+
+    /**
+     * Find the slot of a variable named in the buffer, allocating one
+     * if it is being stored for the first time. Slots are only
+     * allocated by STORE, so a load of a variable without a slot is
+     * reported as uninitialized.
+     * @param start the first byte of the name
+     * @param length the length of the name
+     * @param store true for STORE, false for LOAD
+     * @return the variable's slot
+     */
+    private int slot( int start, int length, boolean store ) {
+        int hash = 1;
+        for ( int i = 0; i < length; ++i ) {
+            hash = 31 * hash + this.buffer[ start + i ];
+        }
+        int mask = this.nameTable.length - 1;
+        int index = ( hash ^ ( hash >>> 16 ) ) & mask;
+        int slot;
+        while ( ( slot = this.nameTable[ index ] - 1 ) >= 0 ) {
+            byte[] known = this.nameBytes.get( slot );
+            if ( known.length == length && sameBytes( known, start ) ) {
+                break;
+            }
+            index = ( index + 1 ) & mask;
+        }
+        if ( slot < 0 ) {
+            String name =
+                    new String( this.buffer, start, length, StandardCharsets.UTF_8 );
+            if ( !store ) {
+                Errors.report( Errors.Type.UNINITIALIZED,
+                        name + " at line " + this.line );
+            }
+            slot = this.symbols.store( name );
+            byte[] copy = new byte[ length ];
+            System.arraycopy( this.buffer, start, copy, 0, length );
+            this.nameBytes.add( copy );
+            this.nameTable[ index ] = slot + 1;
+            if ( this.nameBytes.size() * 2 > this.nameTable.length ) {
+                rehash();
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Compare a known name with bytes in the buffer.
+     */
+    private boolean sameBytes( byte[] known, int start ) {
+        for ( int i = 0; i < known.length; ++i ) {
+            if ( known[ i ] != this.buffer[ start + i ] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Double the size of the name hash table.
+     */
+    private void rehash() {
+        int[] table = new int[ 2 * this.nameTable.length ];
+        int mask = table.length - 1;
+        for ( int slot = 0; slot < this.nameBytes.size(); ++slot ) {
+            int hash = 1;
+            for ( byte b: this.nameBytes.get( slot ) ) {
+                hash = 31 * hash + b;
+            }
+            int index = ( hash ^ ( hash >>> 16 ) ) & mask;
+            while ( table[ index ] != 0 ) {
+                index = ( index + 1 ) & mask;
+            }
+            table[ index ] = slot + 1;
+        }
+        this.nameTable = table;
+    }
+}
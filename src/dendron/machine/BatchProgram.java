@@ -0,0 +1,331 @@
+package dendron.machine;
+
+import dendron.Errors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Machine program that runs over many rows of input at once. Some of
+ * the program's variables are bound to input columns rather than
+ * assigned by the program; every other variable, and the value of
+ * every PRINT, comes back as a result column.
+ *
+ * Instead of running the program once per row, each instruction is
+ * run over a block of rows before the next one starts: the stack and
+ * the frame hold one int[] vector per entry instead of one int. The
+ * arithmetic is done by simple counted loops over int arrays, which
+ * HotSpot compiles to SIMD instructions on machines that have them.
+ *
+ * Like a PackedProgram, a BatchProgram never changes once created, so
+ * one instance may run batches on many threads at once.
+ *
+ * @author William Johnson
+ */
+public final class BatchProgram {
+
+    /** how many rows each instruction works on at a time */
+    public static final int BLOCK = 1024;
+
+    /** the prefix of the names of the PRINT result columns */
+    public static final String PRINT_PREFIX = "@";
+
+    /** the program for running one row at a time */
+    private final PackedProgram program;
+    /** the opcodes and inline operands */
+    private final int[] code;
+    /** the names of the variable slots */
+    private final SymbolTable symbols;
+    /** the most values the program ever has on the stack */
+    private final int maxStackDepth;
+    /** the names of the input columns, in order */
+    private final List< String > inputs;
+    /** the slot each input is bound to, or -1 if the program never uses it */
+    private final int[] inputSlots;
+    /** the slots whose final values are results */
+    private final int[] outputSlots;
+    /** how many PRINT instructions the program has */
+    private final int prints;
+
+    /**
+     * Verify a program whose inputs are bound to columns.
+     * Every LOAD must be of an input or of a variable stored earlier.
+     *
+     * @param program a list of Machine instructions
+     * @param inputs the names of the variables supplied as columns
+     */
+    public BatchProgram( List< Machine.Instruction > program,
+                         List< String > inputs ) {
+        this.program = new PackedProgram( new CompiledProgram( program, inputs ) );
+        this.code = this.program.getCode();
+        this.symbols = this.program.getSymbols();
+        this.maxStackDepth = this.program.getMaxStackDepth();
+        this.inputs = Collections.unmodifiableList( new ArrayList<>( inputs ) );
+        this.inputSlots = new int[ inputs.size() ];
+        boolean[] bound = new boolean[ this.symbols.size() ];
+        for ( int i = 0; i < this.inputSlots.length; ++i ) {
+            this.inputSlots[ i ] = this.symbols.find( inputs.get( i ) );
+            if ( this.inputSlots[ i ] >= 0 ) {
+                bound[ this.inputSlots[ i ] ] = true;
+            }
+        }
+        Verifier.maxStackDepth( this.code, this.symbols, bound );
+        List< Integer > outputs = new ArrayList<>();
+        boolean[] stored = new boolean[ this.symbols.size() ];
+        int printCount = 0;
+        for ( int pc = 0; pc < this.code.length; ) {
+            int opcode = this.code[ pc++ ];
+            if ( opcode == Opcodes.STORE && !stored[ this.code[ pc ] ] ) {
+                stored[ this.code[ pc ] ] = true;
+                if ( !SymbolTable.isTemporary(
+                        this.symbols.getName( this.code[ pc ] ) ) ) {
+                    outputs.add( this.code[ pc ] );
+                }
+            }
+            else if ( opcode == Opcodes.PRINT ) {
+                ++printCount;
+            }
+            if ( Opcodes.hasOperand( opcode ) ) {
+                ++pc;
+            }
+        }
+        Collections.sort( outputs );
+        this.outputSlots = new int[ outputs.size() ];
+        for ( int i = 0; i < this.outputSlots.length; ++i ) {
+            this.outputSlots[ i ] = outputs.get( i );
+        }
+        this.prints = printCount;
+    }
+
+    /**
+     * Show the names of the input columns
+     * @return the inputs, in the order given to the constructor
+     */
+    public List< String > getInputs() {
+        return this.inputs;
+    }
+
+    /**
+     * Show the slots the inputs are bound to, for running the program
+     * one row at a time with {@link Machine#run(PackedProgram, int[], int[])}
+     * @return a new array with the slot of each input, or -1 for an
+     *         input the program never reads
+     */
+    public int[] getInputSlots() {
+        return this.inputSlots.clone();
+    }
+
+    /**
+     * Show the slots of the variables the program assigns, which give
+     * the first result columns
+     * @return a new array with the slot of each variable result column
+     */
+    public int[] getOutputSlots() {
+        return this.outputSlots.clone();
+    }
+
+    /**
+     * Show the program in the form a Machine runs one row at a time
+     * @return the packed program
+     */
+    public PackedProgram getProgram() {
+        return this.program;
+    }
+
+    /**
+     * Show the names of the result columns: the variables the program
+     * assigns, in slot order, then "@0", "@1", ... for each PRINT.
+     * @return the names of the columns {@link #run} returns
+     */
+    public List< String > getOutputs() {
+        List< String > result = new ArrayList<>();
+        for ( int slot: this.outputSlots ) {
+            result.add( this.symbols.getName( slot ) );
+        }
+        for ( int i = 0; i < this.prints; ++i ) {
+            result.add( PRINT_PREFIX + i );
+        }
+        return result;
+    }
+
+    /**
+     * Run the program over every row of the input columns.
+     *
+     * @param columns the input values, one column per input name, all
+     *                of the same length
+     * @return the result columns, named as in {@link #getOutputs()}
+     */
+    public Map< String, int[] > run( Map< String, int[] > columns ) {
+        int[][] in = new int[ this.inputs.size() ][];
+        int rows = -1;
+        for ( int i = 0; i < in.length; ++i ) {
+            in[ i ] = columns.get( this.inputs.get( i ) );
+            if ( in[ i ] == null ) {
+                Errors.report( Errors.Type.UNINITIALIZED,
+                        "input column " + this.inputs.get( i ) );
+            }
+            if ( rows >= 0 && in[ i ].length != rows ) {
+                Errors.report( Errors.Type.ILLEGAL_VALUE, "input column "
+                        + this.inputs.get( i ) + " has " + in[ i ].length
+                        + " rows, not " + rows );
+            }
+            rows = in[ i ].length;
+        }
+        return run( in, Math.max( rows, 0 ) );
+    }
+
+    /**
+     * Run the program over rows of input columns given in the order
+     * of {@link #getInputs()}.
+     *
+     * @param in the input columns
+     * @param rows how many rows to run
+     * @return the result columns, named as in {@link #getOutputs()}
+     */
+    public Map< String, int[] > run( int[][] in, int rows ) {
+        int[][] out = new int[ this.outputSlots.length + this.prints ][ rows ];
+        run( in, out, 0, rows );
+        Map< String, int[] > result = new LinkedHashMap<>();
+        List< String > names = getOutputs();
+        for ( int i = 0; i < out.length; ++i ) {
+            result.put( names.get( i ), out[ i ] );
+        }
+        return result;
+    }
+
+    /**
+     * Run the program over a range of rows, writing into result columns
+     * that have already been allocated. Different ranges may be run at
+     * the same time on different threads.
+     *
+     * @param in the input columns, in the order of {@link #getInputs()}
+     * @param out the result columns, in the order of {@link #getOutputs()}
+     * @param from the first row to run
+     * @param to one past the last row to run
+     */
+    public void run( int[][] in, int[][] out, int from, int to ) {
+        int[][] stack = new int[ this.maxStackDepth ][ BLOCK ];
+        int[][] frame = new int[ this.symbols.size() ][ BLOCK ];
+        // the column each slot is read from while it still holds its input
+        int[][] bound = new int[ this.symbols.size() ][];
+        for ( int start = from; start < to; start += BLOCK ) {
+            int n = Math.min( BLOCK, to - start );
+            for ( int i = 0; i < this.inputSlots.length; ++i ) {
+                if ( this.inputSlots[ i ] >= 0 ) {
+                    bound[ this.inputSlots[ i ] ] = in[ i ];
+                }
+            }
+            runBlock( stack, frame, bound, out, start, n );
+            for ( int i = 0; i < this.outputSlots.length; ++i ) {
+                System.arraycopy( frame[ this.outputSlots[ i ] ], 0,
+                        out[ i ], start, n );
+            }
+        }
+    }
+
+    /**
+     * Run every instruction over one block of rows.
+     *
+     * @param stack one vector per stack entry
+     * @param frame one vector per slot
+     * @param bound the input column of each slot not yet stored into
+     * @param out the result columns
+     * @param start the row the block starts at
+     * @param n how many rows the block has
+     */
+    private void runBlock( int[][] stack, int[][] frame, int[][] bound,
+                           int[][] out, int start, int n ) {
+        final int[] code = this.code;
+        int sp = 0;
+        int print = this.outputSlots.length;
+        int pc = 0;
+        while ( pc < code.length ) {
+            int opcode = code[ pc++ ];
+            switch ( opcode ) {
+                case Opcodes.PUSH:
+                    Arrays.fill( stack[ sp++ ], 0, n, code[ pc++ ] );
+                    break;
+                case Opcodes.LOAD: {
+                    int slot = code[ pc++ ];
+                    if ( bound[ slot ] != null ) {
+                        System.arraycopy( bound[ slot ], start, stack[ sp++ ], 0, n );
+                    }
+                    else {
+                        System.arraycopy( frame[ slot ], 0, stack[ sp++ ], 0, n );
+                    }
+                    break;
+                }
+                case Opcodes.STORE: {
+                    // swap vectors instead of copying
+                    int slot = code[ pc++ ];
+                    int[] value = stack[ --sp ];
+                    stack[ sp ] = frame[ slot ];
+                    frame[ slot ] = value;
+                    bound[ slot ] = null;
+                    break;
+                }
+                case Opcodes.ADD: {
+                    int[] b = stack[ --sp ];
+                    int[] a = stack[ sp - 1 ];
+                    for ( int i = 0; i < n; ++i ) {
+                        a[ i ] += b[ i ];
+                    }
+                    break;
+                }
+                case Opcodes.SUB: {
+                    int[] b = stack[ --sp ];
+                    int[] a = stack[ sp - 1 ];
+                    for ( int i = 0; i < n; ++i ) {
+                        a[ i ] -= b[ i ];
+                    }
+                    break;
+                }
+                case Opcodes.MUL: {
+                    int[] b = stack[ --sp ];
+                    int[] a = stack[ sp - 1 ];
+                    for ( int i = 0; i < n; ++i ) {
+                        a[ i ] *= b[ i ];
+                    }
+                    break;
+                }
+                case Opcodes.DIV: {
+                    int[] b = stack[ --sp ];
+                    int[] a = stack[ sp - 1 ];
+                    for ( int i = 0; i < n; ++i ) {
+                        if ( b[ i ] == 0 ) {
+                            Errors.report( Errors.Type.DIVIDE_BY_ZERO,
+                                    "row " + ( start + i ) );
+                        }
+                        a[ i ] /= b[ i ];
+                    }
+                    break;
+                }
+                case Opcodes.NEG: {
+                    int[] a = stack[ sp - 1 ];
+                    for ( int i = 0; i < n; ++i ) {
+                        a[ i ] = -a[ i ];
+                    }
+                    break;
+                }
+                case Opcodes.SQRT: {
+                    int[] a = stack[ sp - 1 ];
+                    for ( int i = 0; i < n; ++i ) {
+                        a[ i ] = (int) Math.pow( a[ i ], 0.5 );
+                    }
+                    break;
+                }
+                case Opcodes.PRINT:
+                    System.arraycopy( stack[ --sp ], 0, out[ print++ ], start, n );
+                    break;
+                case Opcodes.DUP:
+                    System.arraycopy( stack[ sp - 1 ], 0, stack[ sp ], 0, n );
+                    ++sp;
+                    break;
+            }
+        }
+    }
+}
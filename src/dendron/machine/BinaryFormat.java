@@ -0,0 +1,352 @@
+package dendron.machine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reading and writing the binary (.denb) form of Machine programs.
+ * A .denb file holds, in big-endian order:
+ * <ul>
+ *     <li>the magic number "DENB" and a format version (short)</li>
+ *     <li>the instruction count and the packed code length in words</li>
+ *     <li>a constant pool: a count, then each distinct PUSH constant</li>
+ *     <li>an identifier table: a count, then each slot's name as a
+ *         short byte length followed by UTF-8 bytes; a slot with
+ *         no name has length 0</li>
+ *     <li>the instruction stream: one opcode byte per instruction,
+ *         followed by a constant pool index for PUSH or a slot number
+ *         for LOAD and STORE, each as an int</li>
+ *     <li>a CRC-32 checksum of everything before it (int)</li>
+ * </ul>
+ * Loading maps the file into memory and decodes it straight into the
+ * int[] of a PackedProgram; the only Strings created are the names in
+ * the identifier table. A file whose checksum does not match is
+ * rejected before it is decoded, so damage that would still leave a
+ * valid program, such as a changed constant, is not run as wrong code.
+ *
+ * @author William Johnson
+ */
+public class BinaryFormat {
+
+    /** the first four bytes of every .denb file: "DENB" */
+    public static final int MAGIC = 0x44454E42;
+
+    /** the version of the format written by this class */
+    public static final short VERSION = 2;
+
+    /** the longest variable name, in UTF-8 bytes, that a file can hold */
+    public static final int MAX_NAME = 0xFFFF;
+
+    /** the most bytes of a file that are mapped into memory at once */
+    static final long WINDOW = 1L << 30;
+
+    private BinaryFormat() {}
+
+    /**
+     * Write a program in binary form.
+     *
+     * @param program the program to write
+     * @param file where to write it; any existing file is replaced
+     * @throws IOException if the file cannot be written, or the program
+     *                     has a variable name longer than {@link #MAX_NAME}
+     *                     bytes; nothing is written in that case
+     */
+    public static void write( PackedProgram program, Path file )
+            throws IOException {
+        SymbolTable symbols = program.getSymbols();
+        byte[][] names = new byte[ symbols.size() ][];
+        for ( int slot = 0; slot < names.length; ++slot ) {
+            String name = symbols.getName( slot );
+            names[ slot ] = name == null ? new byte[ 0 ]
+                    : name.getBytes( StandardCharsets.UTF_8 );
+            if ( names[ slot ].length > MAX_NAME ) {
+                throw new IOException( file + ": variable name of "
+                        + names[ slot ].length + " bytes is longer than the "
+                        + MAX_NAME + " a .denb file can hold" );
+            }
+        }
+        int[] code = program.getCode();
+        Map< Integer, Integer > poolIndex = new HashMap<>();
+        List< Integer > pool = new ArrayList<>();
+        for ( int pc = 0; pc < code.length; ) {
+            int opcode = code[ pc++ ];
+            if ( opcode == Opcodes.PUSH ) {
+                int constant = code[ pc ];
+                if ( !poolIndex.containsKey( constant ) ) {
+                    poolIndex.put( constant, pool.size() );
+                    pool.add( constant );
+                }
+            }
+            if ( Opcodes.hasOperand( opcode ) ) {
+                ++pc;
+            }
+        }
+        CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream( Files.newOutputStream( file ),
+                        1 << 16 ), new CRC32() );
+        try ( DataOutputStream out = new DataOutputStream( checked ) ) {
+            out.writeInt( MAGIC );
+            out.writeShort( VERSION );
+            out.writeInt( program.getLength() );
+            out.writeInt( code.length );
+            out.writeInt( pool.size() );
+            for ( int constant: pool ) {
+                out.writeInt( constant );
+            }
+            out.writeInt( names.length );
+            for ( byte[] name: names ) {
+                out.writeShort( name.length );
+                out.write( name );
+            }
+            for ( int pc = 0; pc < code.length; ) {
+                int opcode = code[ pc++ ];
+                out.writeByte( opcode );
+                if ( opcode == Opcodes.PUSH ) {
+                    out.writeInt( poolIndex.get( code[ pc++ ] ) );
+                }
+                else if ( Opcodes.hasOperand( opcode ) ) {
+                    out.writeInt( code[ pc++ ] );
+                }
+            }
+            out.writeInt( (int) checked.getChecksum().getValue() );
+        }
+    }
+
+    /**
+     * Load a program from a binary file. The file is memory-mapped
+     * rather than read through a stream, one window of at most
+     * {@link #WINDOW} bytes at a time, so files larger than a single
+     * mapping can hold are loaded too. The program is verified before
+     * it is returned.
+     *
+     * @param file the .denb file
+     * @return the program, ready to run
+     * @throws IOException if the file cannot be read or is not a
+     *                     well-formed .denb file
+     */
+    public static PackedProgram load( Path file ) throws IOException {
+        try ( FileChannel channel = FileChannel.open( file,
+                StandardOpenOption.READ ) ) {
+            long end = channel.size() - Integer.BYTES;
+            if ( end < 0 ) {
+                throw new IOException( file + ": truncated or corrupt .denb file" );
+            }
+            CRC32 crc = new CRC32();
+            for ( long start = 0; start < end; start += WINDOW ) {
+                crc.update( channel.map( FileChannel.MapMode.READ_ONLY,
+                        start, Math.min( WINDOW, end - start ) ) );
+            }
+            int checksum = channel.map( FileChannel.MapMode.READ_ONLY,
+                    end, Integer.BYTES ).getInt();
+            if ( checksum != (int) crc.getValue() ) {
+                throw new IOException( file + ": checksum mismatch in .denb file" );
+            }
+            return decode( new Input( channel, end, file ), file );
+        }
+        catch ( IndexOutOfBoundsException e ) {
+            throw new IOException( file + ": truncated or corrupt .denb file" );
+        }
+    }
+
+    /**
+     * The part of a .denb file before its checksum, mapped into memory
+     * one window at a time. Each read first makes sure the current
+     * window holds all of the bytes it needs, mapping the next window
+     * if it does not.
+     */
+    private static final class Input {
+        /** the open file */
+        private final FileChannel channel;
+        /** the offset of the end of the data, where the checksum starts */
+        private final long end;
+        /** the file name, for error messages */
+        private final Path file;
+        /** the current window */
+        private ByteBuffer window;
+        /** the offset in the file of the start of the current window */
+        private long base;
+
+        /**
+         * Map the first window of a file.
+         *
+         * @param channel the open file
+         * @param end the offset of the end of the data
+         * @param file the file name, for error messages
+         * @throws IOException if the file cannot be mapped
+         */
+        Input( FileChannel channel, long end, Path file ) throws IOException {
+            this.channel = channel;
+            this.end = end;
+            this.file = file;
+            this.base = 0;
+            this.window = channel.map( FileChannel.MapMode.READ_ONLY,
+                    0, Math.min( WINDOW, end ) );
+        }
+
+        /**
+         * Make sure the current window holds the next few bytes.
+         *
+         * @param bytes how many bytes are about to be read
+         * @throws IOException if the data ends before then
+         */
+        private void need( int bytes ) throws IOException {
+            if ( this.window.remaining() < bytes ) {
+                long position = this.base + this.window.position();
+                if ( this.end - position < bytes ) {
+                    throw new IOException( this.file
+                            + ": truncated or corrupt .denb file" );
+                }
+                this.window = this.channel.map( FileChannel.MapMode.READ_ONLY,
+                        position, Math.min( WINDOW, this.end - position ) );
+                this.base = position;
+            }
+        }
+
+        /**
+         * Show how many bytes of data are left.
+         * @return the number of bytes before the checksum not yet read
+         */
+        long remaining() {
+            return this.end - this.base - this.window.position();
+        }
+
+        /**
+         * Read one byte.
+         * @return the byte
+         * @throws IOException if the data has ended
+         */
+        byte get() throws IOException {
+            need( 1 );
+            return this.window.get();
+        }
+
+        /**
+         * Read a big-endian short.
+         * @return the short
+         * @throws IOException if the data has ended
+         */
+        short getShort() throws IOException {
+            need( Short.BYTES );
+            return this.window.getShort();
+        }
+
+        /**
+         * Read a big-endian int.
+         * @return the int
+         * @throws IOException if the data has ended
+         */
+        int getInt() throws IOException {
+            need( Integer.BYTES );
+            return this.window.getInt();
+        }
+
+        /**
+         * Fill an array with the next bytes, which may span windows.
+         * @param bytes the array
+         * @throws IOException if the data has ended
+         */
+        void get( byte[] bytes ) throws IOException {
+            int done = 0;
+            while ( done < bytes.length ) {
+                need( 1 );
+                int length = Math.min( this.window.remaining(),
+                        bytes.length - done );
+                this.window.get( bytes, done, length );
+                done += length;
+            }
+        }
+    }
+
+    /**
+     * Check a count read from a .denb file before anything is allocated
+     * for it, so that a corrupt file cannot ask for a negative or
+     * enormous array.
+     *
+     * @param value the count
+     * @param bytes the fewest bytes each counted item takes in the file
+     * @param in the rest of the file
+     * @param file the file name, for error messages
+     * @return the count
+     * @throws IOException if the rest of the file is too short to hold
+     *                     that many items
+     */
+    private static int checkCount( int value, int bytes, Input in,
+                                   Path file ) throws IOException {
+        if ( value < 0 || value > in.remaining() / bytes ) {
+            throw new IOException( file + ": truncated or corrupt .denb file" );
+        }
+        return value;
+    }
+
+    /**
+     * Decode the contents of a .denb file.
+     *
+     * @param in the file contents up to the checksum, positioned at the start
+     * @param file the file name, for error messages
+     * @return the program
+     * @throws IOException if the contents are not a .denb program
+     */
+    private static PackedProgram decode( Input in, Path file )
+            throws IOException {
+        if ( in.getInt() != MAGIC ) {
+            throw new IOException( file + ": not a .denb file" );
+        }
+        short version = in.getShort();
+        if ( version != VERSION ) {
+            throw new IOException( file + ": unsupported .denb version "
+                    + version );
+        }
+        int count = checkCount( in.getInt(), 1, in, file );
+        int words = in.getInt();
+        int[] pool = new int[ checkCount( in.getInt(), 4, in, file ) ];
+        for ( int i = 0; i < pool.length; ++i ) {
+            pool[ i ] = in.getInt();
+        }
+        SymbolTable symbols = new SymbolTable();
+        int identifiers = checkCount( in.getInt(), 2, in, file );
+        for ( int slot = 0; slot < identifiers; ++slot ) {
+            byte[] name = new byte[ in.getShort() & 0xFFFF ];
+            in.get( name );
+            if ( name.length == 0 ) {
+                symbols.unnamed();
+            }
+            else {
+                symbols.store( new String( name, StandardCharsets.UTF_8 ) );
+            }
+        }
+        if ( symbols.size() != identifiers ) {
+            throw new IOException( file + ": duplicate identifier" );
+        }
+        // every word of code takes at least one byte of the file
+        int[] code = new int[ checkCount( words, 1, in, file ) ];
+        int pc = 0;
+        for ( int i = 0; i < count; ++i ) {
+            int opcode = in.get();
+            code[ pc++ ] = opcode;
+            if ( opcode == Opcodes.PUSH ) {
+                code[ pc++ ] = pool[ in.getInt() ];
+            }
+            else if ( Opcodes.hasOperand( opcode ) ) {
+                code[ pc++ ] = in.getInt();
+            }
+        }
+        if ( pc != words || in.remaining() != 0 ) {
+            throw new IOException( file + ": instruction stream does not "
+                    + "match its header" );
+        }
+        return new PackedProgram( code, symbols );
+    }
+}
@@ -0,0 +1,118 @@
+package dendron.machine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Machine program that has been verified and is ready to run.
+ * A CompiledProgram never changes once it has been created, so one
+ * instance may be run by many Machines on many threads at once.
+ *
+ * @author William Johnson
+ */
+public final class CompiledProgram {
+    /** the instructions, in order */
+    private final Machine.Instruction[] code;
+    /** the names of the variable slots; never modified after construction */
+    private final SymbolTable symbols;
+    /** the most values the program ever has on the stack */
+    private final int maxStackDepth;
+    /** how many of each opcode the program has; only counted while
+        {@link MachineStatistics} are enabled */
+    private final long[] opcodeCounts;
+
+    /**
+     * Verify a list of instructions and capture it as a program.
+     * Later changes to the list do not affect the program.
+     * Every slot must be stored before it is loaded.
+     *
+     * @param program a list of Machine instructions
+     */
+    public CompiledProgram( List< Machine.Instruction > program ) {
+        this( program, List.of() );
+    }
+
+    /**
+     * Verify a program some of whose variables hold values before it
+     * starts, such as the input columns of a batch. Every other slot
+     * must be stored before it is loaded.
+     *
+     * @param program a list of Machine instructions
+     * @param inputs the names of the variables supplied from outside
+     * @see BatchProgram
+     */
+    CompiledProgram( List< Machine.Instruction > program, List< String > inputs ) {
+        this.maxStackDepth = Verifier.maxStackDepth( program );
+        this.code = program.toArray( new Machine.Instruction[ 0 ] );
+        this.symbols = SymbolTable.of( program );
+        boolean[] bound = new boolean[ this.symbols.size() ];
+        for ( String input: inputs ) {
+            int slot = this.symbols.find( input );
+            if ( slot >= 0 ) {
+                bound[ slot ] = true;
+            }
+        }
+        Verifier.checkInitialized( this.code, bound );
+        this.opcodeCounts = MachineStatistics.ENABLED ? MachineStatistics.count( this.code ) : null;
+    }
+
+    /**
+     * Show how many instructions of each kind the program has. Programs
+     * have no branches, so this is also how many of each a run executes.
+     * @return the counts, indexed by opcode, or null if
+     *         {@link MachineStatistics} are not enabled
+     */
+    long[] getOpcodeCounts() {
+        return this.opcodeCounts;
+    }
+
+    /**
+     * Show the program's instructions
+     * @return an unmodifiable list of the instructions, in order
+     */
+    public List< Machine.Instruction > getInstructions() {
+        return Collections.unmodifiableList( Arrays.asList( this.code ) );
+    }
+
+    /**
+     * Show the most values the program ever has on the stack
+     * @return the maximum stack depth computed by the Verifier
+     */
+    public int getMaxStackDepth() {
+        return this.maxStackDepth;
+    }
+
+    /**
+     * Show how many variable slots the program uses
+     * @return the size of the frame the program needs
+     */
+    public int getFrameSize() {
+        return this.symbols.size();
+    }
+
+    /**
+     * Show the name of one of the program's variables
+     * @param slot the frame slot of the variable
+     * @return the variable's name
+     */
+    public String getName( int slot ) {
+        return this.symbols.getName( slot );
+    }
+
+    /**
+     * Give a Machine direct access to the instructions.
+     * @return the instruction array, which must not be modified
+     */
+    Machine.Instruction[] getCode() {
+        return this.code;
+    }
+
+    /**
+     * Give a Machine the slot-to-name table for its final report.
+     * @return the symbol table, which must not be modified
+     */
+    SymbolTable getSymbols() {
+        return this.symbols;
+    }
+}
@@ -0,0 +1,138 @@
+package dendron.machine;
+
+import dendron.DendronException;
+import dendron.Errors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Convert Machine programs between the text (.denm) and binary (.denb)
+ * assembly formats, and check that the conversion is lossless.
+ *
+ * @author William Johnson
+ */
+public class DenbConverter {
+
+    private DenbConverter() {}
+
+    /**
+     * Write a program in text assembly form, one instruction per line.
+     *
+     * @param program the instructions
+     * @param file where to write them
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeText( List< Machine.Instruction > program,
+                                  Path file ) throws IOException {
+        try ( PrintWriter out =
+                      new PrintWriter( Files.newBufferedWriter( file ) ) ) {
+            for ( Machine.Instruction instr: program ) {
+                out.println( instr );
+            }
+        }
+    }
+
+    /**
+     * Convert one file; the direction is chosen by the input file's
+     * extension.
+     *
+     * @param input a .denm or .denb file
+     * @param output where to write the other format
+     * @throws IOException if either file cannot be used
+     */
+    public static void convert( String input, String output )
+            throws IOException {
+        if ( input.endsWith( ".denb" ) ) {
+            writeText( BinaryFormat.load( Paths.get( input ) ).getInstructions(),
+                    Paths.get( output ) );
+        }
+        else {
+            List< Machine.Instruction > code =
+                    InstructionReader.assemble( input );
+            if ( code == null ) {
+                throw new IOException( "Could not assemble " + input );
+            }
+            BinaryFormat.write( new PackedProgram( new CompiledProgram( code ) ),
+                    Paths.get( output ) );
+        }
+    }
+
+    /**
+     * Run a program and capture everything it writes.
+     *
+     * @param program the program
+     * @return the execution report, as Machine.execute would print it
+     */
+    private static String run( PackedProgram program ) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new Machine( new PrintStream( bytes, true ) ).execute( program );
+        return bytes.toString();
+    }
+
+    /**
+     * Round-trip every .denm file in a directory through the binary
+     * format, checking that the listing and the execution report are
+     * unchanged.
+     *
+     * @param dir the directory of .denm files
+     * @return true if every file survived the round trip
+     * @throws IOException if a temporary file cannot be used
+     */
+    public static boolean verify( String dir ) throws IOException {
+        File[] files = new File( dir ).listFiles(
+                ( d, name ) -> name.endsWith( ".denm" ) );
+        if ( files == null ) {
+            throw new IOException( "Could not read directory " + dir );
+        }
+        Arrays.sort( files );
+        boolean allGood = true;
+        Path temp = Files.createTempFile( "roundtrip", ".denb" );
+        try {
+            for ( File file: files ) {
+                PackedProgram original = new PackedProgram( new CompiledProgram(
+                        InstructionReader.assemble( file.getPath() ) ) );
+                BinaryFormat.write( original, temp );
+                PackedProgram copy = BinaryFormat.load( temp );
+                boolean same = original.getInstructions().toString().equals(
+                        copy.getInstructions().toString() )
+                        && run( original ).equals( run( copy ) );
+                System.out.println( ( same ? "ok   " : "FAIL " ) + file.getName() );
+                allGood &= same;
+            }
+        }
+        finally {
+            Files.deleteIfExists( temp );
+        }
+        return allGood;
+    }
+
+    /**
+     * Convert a program between formats, or verify a directory.
+     * @param args input and output file names, or -verify and a directory
+     */
+    public static void main( String[] args ) throws IOException {
+        if ( args.length != 2 ) {
+            System.err.println( "Usage: java DenbConverter input-file output-file" );
+            System.err.println( "       java DenbConverter -verify assembly-directory" );
+            System.exit( 1 );
+        }
+        try {
+            if ( args[ 0 ].equals( "-verify" ) ) {
+                System.exit( verify( args[ 1 ] ) ? 0 : 1 );
+            }
+            convert( args[ 0 ], args[ 1 ] );
+        }
+        catch ( DendronException e ) {
+            Errors.abort( e );
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package dendron.machine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one program executed by a Machine,
+ * from {@link Machine#begin} to {@link Machine#finish}, not counting
+ * the final report. Programs can be run many thousands of times a
+ * second, so no stack trace is taken unless a recording asks for one.
+ *
+ * @author William Johnson
+ */
+@Name( "dendron.Execute" )
+@Label( "Execute Program" )
+@Category( "Dendron" )
+@Description( "A Dendron program executed by a Machine" )
+@StackTrace( false )
+final class ExecuteEvent extends jdk.jfr.Event {
+
+    @Label( "Form" )
+    @Description( "How the program was run: object, packed, register, jit or statements" )
+    String form;
+
+    @Label( "Instructions" )
+    @Description( "How many stack instructions the program has" )
+    int instructions;
+
+    @Label( "Variables" )
+    @Description( "How many slots the program's frame has" )
+    int variables;
+
+    @Label( "Left On Stack" )
+    @Description( "How many values were left on the stack at the end" )
+    int leftOnStack;
+}
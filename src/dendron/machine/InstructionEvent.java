@@ -0,0 +1,158 @@
+package dendron.machine;
+
+import java.util.Set;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingControl;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Java Flight Recorder event for one instruction executed by a
+ * Machine. Recording every instruction would cost far more than running
+ * it, so only every n-th instruction of a program is timed, where n is
+ * the event's "interval" setting (10000 unless a recording asks for
+ * another). Its "threshold" setting then drops samples that ran faster
+ * than it, such as all but the PRINTs that waited on their output.
+ * For example, a .jfc file or the JFR.start command may set
+ * {@code dendron.Instruction#interval=100} and
+ * {@code dendron.Instruction#threshold=1 us}.
+ *
+ * While the event is not being recorded, the Machine runs its usual
+ * loops and never looks at the interval.
+ *
+ * @author William Johnson
+ */
+@Name( "dendron.Instruction" )
+@Label( "Instruction Sample" )
+@Category( "Dendron" )
+@Description( "One sampled instruction executed by a Dendron Machine" )
+@Threshold( "0 ns" )
+@StackTrace( false )
+final class InstructionEvent extends jdk.jfr.Event {
+
+    @Label( "Opcode" )
+    @Description( "The instruction's mnemonic; a superinstruction lists its parts" )
+    String opcode;
+
+    @Label( "Operand" )
+    @Description( "The constant or slot of the instruction's first part, or 0" )
+    int operand;
+
+    @Label( "Index" )
+    @Description( "How many dispatches of the program came before this one" )
+    int index;
+
+    /**
+     * The "interval" setting: how many instructions there are from one
+     * sample to the next. When several recordings ask for different
+     * intervals, the shortest is used.
+     */
+    public static final class Interval extends SettingControl {
+
+        /** the interval used when no recording sets it */
+        static final int DEFAULT = 10_000;
+
+        /**
+         * the interval most recently chosen by the recordings; it is kept
+         * here rather than in the event class, whose initialization may
+         * still be under way when the recorder first sets it
+         */
+        static volatile int current = DEFAULT;
+
+        /** the interval, as text */
+        private String value = String.valueOf( DEFAULT );
+
+        /**
+         * Choose the shortest of several recordings' intervals.
+         * @param values the intervals asked for
+         * @return the shortest, or the default if there are none
+         */
+        @Override
+        public String combine( Set< String > values ) {
+            int shortest = Integer.MAX_VALUE;
+            for ( String value: values ) {
+                shortest = Math.min( shortest, parse( value ) );
+            }
+            return String.valueOf( shortest == Integer.MAX_VALUE ? DEFAULT : shortest );
+        }
+
+        /**
+         * Adopt a new interval.
+         * @param value the interval, as text
+         */
+        @Override
+        public void setValue( String value ) {
+            this.value = value;
+            current = parse( value );
+        }
+
+        /**
+         * Show the interval in use.
+         * @return the interval, as text
+         */
+        @Override
+        public String getValue() {
+            return this.value;
+        }
+
+        /**
+         * Read an interval, falling back to the default for bad text.
+         */
+        private static int parse( String value ) {
+            try {
+                int interval = Integer.parseInt( value.trim() );
+                // keep room to add one interval to another without overflow
+                return Math.max( 1, Math.min( interval, Integer.MAX_VALUE / 2 ) );
+            }
+            catch ( NumberFormatException e ) {
+                return DEFAULT;
+            }
+        }
+    }
+
+    /**
+     * Apply the "interval" setting. Every sample that was timed passes;
+     * the setting is only here so that recordings can change it.
+     * @param control the setting
+     * @return true
+     */
+    @Name( "interval" )
+    @Label( "Sample Interval" )
+    @Description( "How many instructions there are from one sample to the next" )
+    @SettingDefinition
+    protected boolean interval( Interval control ) {
+        return true;
+    }
+
+    /**
+     * Tell how often the Machine should sample instructions.
+     * @return the number of instructions from one sample to the next,
+     *         or 0 if the event is not being recorded
+     */
+    static int sampling() {
+        return new InstructionEvent().isEnabled() ? Interval.current : 0;
+    }
+
+    /**
+     * Show the name of an opcode, ordinary or fused.
+     * @param opcode an opcode from Opcodes or Superinstructions
+     * @return its mnemonic, or the mnemonics of its parts
+     */
+    static String mnemonic( int opcode ) {
+        if ( !Superinstructions.isFused( opcode ) ) {
+            return Opcodes.mnemonic( opcode );
+        }
+        StringBuilder name = new StringBuilder();
+        for ( int part: Superinstructions.parts( opcode ) ) {
+            if ( name.length() > 0 ) {
+                name.append( ' ' );
+            }
+            name.append( Opcodes.mnemonic( part ) );
+        }
+        return name.toString();
+    }
+}
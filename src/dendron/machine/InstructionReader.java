@@ -1,11 +1,15 @@
 package dendron.machine;
 
+import dendron.DendronException;
+import dendron.Errors;
 import dendron.machine.Machine;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.*;
-import java.util.function.Function;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.List;
 
 /**
  * Assemble instructions from a file.
@@ -15,45 +19,17 @@ import java.util.function.Function;
  */
 public class InstructionReader {
 
-    private static Map< String, Function< Scanner, Machine.Instruction> > gen
-            = new HashMap< String, Function< Scanner, Machine.Instruction > >()
-    {{
-        put( "PUSH", in -> { int i = in.nextInt();
-            return new Machine.PushConst( i ); } );
-        put( "LOAD", in -> { String v = in.next();
-            return new Machine.Load( v ); } );
-        put( "STORE", in -> { String v = in.next();
-            return new Machine.Store( v ); } );
-        put( "ADD", in -> new Machine.Add() );
-        put( "SUB", in -> new Machine.Subtract() );
-        put( "MUL", in -> new Machine.Multiply() );
-        put( "DIV", in -> new Machine.Divide() );
-        put( "NEG", in -> new Machine.Negate() );
-        put( "SQRT", in -> new Machine.SquareRoot() );
-        put( "PRINT", in -> {int j = in.nextInt();
-            return new Machine.Print(j);} );
-    }};
-
     /**
      * Read instructions from the named file and translate them
-     * to internal form.
+     * to internal form. Variable names are resolved to frame slots
+     * as they are read.
+     * @see Assembler
      * @param assyFile the name of the text file containing the assembly code
      * @return a list of Machine.Instruction objects, ready to execute
      */
     public static List< Machine.Instruction > assemble( String assyFile ) {
-        try ( FileInputStream fileStr = new FileInputStream( assyFile ) ) {
-            List< Machine.Instruction > result = new LinkedList<>();
-            Scanner in = new Scanner( fileStr );
-            while ( in.hasNext() ) {
-                String mnemonic = in.next();
-                if ( gen.containsKey( mnemonic ) ) {
-                    result.add( gen.get( mnemonic ).apply( in ) );
-                }
-                else {
-                    System.err.println( "Illegal assembly instr " + mnemonic );
-                }
-            }
-            return result;
+        try {
+            return assemble( assyFile, System.err );
         }
         catch( IOException ioe ) {
             System.err.println( "Could not open file " + assyFile );
@@ -61,17 +37,131 @@ public class InstructionReader {
         return null;
     }
 
+    /**
+     * Read instructions from the named file and translate them to
+     * internal form, reporting malformed lines to a stream of the
+     * caller's choosing, such as one kept for each of several programs
+     * assembled at once.
+     * @see Assembler
+     * @param assyFile the name of the text file containing the assembly code
+     * @param warnings where malformed lines are reported
+     * @return a list of Machine.Instruction objects, ready to execute
+     * @throws IOException if the file cannot be read
+     */
+    public static List< Machine.Instruction > assemble( String assyFile,
+                                                        PrintStream warnings )
+            throws IOException {
+        File file = new File( assyFile );
+        AssembleEvent event = new AssembleEvent();
+        event.begin();
+        try ( FileInputStream fileStr = new FileInputStream( file ) ) {
+            List< Machine.Instruction > program =
+                    new Assembler( fileStr, warnings ).assemble( file.length() );
+            event.end();
+            if ( event.shouldCommit() ) {
+                event.file = assyFile;
+                event.bytes = file.length();
+                event.instructions = program.size();
+                event.commit();
+            }
+            return program;
+        }
+    }
+
+    /**
+     * Load an already-assembled program from a binary (.denb) file.
+     * @param binaryFile the name of the file
+     * @return the verified program, or null if it could not be loaded
+     * @see BinaryFormat
+     */
+    public static PackedProgram load( String binaryFile ) {
+        try {
+            return BinaryFormat.load( Paths.get( binaryFile ) );
+        }
+        catch( IOException ioe ) {
+            System.err.println( "Could not load file " + binaryFile + ": "
+                    + ioe.getMessage() );
+        }
+        return null;
+    }
+
     /**
      * Assemble and execute some Dendron machine code.
-     * @param args the name of the assembly language source file
+     * A file ending in ".denb" is loaded in binary form instead.
+     * With -O, the code is run through the PeepholeOptimizer first,
+     * and the number of instructions it removed is shown on standard error.
+     * With -J, the code is compiled to JVM bytecode and run that way;
+     * with -R, it is translated to register code and run that way.
+     * @param args optionally -O and one of -J or -R, then the name of the assembly
+     *             language source file
      */
     public static void main( String[] args ) {
-        if ( args.length != 1 ) {
+        boolean optimize = false;
+        boolean jit = false;
+        boolean registers = false;
+        int arg = 0;
+        for ( ; arg < args.length - 1; ++arg ) {
+            if ( args[ arg ].equals( "-O" ) ) {
+                optimize = true;
+            }
+            else if ( args[ arg ].equals( "-J" ) ) {
+                jit = true;
+            }
+            else if ( args[ arg ].equals( "-R" ) ) {
+                registers = true;
+            }
+            else {
+                break;
+            }
+        }
+        if ( arg != args.length - 1 ) {
             System.err.println(
-                    "Usage: java InstructionReader assembly-code-file" );
+                    "Usage: java InstructionReader [-O] [-J | -R] assembly-code-file" );
             System.exit( 1 );
         }
-        List< Machine.Instruction > code = assemble( args[ 0 ] );
-        Machine.execute( code );
+        try {
+            String file = args[ arg ];
+            List< Machine.Instruction > code;
+            if ( file.endsWith( ".denb" ) ) {
+                PackedProgram program = load( file );
+                if ( program == null ) {
+                    System.exit( 1 );
+                }
+                if ( !optimize ) {
+                    if ( jit ) {
+                        new Machine().execute( new JitProgram( program ) );
+                    }
+                    else if ( registers ) {
+                        new Machine().execute( new RegisterProgram( program ) );
+                    }
+                    else {
+                        new Machine().execute( program );
+                    }
+                    return;
+                }
+                code = program.getInstructions();
+            }
+            else {
+                code = assemble( file );
+            }
+            if ( optimize ) {
+                PeepholeOptimizer optimizer = new PeepholeOptimizer();
+                code = optimizer.optimize( code );
+                System.err.println( "Peephole optimizer removed " +
+                        optimizer.getRemoved() + " instructions" );
+            }
+            if ( jit ) {
+                new Machine().execute( new JitProgram( code ) );
+            }
+            else if ( registers ) {
+                new Machine().execute( new RegisterProgram( code ) );
+            }
+            else {
+                Machine.execute( code );
+            }
+        }
+        catch ( DendronException e ) {
+            Errors.abort( e );
+        }
     }
-}
\ No newline at end of file
+}
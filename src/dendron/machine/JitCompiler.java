@@ -0,0 +1,478 @@
+package dendron.machine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translation of packed Machine code into a JVM class, which is then
+ * loaded as a hidden class so that HotSpot compiles it like any other
+ * Java code. The Machine's operand stack becomes the JVM operand stack,
+ * and variables live in JVM local variables while the code runs.
+ *
+ * HotSpot will not compile methods bigger than 8000 bytes of bytecode,
+ * so the program is split into several static methods ("chunks"), each
+ * starting where the Machine stack is empty. A chunk loads the
+ * variables it reads from the frame into locals on entry and writes
+ * the ones it assigns back to the frame on exit.
+ *
+ * The generated code has no branches, so the class needs no stack
+ * map frames. Division by zero is left to the JVM's idiv, which throws
+ * ArithmeticException.
+ *
+ * @author William Johnson
+ */
+final class JitCompiler {
+
+    /** the name every generated class is given; hidden classes
+     *  get a unique suffix when they are defined */
+    private static final String CLASS_NAME = "dendron/machine/JitCode";
+
+    /** the interface every generated class implements */
+    private static final String BODY_NAME = "dendron/machine/JitProgram$Body";
+
+    /** the descriptor of run and of every chunk */
+    private static final String RUN_DESCRIPTOR = "([ILdendron/machine/Machine;)V";
+
+    /** when a chunk reaches this many bytes, end it at the next empty stack */
+    private static final int CHUNK_BYTES = 6000;
+
+    /** the largest a method can be */
+    private static final int METHOD_LIMIT = 65535;
+
+    // JVM opcodes used by the generated code
+    private static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11,
+            LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14, ILOAD = 0x15,
+            ALOAD_0 = 0x2A, ALOAD_1 = 0x2B, ALOAD_2 = 0x2C, IALOAD = 0x2E,
+            ISTORE = 0x36, IASTORE = 0x4F, DUP = 0x59, SWAP = 0x5F,
+            IADD = 0x60, ISUB = 0x64, IMUL = 0x68, IDIV = 0x6C, INEG = 0x74,
+            I2D = 0x87, D2I = 0x8E, RETURN = 0xB1, INVOKEVIRTUAL = 0xB6,
+            INVOKESPECIAL = 0xB7, INVOKESTATIC = 0xB8, WIDE = 0xC4;
+
+    /**
+     * A class file constant pool. Entries are shared, so asking for
+     * the same constant twice gives the same index.
+     */
+    private static final class ConstantPool {
+        /** the encoded entries */
+        private final ByteArrayOutputStream bytes;
+        private final DataOutputStream out;
+        /** the index of each entry, by a key describing it */
+        private final Map< String, Integer > index;
+        /** the next free index */
+        private int count;
+
+        ConstantPool() {
+            this.bytes = new ByteArrayOutputStream();
+            this.out = new DataOutputStream( this.bytes );
+            this.index = new HashMap<>();
+            this.count = 1;
+        }
+
+        /**
+         * Find or add an entry.
+         * @param key a description unique to the entry
+         * @param tag the entry's constant pool tag
+         * @param size how many indices the entry takes up
+         * @param writer writes the entry's contents after the tag
+         * @return the entry's index
+         */
+        private int entry( String key, int tag, int size, Writer writer ) {
+            Integer known = this.index.get( key );
+            if ( known != null ) {
+                return known;
+            }
+            if ( this.count + size > 0xFFFF ) {
+                throw new IllegalArgumentException(
+                        "program has too many constants to compile" );
+            }
+            try {
+                this.out.writeByte( tag );
+                writer.write( this.out );
+            }
+            catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+            int result = this.count;
+            this.count += size;
+            this.index.put( key, result );
+            return result;
+        }
+
+        int utf8( String text ) {
+            return entry( "U" + text, 1, 1, out -> out.writeUTF( text ) );
+        }
+
+        int integer( int value ) {
+            return entry( "I" + value, 3, 1, out -> out.writeInt( value ) );
+        }
+
+        int doubleValue( double value ) {
+            return entry( "D" + value, 6, 2, out -> out.writeDouble( value ) );
+        }
+
+        int classRef( String name ) {
+            int utf = utf8( name );
+            return entry( "C" + name, 7, 1, out -> out.writeShort( utf ) );
+        }
+
+        int method( String owner, String name, String descriptor ) {
+            int cls = classRef( owner );
+            int n = utf8( name );
+            int d = utf8( descriptor );
+            int nat = entry( "N" + name + ":" + descriptor, 12, 1, out -> {
+                out.writeShort( n );
+                out.writeShort( d );
+            } );
+            return entry( "M" + owner + "." + name + descriptor, 10, 1, out -> {
+                out.writeShort( cls );
+                out.writeShort( nat );
+            } );
+        }
+    }
+
+    /**
+     * Something that writes the contents of a constant pool entry.
+     */
+    private interface Writer {
+        void write( DataOutputStream out ) throws IOException;
+    }
+
+    /**
+     * The bytecode of one method being generated.
+     */
+    private static final class Method {
+        final String name;
+        final String descriptor;
+        final int access;
+        final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        int maxStack;
+        int maxLocals;
+
+        Method( int access, String name, String descriptor ) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        void op( int opcode ) {
+            this.code.write( opcode );
+        }
+
+        void op( int opcode, int u2 ) {
+            this.code.write( opcode );
+            this.code.write( u2 >> 8 );
+            this.code.write( u2 );
+        }
+
+        /** Emit an instruction taking a local variable index. */
+        void local( int opcode, int local ) {
+            if ( local < 256 ) {
+                this.code.write( opcode );
+                this.code.write( local );
+            }
+            else {
+                this.code.write( WIDE );
+                op( opcode, local );
+            }
+        }
+    }
+
+    /** the constant pool of the class being generated */
+    private final ConstantPool pool;
+    /** the methods of the class being generated */
+    private final List< Method > methods;
+
+    private JitCompiler() {
+        this.pool = new ConstantPool();
+        this.methods = new ArrayList<>();
+    }
+
+    /**
+     * Compile packed code into a loaded class.
+     *
+     * @param code verified packed code
+     * @return an instance of the generated class
+     * @throws IllegalArgumentException if the program has a part that
+     *         is too big for a JVM method or class
+     */
+    static JitProgram.Body compile( int[] code ) {
+        byte[] classFile = new JitCompiler().generate( code );
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClass( classFile, true );
+            return (JitProgram.Body) lookup.findConstructor(
+                    lookup.lookupClass(), MethodType.methodType( void.class ) )
+                    .invoke();
+        }
+        catch ( RuntimeException | Error e ) {
+            throw e;
+        }
+        catch ( Throwable e ) {
+            throw new IllegalStateException( "cannot load generated code", e );
+        }
+    }
+
+    /**
+     * Show how many bytes of bytecode an instruction becomes,
+     * not counting the loading and saving of variables.
+     */
+    private static int size( int opcode, int operand ) {
+        switch ( opcode ) {
+            case Opcodes.PUSH:
+                return operand >= -1 && operand <= 5 ? 1
+                        : operand >= Byte.MIN_VALUE && operand <= Byte.MAX_VALUE ? 2 : 3;
+            case Opcodes.LOAD:
+            case Opcodes.STORE:
+                return 4;
+            case Opcodes.SQRT:
+                return 8;
+            case Opcodes.PRINT:
+                return 5;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Generate the class file for a program.
+     *
+     * @param code verified packed code
+     * @return the class file bytes
+     */
+    private byte[] generate( int[] code ) {
+        List< Integer > starts = new ArrayList<>();
+        int depth = 0;
+        int bytes = 0;
+        int pc = 0;
+        while ( pc < code.length ) {
+            if ( depth == 0 && ( starts.isEmpty() || bytes >= CHUNK_BYTES ) ) {
+                starts.add( pc );
+                bytes = 0;
+            }
+            int opcode = code[ pc++ ];
+            int operand = Opcodes.hasOperand( opcode ) ? code[ pc++ ] : 0;
+            depth += Opcodes.pushes( opcode ) - Opcodes.pops( opcode );
+            // each variable a chunk touches may also be loaded and saved
+            bytes += size( opcode, operand )
+                    + ( opcode == Opcodes.LOAD || opcode == Opcodes.STORE ? 18 : 0 );
+        }
+        starts.add( code.length );
+
+        Method init = new Method( 0x0001, "<init>", "()V" );
+        init.op( ALOAD_0 );
+        init.op( INVOKESPECIAL, this.pool.method( "java/lang/Object", "<init>", "()V" ) );
+        init.op( RETURN );
+        init.maxStack = 1;
+        init.maxLocals = 1;
+        this.methods.add( init );
+
+        Method run = new Method( 0x0001, "run", RUN_DESCRIPTOR );
+        for ( int i = 0; i + 1 < starts.size(); ++i ) {
+            this.methods.add( chunk( "c" + i, code, starts.get( i ), starts.get( i + 1 ) ) );
+            run.op( ALOAD_1 );
+            run.op( ALOAD_2 );
+            run.op( INVOKESTATIC, this.pool.method( CLASS_NAME, "c" + i, RUN_DESCRIPTOR ) );
+        }
+        run.op( RETURN );
+        run.maxStack = 2;
+        run.maxLocals = 3;
+        this.methods.add( run );
+        return classFile();
+    }
+
+    /**
+     * Generate one chunk of the program as a static method.
+     *
+     * @param name the method's name
+     * @param code the packed code
+     * @param start where the chunk starts in the code
+     * @param end where the chunk ends in the code
+     * @return the method
+     */
+    private Method chunk( String name, int[] code, int start, int end ) {
+        Method method = new Method( 0x000A, name, RUN_DESCRIPTOR );
+        // give each slot the chunk touches a local, and find the slots
+        // that are read before they are written, and those written
+        Map< Integer, Integer > locals = new HashMap<>();
+        List< Integer > inputs = new ArrayList<>();
+        List< Integer > outputs = new ArrayList<>();
+        for ( int pc = start; pc < end; ) {
+            int opcode = code[ pc++ ];
+            if ( !Opcodes.hasOperand( opcode ) ) {
+                continue;
+            }
+            int slot = code[ pc++ ];
+            if ( opcode == Opcodes.PUSH ) {
+                continue;
+            }
+            if ( !locals.containsKey( slot ) ) {
+                locals.put( slot, 2 + locals.size() );
+                if ( opcode == Opcodes.LOAD ) {
+                    inputs.add( slot );
+                }
+            }
+            if ( opcode == Opcodes.STORE && !outputs.contains( slot ) ) {
+                outputs.add( slot );
+            }
+        }
+        for ( int slot: inputs ) {
+            method.op( ALOAD_0 );
+            pushInt( method, slot );
+            method.op( IALOAD );
+            method.local( ISTORE, locals.get( slot ) );
+        }
+        int depth = 0;
+        int maxDepth = 0;
+        for ( int pc = start; pc < end; ) {
+            int opcode = code[ pc++ ];
+            int operand = Opcodes.hasOperand( opcode ) ? code[ pc++ ] : 0;
+            switch ( opcode ) {
+                case Opcodes.PUSH:
+                    pushInt( method, operand );
+                    break;
+                case Opcodes.LOAD:
+                    method.local( ILOAD, locals.get( operand ) );
+                    break;
+                case Opcodes.STORE:
+                    method.local( ISTORE, locals.get( operand ) );
+                    break;
+                case Opcodes.ADD:
+                    method.op( IADD );
+                    break;
+                case Opcodes.SUB:
+                    method.op( ISUB );
+                    break;
+                case Opcodes.MUL:
+                    method.op( IMUL );
+                    break;
+                case Opcodes.DIV:
+                    method.op( IDIV );
+                    break;
+                case Opcodes.NEG:
+                    method.op( INEG );
+                    break;
+                case Opcodes.SQRT:
+                    method.op( I2D );
+                    method.op( LDC2_W, this.pool.doubleValue( 0.5 ) );
+                    method.op( INVOKESTATIC,
+                            this.pool.method( "java/lang/Math", "pow", "(DD)D" ) );
+                    method.op( D2I );
+                    break;
+                case Opcodes.PRINT:
+                    method.op( ALOAD_1 );
+                    method.op( SWAP );
+                    method.op( INVOKEVIRTUAL,
+                            this.pool.method( "dendron/machine/Machine", "print", "(I)V" ) );
+                    break;
+                case Opcodes.DUP:
+                    method.op( DUP );
+                    break;
+            }
+            depth += Opcodes.pushes( opcode ) - Opcodes.pops( opcode );
+            maxDepth = Math.max( maxDepth, depth );
+        }
+        for ( int slot: outputs ) {
+            method.op( ALOAD_0 );
+            pushInt( method, slot );
+            method.local( ILOAD, locals.get( slot ) );
+            method.op( IASTORE );
+        }
+        method.op( RETURN );
+        if ( method.code.size() > METHOD_LIMIT ) {
+            throw new IllegalArgumentException(
+                    "program has a statement too large to compile" );
+        }
+        // SQRT briefly needs room for two doubles, and saving a
+        // variable needs the frame, an index and a value
+        method.maxStack = Math.max( 3, maxDepth + 3 );
+        method.maxLocals = 2 + locals.size();
+        return method;
+    }
+
+    /**
+     * Emit the shortest instruction that pushes an int constant.
+     */
+    private void pushInt( Method method, int value ) {
+        if ( value >= -1 && value <= 5 ) {
+            method.op( ICONST_0 + value );
+        }
+        else if ( value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE ) {
+            method.op( BIPUSH );
+            method.code.write( value );
+        }
+        else if ( value >= Short.MIN_VALUE && value <= Short.MAX_VALUE ) {
+            method.op( SIPUSH, value );
+        }
+        else {
+            int index = this.pool.integer( value );
+            if ( index < 256 ) {
+                method.op( LDC );
+                method.code.write( index );
+            }
+            else {
+                method.op( LDC_W, index );
+            }
+        }
+    }
+
+    /**
+     * Assemble the class file from the constant pool and methods.
+     *
+     * @return the class file bytes
+     */
+    private byte[] classFile() {
+        int thisClass = this.pool.classRef( CLASS_NAME );
+        int superClass = this.pool.classRef( "java/lang/Object" );
+        int body = this.pool.classRef( BODY_NAME );
+        int codeName = this.pool.utf8( "Code" );
+        int[] names = new int[ this.methods.size() ];
+        int[] descriptors = new int[ this.methods.size() ];
+        for ( int i = 0; i < names.length; ++i ) {
+            names[ i ] = this.pool.utf8( this.methods.get( i ).name );
+            descriptors[ i ] = this.pool.utf8( this.methods.get( i ).descriptor );
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try ( DataOutputStream out = new DataOutputStream( bytes ) ) {
+            out.writeInt( 0xCAFEBABE );
+            out.writeShort( 0 );
+            out.writeShort( 61 );
+            out.writeShort( this.pool.count );
+            this.pool.bytes.writeTo( out );
+            out.writeShort( 0x0030 );       // ACC_FINAL | ACC_SUPER
+            out.writeShort( thisClass );
+            out.writeShort( superClass );
+            out.writeShort( 1 );
+            out.writeShort( body );
+            out.writeShort( 0 );            // no fields
+            out.writeShort( this.methods.size() );
+            for ( int i = 0; i < names.length; ++i ) {
+                Method method = this.methods.get( i );
+                out.writeShort( method.access );
+                out.writeShort( names[ i ] );
+                out.writeShort( descriptors[ i ] );
+                out.writeShort( 1 );
+                out.writeShort( codeName );
+                out.writeInt( 12 + method.code.size() );
+                out.writeShort( method.maxStack );
+                out.writeShort( method.maxLocals );
+                out.writeInt( method.code.size() );
+                method.code.writeTo( out );
+                out.writeShort( 0 );        // no exception table
+                out.writeShort( 0 );        // no attributes
+            }
+            out.writeShort( 0 );            // no class attributes
+        }
+        catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+        return bytes.toByteArray();
+    }
+}
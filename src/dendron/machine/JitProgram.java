@@ -0,0 +1,123 @@
+package dendron.machine;
+
+import java.util.List;
+
+/**
+ * A Machine program compiled to JVM bytecode. The program is turned
+ * into a hidden class when this object is created, and from then on
+ * running it costs no more than calling ordinary compiled Java code.
+ * Like a PackedProgram, a JitProgram never changes once created.
+ *
+ * @author William Johnson
+ * @see JitCompiler
+ */
+public final class JitProgram {
+
+    /**
+     * What every generated class implements.
+     */
+    interface Body {
+        /**
+         * Run the program.
+         * @param frame the variable values, indexed by slot
+         * @param machine where PRINT output goes
+         */
+        void run( int[] frame, Machine machine );
+    }
+
+    /** the generated code */
+    private final Body body;
+    /** the names of the variable slots; never modified after construction */
+    private final SymbolTable symbols;
+    /** how many values the program leaves on the stack */
+    private final int leftOnStack;
+    /** the program in packed form, kept for display */
+    private final PackedProgram packed;
+
+    /**
+     * Compile a packed program.
+     *
+     * @param program the program to compile
+     * @throws IllegalArgumentException if part of the program is too
+     *         big to become a JVM method
+     */
+    public JitProgram( PackedProgram program ) {
+        int[] code = program.getCode();
+        int depth = 0;
+        for ( int pc = 0; pc < code.length; ) {
+            int opcode = code[ pc ];
+            pc += Opcodes.hasOperand( opcode ) ? 2 : 1;
+            depth += Opcodes.pushes( opcode ) - Opcodes.pops( opcode );
+        }
+        this.body = JitCompiler.compile( code );
+        this.symbols = program.getSymbols();
+        this.leftOnStack = depth;
+        this.packed = program;
+    }
+
+    /**
+     * Compile a verified program.
+     *
+     * @param program the program in object form
+     */
+    public JitProgram( CompiledProgram program ) {
+        this( new PackedProgram( program ) );
+    }
+
+    /**
+     * Compile a list of instructions, verifying them first.
+     *
+     * @param program a list of Machine instructions
+     */
+    public JitProgram( List< Machine.Instruction > program ) {
+        this( new CompiledProgram( program ) );
+    }
+
+    /**
+     * Rebuild the object form of the program, e.g. for display.
+     * @return a new list of Machine instructions
+     */
+    public List< Machine.Instruction > getInstructions() {
+        return this.packed.getInstructions();
+    }
+
+    /**
+     * Show how many instructions the program was compiled from
+     * @return the number of Machine instructions
+     */
+    public int getLength() {
+        return this.packed.getLength();
+    }
+
+    /**
+     * Show how many variable slots the program uses
+     * @return the size of the frame the program needs
+     */
+    public int getFrameSize() {
+        return this.symbols.size();
+    }
+
+    /**
+     * Give a Machine the generated code.
+     * @return the code
+     */
+    Body getBody() {
+        return this.body;
+    }
+
+    /**
+     * Show how many values the program leaves on the stack.
+     * @return the final stack depth
+     */
+    int getLeftOnStack() {
+        return this.leftOnStack;
+    }
+
+    /**
+     * Give a Machine the slot-to-name table for its final report.
+     * @return the symbol table, which must not be modified
+     */
+    SymbolTable getSymbols() {
+        return this.symbols;
+    }
+}
@@ -1,20 +1,23 @@
 package dendron.machine;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Stack;
-import java.util.Map;
-import java.util.HashMap;
 import dendron.Errors;
 
 /**
  * An abstraction of a computing machine that reads instructions
- * and executes them. It has an instruction set, a symbol table
- * for variables (instead of general-purpose memory), and a
- * value stack on which calculations are performed.
+ * and executes them. It has an instruction set, a frame of
+ * numbered variable slots (instead of general-purpose memory), and a
+ * value stack on which calculations are performed. The names of the
+ * slots are kept beside the frame in a SymbolTable so that results
+ * can still be reported by variable name.
  *
- * (Everything is static to avoid the need to master the subtleties
- * of nested class instantiation or to pass the symbol table and
- * stack into every instruction when it executes.)
+ * Each Machine object is an execution context that owns its own stack
+ * and frame, and is meant to be used by one thread at a time. The
+ * instructions themselves hold no run-time state, so a CompiledProgram
+ * can be shared by any number of Machines running in parallel.
  *
  *
  * @author James Heliotis
@@ -22,13 +25,41 @@ import dendron.Errors;
  */
 public class Machine {
 
-    private Machine() {}
     public static interface Instruction {
         /**
-         * Run this instruction on the Machine, using the Machine's
-         * value stack and symbol table.
+         * Run this instruction on a Machine, using that Machine's
+         * value stack and frame.
+         * @param machine the execution context to run on
          */
-        void execute();
+        void execute( Machine machine );
+
+        /**
+         * Tell how many values this instruction takes off the
+         * value stack when it executes.
+         * @return the number of values popped
+         */
+        int popCount();
+
+        /**
+         * Tell how many values this instruction leaves on the
+         * value stack when it executes.
+         * @return the number of values pushed
+         */
+        int pushCount();
+
+        /**
+         * Tell which kind of instruction this is, for packed
+         * representations of programs.
+         * @return one of the constants in {@link Opcodes}
+         */
+        int opcode();
+
+        /**
+         * Show the value that follows the opcode in packed form.
+         * @return the constant or slot for PUSH, LOAD and STORE;
+         *         0 for instructions without an operand
+         */
+        int operand();
 
         /**
          * Show the instruction using text so it can be understood
@@ -39,16 +70,87 @@ public class Machine {
         String toString();
     }
 
-    private static Map< String, Integer > table = null;
-    private static Stack< Integer > stack = null;
+    private int[] frame;
+    private SymbolTable symbols;
+    private int[] stack;
+    private int sp;
+    private int[] registers;
+    private final PrintStream out;
+    /** when the program being run statement by statement began */
+    private long started;
+    /** how many of each opcode the statements run since begin held,
+        while {@link MachineStatistics} are enabled */
+    private long[] streamed;
+    /** the deepest stack of the statements run since begin */
+    private int streamedDepth;
+    /** the flight recorder event for the program started with begin */
+    private ExecuteEvent execution;
 
     /**
-     * Reset the Machine to a pristine state.
+     * Create an execution context whose output goes to standard output.
+     */
+    public Machine() {
+        this( System.out );
+    }
+
+    /**
+     * Create an execution context.
+     * @param out where PRINT output and the final report are written
+     */
+    public Machine( PrintStream out ) {
+        this.out = out;
+        this.stack = new int[ 0 ];
+        this.frame = new int[ 0 ];
+        this.registers = new int[ 0 ];
+        this.sp = 0;
+    }
+
+    /**
+     * Reset the Machine to a pristine state. The stack and frame arrays
+     * are kept if they are big enough, so a Machine can be reused for
+     * program after program without allocating. The Verifier has made
+     * sure that every slot is stored before it is loaded, so the frame
+     * need not be cleared.
+     * @param names the names of the variable slots the program uses
      * @see Machine#execute
      */
-    private static void reset() {
-        stack = new Stack<>();
-        table = new HashMap<>();
+    private void reset( SymbolTable names ) {
+        this.sp = 0;
+        this.symbols = names;
+        if ( this.frame.length < names.size() ) {
+            this.frame = new int[ names.size() ];
+        }
+    }
+
+    /**
+     * Put a value on top of the stack. The stack was sized by the
+     * Verifier before execution began, so there is no need to check
+     * for overflow.
+     * @param value the value to push
+     */
+    private void push( int value ) {
+        this.stack[ this.sp++ ] = value;
+    }
+
+    /**
+     * Take the value off the top of the stack. The Verifier has already
+     * ruled out underflow.
+     * @return the value popped
+     */
+    private int pop() {
+        return this.stack[ --this.sp ];
+    }
+
+    /**
+     * Add a program that just ran to the {@link MachineStatistics}.
+     * Only called while they are enabled.
+     * @param opcodes how many of each opcode the program has, or null
+     * @param depth the program's maximum stack depth
+     * @param start when the program started, from System.nanoTime
+     */
+    private void record( long[] opcodes, int depth, long start ) {
+        MachineStatistics.get().record( opcodes, depth, this.symbols.size(),
+                System.nanoTime() - start );
     }
 
 
@@ -69,30 +171,599 @@ public class Machine {
         System.out.println();
     }
 
+    /**
+     * Generate a listing of a packed program on standard output. The
+     * code the interpreter runs may contain superinstructions; they
+     * are shown expanded into the instructions they stand for.
+     *
+     * @param program the packed program
+     */
+    public static void displayInstructions( PackedProgram program ) {
+        int[] code = Superinstructions.expand( program.getFusedCode() );
+        SymbolTable names = program.getSymbols();
+        List< Instruction > listing = new ArrayList<>();
+        for ( int pc = 0; pc < code.length; ) {
+            int opcode = code[ pc++ ];
+            int operand = Opcodes.hasOperand( opcode ) ? code[ pc++ ] : 0;
+            listing.add( instruction( opcode, operand,
+                    Opcodes.hasOperand( opcode ) && opcode != Opcodes.PUSH
+                            ? names.getName( operand ) : null ) );
+        }
+        displayInstructions( listing );
+    }
+
+    /**
+     * Instructions without operands hold no state at all, so a single
+     * shared instance of each serves every program.
+     */
+    private static final Instruction[] SHARED = {
+            null, null, null, new Add(), new Subtract(), new Multiply(),
+            new Divide(), new Negate(), new SquareRoot(), new Print(),
+            new Duplicate()
+    };
+
+    /**
+     * Find the Instruction object for an opcode. Instructions without
+     * operands are shared; the others are created.
+     * @param opcode one of the constants in {@link Opcodes}
+     * @param operand the constant or slot, for PUSH, LOAD and STORE
+     * @param name the variable name, for LOAD and STORE
+     * @return the instruction
+     */
+    public static Instruction instruction( int opcode, int operand,
+                                           String name ) {
+        switch ( opcode ) {
+            case Opcodes.PUSH: return new PushConst( operand );
+            case Opcodes.LOAD: return new Load( operand, name );
+            case Opcodes.STORE: return new Store( operand, name );
+            default:
+                if ( !Opcodes.isValid( opcode ) ) {
+                    throw new IllegalArgumentException( "bad opcode " + opcode );
+                }
+                return SHARED[ opcode ];
+        }
+    }
+
     /**
      * Run a "compiled" program by executing in order each instruction
      * contained therein.
      * Report on the final size of the stack (should normally be empty)
      * and the contents of the symbol table.
+     * The program is verified before anything is executed.
+     * This is a convenience wrapper that runs the program in a fresh
+     * Machine writing to standard output.
      * @param program a list of Machine instructions
      */
 
     public static void execute( List< Instruction > program ) {
-        reset();
-        System.out.println("Executing compiled code...");
-        for ( Instruction instr: program ) {
-            instr.execute();
-            if (instr.toString().equals("PRINT")){
-                Machine.Print p =(Machine.Print) instr;
-                System.out.println("*** "+p.getValue());
+        new Machine().execute( new CompiledProgram( program ) );
+    }
+
+    /**
+     * Run a verified program in this Machine, reporting on the final
+     * size of the stack and the contents of the frame afterward.
+     * @param program the program to run
+     */
+    public void execute( CompiledProgram program ) {
+        begin( program.getSymbols() );
+        describe( "object", program.getCode().length );
+        run( program );
+        finish();
+    }
+
+    /**
+     * Run a verified program in this Machine without any report.
+     * Only the output of PRINT instructions is written.
+     * @param program the program to run
+     */
+    public void run( CompiledProgram program ) {
+        long start = MachineStatistics.ENABLED ? System.nanoTime() : 0;
+        reset( program.getSymbols() );
+        run( program.getCode(), program.getMaxStackDepth() );
+        if ( MachineStatistics.ENABLED ) {
+            record( program.getOpcodeCounts(), program.getMaxStackDepth(), start );
+        }
+    }
+
+    /**
+     * Run a packed program in this Machine, reporting on the final
+     * size of the stack and the contents of the frame afterward.
+     * @param program the program to run
+     */
+    public void execute( PackedProgram program ) {
+        begin( program.getSymbols() );
+        describe( "packed", program.getLength() );
+        run( program );
+        finish();
+    }
+
+    /**
+     * Run a packed program in this Machine without any report.
+     * @param program the program to run
+     */
+    public void run( PackedProgram program ) {
+        long start = MachineStatistics.ENABLED ? System.nanoTime() : 0;
+        reset( program.getSymbols() );
+        interpret( program );
+        if ( MachineStatistics.ENABLED ) {
+            record( program.getOpcodeCounts(), program.getMaxStackDepth(), start );
+        }
+    }
+
+    /**
+     * Run a packed program in this Machine without any report, with
+     * some of its slots holding values before it starts. This runs one
+     * row of a {@link BatchProgram}; afterward {@link #getValue(int)}
+     * gives the row's results.
+     * @param program the program to run
+     * @param slots the slots to set, or -1 for values to ignore
+     * @param values the value of each slot
+     */
+    public void run( PackedProgram program, int[] slots, int[] values ) {
+        long start = MachineStatistics.ENABLED ? System.nanoTime() : 0;
+        reset( program.getSymbols() );
+        for ( int i = 0; i < slots.length; ++i ) {
+            if ( slots[ i ] >= 0 ) {
+                this.frame[ slots[ i ] ] = values[ i ];
+            }
+        }
+        interpret( program );
+        if ( MachineStatistics.ENABLED ) {
+            record( program.getOpcodeCounts(), program.getMaxStackDepth(), start );
+        }
+    }
+
+    /**
+     * Interpret a packed program on the current frame.
+     * The whole program is interpreted by one loop that dispatches
+     * on opcode with a switch, keeping the stack pointer and program
+     * counter in local variables. Superinstructions each do the work
+     * of two or three ordinary instructions in one dispatch. While the
+     * flight recorder samples instructions, the loop runs the program
+     * in stretches instead.
+     * @param program the program to run
+     * @see Superinstructions
+     */
+    private void interpret( PackedProgram program ) {
+        if ( this.stack.length < program.getMaxStackDepth() ) {
+            this.stack = new int[ program.getMaxStackDepth() ];
+        }
+        int interval = InstructionEvent.sampling();
+        if ( interval == 0 ) {
+            int[] code = program.getFusedCode();
+            this.sp = interpret( code, 0, code.length, 0 );
+        }
+        else {
+            interpretSampled( program, interval );
+        }
+    }
+
+    /**
+     * Interpret a packed program while the flight recorder samples it.
+     * The code runs in stretches of the usual loop, and every
+     * interval-th instruction runs by itself inside an
+     * {@link InstructionEvent}.
+     * @param program the program to run
+     * @param interval how many instructions from one sample to the next
+     */
+    private void interpretSampled( PackedProgram program, int interval ) {
+        int[] code = program.getFusedCode();
+        int[] samples = program.getSamplePoints( interval );
+        int sp = 0;
+        int pc = 0;
+        for ( int i = 0; i < samples.length; ++i ) {
+            int sample = samples[ i ];
+            int next = sample + 1 + Superinstructions.operandCount( code[ sample ] );
+            sp = interpret( code, pc, sample, sp );
+            InstructionEvent event = new InstructionEvent();
+            event.begin();
+            sp = interpret( code, sample, next, sp );
+            event.end();
+            if ( event.shouldCommit() ) {
+                event.opcode = InstructionEvent.mnemonic( code[ sample ] );
+                event.operand = next > sample + 1 ? code[ sample + 1 ] : 0;
+                event.index = ( i + 1 ) * interval - 1;
+                event.commit();
             }
+            pc = next;
+        }
+        this.sp = interpret( code, pc, code.length, sp );
+    }
 
+    /**
+     * Interpret part of some packed code.
+     * @param code the fused code
+     * @param pc where to start
+     * @param end where to stop
+     * @param sp the stack pointer to start with
+     * @return the stack pointer at the end
+     */
+    private int interpret( int[] code, int pc, int end, int sp ) {
+        final int[] stack = this.stack;
+        final int[] frame = this.frame;
+        while ( pc < end ) {
+            switch ( code[ pc++ ] ) {
+                case Opcodes.PUSH:
+                    stack[ sp++ ] = code[ pc++ ];
+                    break;
+                case Opcodes.LOAD:
+                    stack[ sp++ ] = frame[ code[ pc++ ] ];
+                    break;
+                case Opcodes.STORE:
+                    frame[ code[ pc++ ] ] = stack[ --sp ];
+                    break;
+                case Opcodes.ADD:
+                    --sp;
+                    stack[ sp - 1 ] += stack[ sp ];
+                    break;
+                case Opcodes.SUB:
+                    --sp;
+                    stack[ sp - 1 ] -= stack[ sp ];
+                    break;
+                case Opcodes.MUL:
+                    --sp;
+                    stack[ sp - 1 ] *= stack[ sp ];
+                    break;
+                case Opcodes.DIV:
+                    --sp;
+                    if ( stack[ sp ] == 0 ) {
+                        Errors.report( Errors.Type.DIVIDE_BY_ZERO, null );
+                    }
+                    stack[ sp - 1 ] /= stack[ sp ];
+                    break;
+                case Opcodes.NEG:
+                    stack[ sp - 1 ] = -stack[ sp - 1 ];
+                    break;
+                case Opcodes.SQRT:
+                    stack[ sp - 1 ] = (int) Math.pow( stack[ sp - 1 ], 0.5 );
+                    break;
+                case Opcodes.PRINT:
+                    this.out.println( "*** " + stack[ --sp ] );
+                    break;
+                case Opcodes.DUP:
+                    stack[ sp ] = stack[ sp - 1 ];
+                    ++sp;
+                    break;
+                case Superinstructions.LOAD_LOAD_ADD:
+                    stack[ sp++ ] = frame[ code[ pc ] ] + frame[ code[ pc + 1 ] ];
+                    pc += 2;
+                    break;
+                case Superinstructions.LOAD_LOAD_SUB:
+                    stack[ sp++ ] = frame[ code[ pc ] ] - frame[ code[ pc + 1 ] ];
+                    pc += 2;
+                    break;
+                case Superinstructions.LOAD_LOAD_MUL:
+                    stack[ sp++ ] = frame[ code[ pc ] ] * frame[ code[ pc + 1 ] ];
+                    pc += 2;
+                    break;
+                case Superinstructions.LOAD_LOAD_DIV:
+                    if ( frame[ code[ pc + 1 ] ] == 0 ) {
+                        Errors.report( Errors.Type.DIVIDE_BY_ZERO, null );
+                    }
+                    stack[ sp++ ] = frame[ code[ pc ] ] / frame[ code[ pc + 1 ] ];
+                    pc += 2;
+                    break;
+                case Superinstructions.LOAD_ADD:
+                    stack[ sp - 1 ] += frame[ code[ pc++ ] ];
+                    break;
+                case Superinstructions.LOAD_SUB:
+                    stack[ sp - 1 ] -= frame[ code[ pc++ ] ];
+                    break;
+                case Superinstructions.LOAD_MUL:
+                    stack[ sp - 1 ] *= frame[ code[ pc++ ] ];
+                    break;
+                case Superinstructions.LOAD_DIV:
+                    if ( frame[ code[ pc ] ] == 0 ) {
+                        Errors.report( Errors.Type.DIVIDE_BY_ZERO, null );
+                    }
+                    stack[ sp - 1 ] /= frame[ code[ pc++ ] ];
+                    break;
+                case Superinstructions.PUSH_ADD:
+                    stack[ sp - 1 ] += code[ pc++ ];
+                    break;
+                case Superinstructions.PUSH_SUB:
+                    stack[ sp - 1 ] -= code[ pc++ ];
+                    break;
+                case Superinstructions.PUSH_MUL:
+                    stack[ sp - 1 ] *= code[ pc++ ];
+                    break;
+                case Superinstructions.PUSH_DIV:
+                    if ( code[ pc ] == 0 ) {
+                        Errors.report( Errors.Type.DIVIDE_BY_ZERO, null );
+                    }
+                    stack[ sp - 1 ] /= code[ pc++ ];
+                    break;
+                case Superinstructions.LOAD_STORE:
+                    frame[ code[ pc + 1 ] ] = frame[ code[ pc ] ];
+                    pc += 2;
+                    break;
+                case Superinstructions.PUSH_STORE:
+                    frame[ code[ pc + 1 ] ] = code[ pc ];
+                    pc += 2;
+                    break;
+                case Superinstructions.PUSH_NEG:
+                    stack[ sp++ ] = -code[ pc++ ];
+                    break;
+                case Superinstructions.LOAD_PRINT:
+                    this.out.println( "*** " + frame[ code[ pc++ ] ] );
+                    break;
+                case Superinstructions.DUP_STORE:
+                    frame[ code[ pc++ ] ] = stack[ sp - 1 ];
+                    break;
+                case Superinstructions.STORE_LOAD:
+                    frame[ code[ pc ] ] = stack[ sp - 1 ];
+                    stack[ sp - 1 ] = frame[ code[ pc + 1 ] ];
+                    pc += 2;
+                    break;
+                case Superinstructions.LOAD_PUSH_ADD:
+                    stack[ sp++ ] = frame[ code[ pc ] ] + code[ pc + 1 ];
+                    pc += 2;
+                    break;
+                case Superinstructions.LOAD_PUSH_SUB:
+                    stack[ sp++ ] = frame[ code[ pc ] ] - code[ pc + 1 ];
+                    pc += 2;
+                    break;
+                case Superinstructions.LOAD_PUSH_MUL:
+                    stack[ sp++ ] = frame[ code[ pc ] ] * code[ pc + 1 ];
+                    pc += 2;
+                    break;
+            }
+        }
+        return sp;
+    }
+
+    /**
+     * Run a register program in this Machine, reporting on the final
+     * size of the stack and the contents of the frame afterward.
+     * @param program the program to run
+     */
+    public void execute( RegisterProgram program ) {
+        begin( program.getSymbols() );
+        describe( "register", program.getStackLength() );
+        run( program );
+        finish();
+    }
 
+    /**
+     * Run a register program in this Machine without any report.
+     * The variables are the first registers of the register file, so
+     * they are copied into the frame when the program ends.
+     * @param program the program to run
+     */
+    public void run( RegisterProgram program ) {
+        long start = MachineStatistics.ENABLED ? System.nanoTime() : 0;
+        reset( program.getSymbols() );
+        if ( this.registers.length < program.getRegisterCount() ) {
+            this.registers = new int[ program.getRegisterCount() ];
+        }
+        final int[] code = program.getCode();
+        final int[] r = this.registers;
+        final int variables = program.getSymbols().size();
+        int[] constants = program.getConstants();
+        System.arraycopy( constants, 0, r, variables, constants.length );
+        for ( int pc = 0; pc < code.length; pc += RegisterProgram.WIDTH ) {
+            switch ( code[ pc ] ) {
+                case RegisterProgram.ADD:
+                    r[ code[ pc + 1 ] ] = r[ code[ pc + 2 ] ] + r[ code[ pc + 3 ] ];
+                    break;
+                case RegisterProgram.SUB:
+                    r[ code[ pc + 1 ] ] = r[ code[ pc + 2 ] ] - r[ code[ pc + 3 ] ];
+                    break;
+                case RegisterProgram.MUL:
+                    r[ code[ pc + 1 ] ] = r[ code[ pc + 2 ] ] * r[ code[ pc + 3 ] ];
+                    break;
+                case RegisterProgram.DIV:
+                    if ( r[ code[ pc + 3 ] ] == 0 ) {
+                        Errors.report( Errors.Type.DIVIDE_BY_ZERO, null );
+                    }
+                    r[ code[ pc + 1 ] ] = r[ code[ pc + 2 ] ] / r[ code[ pc + 3 ] ];
+                    break;
+                case RegisterProgram.NEG:
+                    r[ code[ pc + 1 ] ] = -r[ code[ pc + 2 ] ];
+                    break;
+                case RegisterProgram.SQRT:
+                    r[ code[ pc + 1 ] ] = (int) Math.pow( r[ code[ pc + 2 ] ], 0.5 );
+                    break;
+                case RegisterProgram.MOV:
+                    r[ code[ pc + 1 ] ] = r[ code[ pc + 2 ] ];
+                    break;
+                case RegisterProgram.PRINT:
+                    this.out.println( "*** " + r[ code[ pc + 2 ] ] );
+                    break;
+            }
+        }
+        System.arraycopy( r, 0, this.frame, 0, variables );
+        this.sp = program.getLeftOnStack();
+        if ( MachineStatistics.ENABLED ) {
+            record( null, 0, start );
         }
-        System.out.println( "Machine: execution ended with " +
-                stack.size() + " items left on the stack." );
-        System.out.println();
-        Errors.dump( table );
+    }
+
+    /**
+     * Run a program compiled to JVM bytecode in this Machine, reporting
+     * on the final size of the stack and the contents of the frame
+     * afterward. The output is the same as running the program's
+     * instructions any other way.
+     * @param program the program to run
+     */
+    public void execute( JitProgram program ) {
+        begin( program.getSymbols() );
+        describe( "jit", program.getLength() );
+        run( program );
+        finish();
+    }
+
+    /**
+     * Run a program compiled to JVM bytecode in this Machine without
+     * any report. The generated code keeps its operands on the JVM
+     * stack, so only the final stack depth is recorded here.
+     * @param program the program to run
+     */
+    public void run( JitProgram program ) {
+        long start = MachineStatistics.ENABLED ? System.nanoTime() : 0;
+        reset( program.getSymbols() );
+        try {
+            program.getBody().run( this.frame, this );
+        }
+        catch ( ArithmeticException e ) {
+            Errors.report( Errors.Type.DIVIDE_BY_ZERO, null );
+        }
+        this.sp = program.getLeftOnStack();
+        if ( MachineStatistics.ENABLED ) {
+            record( null, 0, start );
+        }
+    }
+
+    /**
+     * Write the output of a PRINT instruction. Generated code calls
+     * this.
+     * @param value the value printed
+     */
+    void print( int value ) {
+        this.out.println( "*** " + value );
+    }
+
+    /**
+     * Tell the flight recorder event for the program just started how
+     * it is being run.
+     * @param form the program's form, such as "packed"
+     * @param instructions how many stack instructions the program has
+     */
+    private void describe( String form, int instructions ) {
+        this.execution.form = form;
+        this.execution.instructions = instructions;
+    }
+
+    /**
+     * Prepare the Machine to run a program that will be supplied
+     * piece by piece through {@link #executeStatement(List)}.
+     * @param names the table that the program's slots were resolved
+     *              against; it may keep growing as statements arrive
+     * @see Machine#finish
+     */
+    public void begin( SymbolTable names ) {
+        reset( names );
+        this.execution = new ExecuteEvent();
+        this.execution.form = "statements";
+        this.execution.begin();
+        if ( MachineStatistics.ENABLED ) {
+            this.started = System.nanoTime();
+            this.streamed = null;
+            this.streamedDepth = 0;
+        }
+        this.out.println("Executing compiled code...");
+    }
+
+    /**
+     * Run more instructions of the program that was started with
+     * {@link #begin}. The stack and symbol table carry over from
+     * earlier calls, so a program can be executed one statement at a
+     * time without ever holding all of its instructions.
+     * The instructions are verified first, and the stack is grown once
+     * to the depth the Verifier computes.
+     * @param statement the next Machine instructions to execute
+     */
+    public void executeStatement( List< Instruction > statement ) {
+        Instruction[] code = statement.toArray( new Instruction[ 0 ] );
+        int depth = Verifier.maxStackDepth( statement, this.sp );
+        if ( MachineStatistics.ENABLED ) {
+            long[] opcodes = MachineStatistics.count( code );
+            if ( this.streamed == null ) {
+                this.streamed = opcodes;
+            }
+            else {
+                for ( int i = 0; i < opcodes.length; ++i ) {
+                    this.streamed[ i ] += opcodes[ i ];
+                }
+            }
+            this.streamedDepth = Math.max( this.streamedDepth, depth );
+        }
+        this.execution.instructions += code.length;
+        run( code, depth );
+    }
+
+    /**
+     * Execute verified instructions, first making sure the stack
+     * and frame are big enough for them.
+     * @param code the Machine instructions to execute
+     * @param depth the maximum stack depth computed by the Verifier
+     */
+    private void run( Instruction[] code, int depth ) {
+        if ( this.stack.length < depth ) {
+            this.stack = Arrays.copyOf( this.stack, depth );
+        }
+        if ( this.frame.length < this.symbols.size() ) {
+            this.frame = Arrays.copyOf( this.frame,
+                    Math.max( this.symbols.size(), 2 * this.frame.length ) );
+        }
+        int interval = InstructionEvent.sampling();
+        if ( interval == 0 ) {
+            for ( Instruction instr: code ) {
+                instr.execute( this );
+            }
+            return;
+        }
+        int i = 0;
+        for ( int sample = interval - 1; sample < code.length; sample += interval ) {
+            for ( ; i < sample; ++i ) {
+                code[ i ].execute( this );
+            }
+            InstructionEvent event = new InstructionEvent();
+            event.begin();
+            code[ i ].execute( this );
+            event.end();
+            if ( event.shouldCommit() ) {
+                event.opcode = Opcodes.mnemonic( code[ i ].opcode() );
+                event.operand = code[ i ].operand();
+                event.index = i;
+                event.commit();
+            }
+            ++i;
+        }
+        for ( ; i < code.length; ++i ) {
+            code[ i ].execute( this );
+        }
+    }
+
+    /**
+     * Report on the final size of the stack (should normally be empty)
+     * and the contents of the symbol table for the program started
+     * with {@link #begin}. A program run statement by statement is
+     * added to the {@link MachineStatistics} here, as one program.
+     */
+    public void finish() {
+        ExecuteEvent event = this.execution;
+        event.end();
+        if ( event.shouldCommit() ) {
+            event.variables = this.symbols.size();
+            event.leftOnStack = this.sp;
+            event.commit();
+        }
+        if ( MachineStatistics.ENABLED && this.streamed != null ) {
+            record( this.streamed, this.streamedDepth, this.started );
+            this.streamed = null;
+        }
+        this.out.println( "Machine: execution ended with " +
+                this.sp + " items left on the stack." );
+        this.out.println();
+        Errors.dump( this.out, this.symbols, this.frame );
+    }
+
+    /**
+     * Show the value a variable was left with by the last program run.
+     * @param slot the frame slot of the variable
+     * @return the variable's value
+     */
+    public int getValue( int slot ) {
+        return this.frame[ slot ];
+    }
+
+    /**
+     * Show how many values were left on the stack by the last program run.
+     * @return the stack depth
+     */
+    public int getStackSize() {
+        return this.sp;
     }
 
     /**
@@ -103,10 +774,46 @@ public class Machine {
          * Run the microsteps for the ADD instruction.
          */
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            stack.push( op1 + op2 );
+        public void execute( Machine machine ) {
+            int op2 = machine.pop();
+            int op1 = machine.pop();
+            machine.push( op1 + op2 );
+        }
+
+        /**
+         * The ADD instruction takes two values off the stack.
+         * @return 2
+         */
+        @Override
+        public int popCount() {
+            return 2;
+        }
+
+        /**
+         * The ADD instruction puts one value on the stack.
+         * @return 1
+         */
+        @Override
+        public int pushCount() {
+            return 1;
+        }
+
+        /**
+         * Identify the ADD instruction in packed form.
+         * @return Opcodes.ADD
+         */
+        @Override
+        public int opcode() {
+            return Opcodes.ADD;
+        }
+
+        /**
+         * Show the operand of the ADD instruction in packed form.
+         * @return 0, since ADD has no operand
+         */
+        @Override
+        public int operand() {
+            return 0;
         }
 
         /**
@@ -124,22 +831,62 @@ public class Machine {
      */
     public static class Store implements Instruction {
         /** stores name of target variable */
-        private String name;
+        private final String name;
+        /** stores frame slot of target variable */
+        private final int slot;
 
         /**
          * Create a STORE instruction
+         * @param slot the frame slot of the target variable
          * @param ident the name of the target variable
          */
-        public Store( String ident ) {
+        public Store( int slot, String ident ) {
+            this.slot = slot;
             this.name = ident;
         }
         /**
          * Run the microsteps for the STORE instruction.
          */
         @Override
-        public void execute() {
-            table.put( this.name, stack.pop() );
+        public void execute( Machine machine ) {
+            machine.frame[ this.slot ] = machine.pop();
+        }
+        /**
+         * The STORE instruction takes one value off the stack.
+         * @return 1
+         */
+        @Override
+        public int popCount() {
+            return 1;
+        }
+
+        /**
+         * The STORE instruction puts nothing on the stack.
+         * @return 0
+         */
+        @Override
+        public int pushCount() {
+            return 0;
         }
+
+        /**
+         * Identify the STORE instruction in packed form.
+         * @return Opcodes.STORE
+         */
+        @Override
+        public int opcode() {
+            return Opcodes.STORE;
+        }
+
+        /**
+         * Show the operand of the STORE instruction in packed form.
+         * @return the target variable slot
+         */
+        @Override
+        public int operand() {
+            return this.slot;
+        }
+
         /**
          * Show the STORE instruction as plain text.
          * @return "STORE" followed by the target variable name
@@ -152,13 +899,21 @@ public class Machine {
         public String getName() {
             return name;
         }
+
+        /**
+         * Show the frame slot of the target variable
+         * @return the target variable slot
+         */
+        public int getSlot() {
+            return slot;
+        }
     }
     /**
      * The PUSH instruction
      */
     public static class PushConst implements Instruction{
         /** stores constant of target variable */
-        private int constant;
+        private final int constant;
         /**
          * Create a PUSH instruction
          * @param constant the constant of the target variable
@@ -170,8 +925,44 @@ public class Machine {
         /**
          * Run the microsteps for the PUSH instruction.
          */
-        public void execute() {
-            stack.push(getConstant());
+        public void execute( Machine machine ) {
+            machine.push( getConstant() );
+        }
+
+        /**
+         * The PUSH instruction takes nothing off the stack.
+         * @return 0
+         */
+        @Override
+        public int popCount() {
+            return 0;
+        }
+
+        /**
+         * The PUSH instruction puts one value on the stack.
+         * @return 1
+         */
+        @Override
+        public int pushCount() {
+            return 1;
+        }
+
+        /**
+         * Identify the PUSH instruction in packed form.
+         * @return Opcodes.PUSH
+         */
+        @Override
+        public int opcode() {
+            return Opcodes.PUSH;
+        }
+
+        /**
+         * Show the operand of the PUSH instruction in packed form.
+         * @return the constant pushed
+         */
+        @Override
+        public int operand() {
+            return this.constant;
         }
 
         /**
@@ -200,10 +991,46 @@ public class Machine {
          * Run the microsteps for the NEGATE instruction.
          */
         @Override
-        public void execute() {
-            int op1 = stack.pop();
+        public void execute( Machine machine ) {
+            int op1 = machine.pop();
             op1 = op1 * -1;
-            stack.push( op1 );
+            machine.push( op1 );
+        }
+
+        /**
+         * The NEGATE instruction takes one value off the stack.
+         * @return 1
+         */
+        @Override
+        public int popCount() {
+            return 1;
+        }
+
+        /**
+         * The NEGATE instruction puts one value on the stack.
+         * @return 1
+         */
+        @Override
+        public int pushCount() {
+            return 1;
+        }
+
+        /**
+         * Identify the NEGATE instruction in packed form.
+         * @return Opcodes.NEG
+         */
+        @Override
+        public int opcode() {
+            return Opcodes.NEG;
+        }
+
+        /**
+         * Show the operand of the NEGATE instruction in packed form.
+         * @return 0, since NEGATE has no operand
+         */
+        @Override
+        public int operand() {
+            return 0;
         }
 
         /**
@@ -220,24 +1047,48 @@ public class Machine {
      * The PRINT instruction
      */
     public static class Print implements Instruction{
-        private int value;
         /**
-         * Create a PRINT instruction
+         * Run the microsteps for the PRINT instruction.
          */
-        public Print(int value){
-            this.value = value;
+        @Override
+        public void execute( Machine machine ) {
+            machine.out.println( "*** " + machine.pop() );
         }
+
         /**
-         * Run the microsteps for the PRINT instruction.
+         * The PRINT instruction takes one value off the stack.
+         * @return 1
+         */
+        @Override
+        public int popCount() {
+            return 1;
+        }
+
+        /**
+         * The PRINT instruction puts nothing on the stack.
+         * @return 0
          */
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            this.value = op2;
+        public int pushCount() {
+            return 0;
         }
 
-        public int getValue() {
-            return value;
+        /**
+         * Identify the PRINT instruction in packed form.
+         * @return Opcodes.PRINT
+         */
+        @Override
+        public int opcode() {
+            return Opcodes.PRINT;
+        }
+
+        /**
+         * Show the operand of the PRINT instruction in packed form.
+         * @return 0, since PRINT has no operand
+         */
+        @Override
+        public int operand() {
+            return 0;
         }
 
         /**
@@ -258,9 +1109,45 @@ public class Machine {
          * Run the microsteps for the SQUAREROOT instruction.
          */
         @Override
-        public void execute() {
-            double op1 = stack.pop();
-            stack.push((int) Math.pow(op1,0.5));
+        public void execute( Machine machine ) {
+            double op1 = machine.pop();
+            machine.push( (int) Math.pow(op1,0.5) );
+        }
+
+        /**
+         * The SQUAREROOT instruction takes one value off the stack.
+         * @return 1
+         */
+        @Override
+        public int popCount() {
+            return 1;
+        }
+
+        /**
+         * The SQUAREROOT instruction puts one value on the stack.
+         * @return 1
+         */
+        @Override
+        public int pushCount() {
+            return 1;
+        }
+
+        /**
+         * Identify the SQUAREROOT instruction in packed form.
+         * @return Opcodes.SQRT
+         */
+        @Override
+        public int opcode() {
+            return Opcodes.SQRT;
+        }
+
+        /**
+         * Show the operand of the SQUAREROOT instruction in packed form.
+         * @return 0, since SQUAREROOT has no operand
+         */
+        @Override
+        public int operand() {
+            return 0;
         }
 
         /**
@@ -281,10 +1168,46 @@ public class Machine {
          * Run the microsteps for the MULTIPLY instruction.
          */
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            stack.push( op1 * op2 );
+        public void execute( Machine machine ) {
+            int op2 = machine.pop();
+            int op1 = machine.pop();
+            machine.push( op1 * op2 );
+        }
+
+        /**
+         * The MULTIPLY instruction takes two values off the stack.
+         * @return 2
+         */
+        @Override
+        public int popCount() {
+            return 2;
+        }
+
+        /**
+         * The MULTIPLY instruction puts one value on the stack.
+         * @return 1
+         */
+        @Override
+        public int pushCount() {
+            return 1;
+        }
+
+        /**
+         * Identify the MULTIPLY instruction in packed form.
+         * @return Opcodes.MUL
+         */
+        @Override
+        public int opcode() {
+            return Opcodes.MUL;
+        }
+
+        /**
+         * Show the operand of the MULTIPLY instruction in packed form.
+         * @return 0, since MULTIPLY has no operand
+         */
+        @Override
+        public int operand() {
+            return 0;
         }
 
         /**
@@ -302,21 +1225,60 @@ public class Machine {
      */
     public static class Load implements Instruction{
         /** stores varname of target variable */
-        private String varname;
+        private final String varname;
+        /** stores frame slot of target variable */
+        private final int slot;
         /**
          * Create a LOAD instruction
+         * @param slot the frame slot of the target variable
          * @param load the name of the target variable
          */
-        public Load(String load){
+        public Load(int slot, String load){
+            this.slot = slot;
             this.varname = load;
         }
         /**
          * Run the microsteps for the LOAD instruction.
          */
         @Override
-        public void execute() {
-            int i = table.get(getVarname());
-            stack.push(i);
+        public void execute( Machine machine ) {
+            machine.push( machine.frame[ this.slot ] );
+        }
+
+        /**
+         * The LOAD instruction takes nothing off the stack.
+         * @return 0
+         */
+        @Override
+        public int popCount() {
+            return 0;
+        }
+
+        /**
+         * The LOAD instruction puts one value on the stack.
+         * @return 1
+         */
+        @Override
+        public int pushCount() {
+            return 1;
+        }
+
+        /**
+         * Identify the LOAD instruction in packed form.
+         * @return Opcodes.LOAD
+         */
+        @Override
+        public int opcode() {
+            return Opcodes.LOAD;
+        }
+
+        /**
+         * Show the operand of the LOAD instruction in packed form.
+         * @return the target variable slot
+         */
+        @Override
+        public int operand() {
+            return this.slot;
         }
 
         /**
@@ -335,6 +1297,14 @@ public class Machine {
         public String getVarname() {
             return this.varname;
         }
+
+        /**
+         * Show the frame slot of the variable
+         * @return the target variable slot
+         */
+        public int getSlot() {
+            return this.slot;
+        }
     }
 
     /**
@@ -345,10 +1315,46 @@ public class Machine {
          * Run the microsteps for the SUBTRACT instruction.
          */
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            stack.push( op1 - op2 );
+        public void execute( Machine machine ) {
+            int op2 = machine.pop();
+            int op1 = machine.pop();
+            machine.push( op1 - op2 );
+        }
+
+        /**
+         * The SUBTRACT instruction takes two values off the stack.
+         * @return 2
+         */
+        @Override
+        public int popCount() {
+            return 2;
+        }
+
+        /**
+         * The SUBTRACT instruction puts one value on the stack.
+         * @return 1
+         */
+        @Override
+        public int pushCount() {
+            return 1;
+        }
+
+        /**
+         * Identify the SUBTRACT instruction in packed form.
+         * @return Opcodes.SUB
+         */
+        @Override
+        public int opcode() {
+            return Opcodes.SUB;
+        }
+
+        /**
+         * Show the operand of the SUBTRACT instruction in packed form.
+         * @return 0, since SUBTRACT has no operand
+         */
+        @Override
+        public int operand() {
+            return 0;
         }
 
         /**
@@ -369,10 +1375,49 @@ public class Machine {
          * Run the microsteps for the DIVIDE instruction.
          */
         @Override
-        public void execute() {
-            int op2 = stack.pop();
-            int op1 = stack.pop();
-            stack.push( op1 / op2 );
+        public void execute( Machine machine ) {
+            int op2 = machine.pop();
+            int op1 = machine.pop();
+            if ( op2 == 0 ) {
+                Errors.report( Errors.Type.DIVIDE_BY_ZERO, null );
+            }
+            machine.push( op1 / op2 );
+        }
+
+        /**
+         * The DIVIDE instruction takes two values off the stack.
+         * @return 2
+         */
+        @Override
+        public int popCount() {
+            return 2;
+        }
+
+        /**
+         * The DIVIDE instruction puts one value on the stack.
+         * @return 1
+         */
+        @Override
+        public int pushCount() {
+            return 1;
+        }
+
+        /**
+         * Identify the DIVIDE instruction in packed form.
+         * @return Opcodes.DIV
+         */
+        @Override
+        public int opcode() {
+            return Opcodes.DIV;
+        }
+
+        /**
+         * Show the operand of the DIVIDE instruction in packed form.
+         * @return 0, since DIVIDE has no operand
+         */
+        @Override
+        public int operand() {
+            return 0;
         }
 
         /**
@@ -384,4 +1429,64 @@ public class Machine {
             return "DIV";
         }
     }
+
+    /**
+     * The DUPLICATE instruction
+     */
+    public static class Duplicate implements Instruction{
+        /**
+         * Run the microsteps for the DUPLICATE instruction.
+         */
+        @Override
+        public void execute( Machine machine ) {
+            int op1 = machine.pop();
+            machine.push( op1 );
+            machine.push( op1 );
+        }
+
+        /**
+         * The DUPLICATE instruction takes one value off the stack.
+         * @return 1
+         */
+        @Override
+        public int popCount() {
+            return 1;
+        }
+
+        /**
+         * The DUPLICATE instruction puts two copies of it back.
+         * @return 2
+         */
+        @Override
+        public int pushCount() {
+            return 2;
+        }
+
+        /**
+         * Identify the DUPLICATE instruction in packed form.
+         * @return Opcodes.DUP
+         */
+        @Override
+        public int opcode() {
+            return Opcodes.DUP;
+        }
+
+        /**
+         * Show the operand of the DUPLICATE instruction in packed form.
+         * @return 0, since DUPLICATE has no operand
+         */
+        @Override
+        public int operand() {
+            return 0;
+        }
+
+        /**
+         * Show the DUPLICATE instruction as plain text.
+         * @return "DUP"
+         */
+        @Override
+        public String toString() {
+            return "DUP";
+        }
+    }
 }
@@ -0,0 +1,316 @@
+package dendron.machine;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Statistics about what every Machine in the JVM executes, published as
+ * the platform MBean {@value #NAME}.
+ *
+ * Collection is off unless the JVM is started with
+ * {@code -Ddendron.statistics=true}. The switch is a static final
+ * field, so when it is off the JIT compiler removes every check of it
+ * from the Machine, and nothing is counted or timed.
+ *
+ * Dendron programs have no branches, so a run that ends normally
+ * executes every instruction of its program exactly once, and the
+ * deepest its stack goes is the depth the Verifier computed. The
+ * instruction counts are therefore counted once per program, when it
+ * is created, and added here after each run, rather than counted in
+ * the interpreter loop on every dispatch; the stack high-water mark
+ * comes from the Verifier. A run that aborts is not recorded. Register
+ * and JIT-compiled programs add to the timings and sizes but not to
+ * the instruction counts.
+ *
+ * @author William Johnson
+ */
+public final class MachineStatistics implements MachineStatisticsMXBean {
+
+    /** whether statistics are collected at all */
+    public static final boolean ENABLED = Boolean.getBoolean( "dendron.statistics" );
+
+    /** the name the statistics are registered under */
+    public static final String NAME = "dendron:type=Machine";
+
+    /** how many buckets the wall-time histogram has; the last is about 39 hours */
+    private static final int BUCKETS = 48;
+
+    /** the one instance, or null if statistics are not collected */
+    private static final MachineStatistics INSTANCE = ENABLED ? register() : null;
+
+    /** how many programs have been run */
+    private final LongAdder programs;
+    /** how many instructions of each ordinary opcode have been executed */
+    private final LongAdder[] instructions;
+    /** the deepest the stack has been */
+    private final AtomicInteger highWater;
+    /** the size of the last symbol table */
+    private volatile int symbols;
+    /** the size of the largest symbol table */
+    private final AtomicInteger largest;
+    /** the wall-time histogram, in powers of two of nanoseconds */
+    private final AtomicLongArray histogram;
+    /** the total of all wall times */
+    private final LongAdder totalNanos;
+    /** the longest wall time */
+    private final AtomicLong maxNanos;
+
+    /**
+     * Create empty statistics.
+     */
+    private MachineStatistics() {
+        this.programs = new LongAdder();
+        this.instructions = new LongAdder[ Opcodes.COUNT ];
+        for ( int i = 0; i < Opcodes.COUNT; ++i ) {
+            this.instructions[ i ] = new LongAdder();
+        }
+        this.highWater = new AtomicInteger();
+        this.largest = new AtomicInteger();
+        this.histogram = new AtomicLongArray( BUCKETS );
+        this.totalNanos = new LongAdder();
+        this.maxNanos = new AtomicLong();
+    }
+
+    /**
+     * Create the statistics and register them with the platform MBean
+     * server.
+     * @return the new statistics
+     */
+    private static MachineStatistics register() {
+        MachineStatistics statistics = new MachineStatistics();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    statistics, new ObjectName( NAME ) );
+        }
+        catch ( InstanceAlreadyExistsException e ) {
+            // another copy of these classes got there first
+        }
+        catch ( JMException e ) {
+            throw new IllegalStateException( e );
+        }
+        return statistics;
+    }
+
+    /**
+     * Find the statistics that Machines report to
+     * @return the statistics, or null if {@link #ENABLED} is false
+     */
+    public static MachineStatistics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Count the instructions of each kind in a program.
+     * @param code the program's instructions
+     * @return the counts, indexed by opcode
+     */
+    static long[] count( Machine.Instruction[] code ) {
+        long[] counts = new long[ Opcodes.COUNT ];
+        for ( Machine.Instruction instr: code ) {
+            counts[ instr.opcode() ]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Count the instructions of each kind in a packed program.
+     * @param code verified opcodes with inline operands, without
+     *             superinstructions
+     * @return the counts, indexed by opcode
+     */
+    static long[] count( int[] code ) {
+        long[] counts = new long[ Opcodes.COUNT ];
+        for ( int pc = 0; pc < code.length; ) {
+            counts[ code[ pc ] ]++;
+            pc += Opcodes.hasOperand( code[ pc ] ) ? 2 : 1;
+        }
+        return counts;
+    }
+
+    /**
+     * Record one program run.
+     * @param opcodes how many of each opcode the program executed, or
+     *                null if they were not counted
+     * @param depth the program's maximum stack depth
+     * @param size the size of the program's symbol table
+     * @param nanos how long the program took
+     */
+    void record( long[] opcodes, int depth, int size, long nanos ) {
+        if ( opcodes != null ) {
+            for ( int opcode = 0; opcode < Opcodes.COUNT; ++opcode ) {
+                if ( opcodes[ opcode ] != 0 ) {
+                    this.instructions[ opcode ].add( opcodes[ opcode ] );
+                }
+            }
+        }
+        this.programs.increment();
+        // the maxima rarely change, so look before paying for an update
+        if ( depth > this.highWater.get() ) {
+            this.highWater.accumulateAndGet( depth, Math::max );
+        }
+        if ( size != this.symbols ) {
+            this.symbols = size;
+        }
+        if ( size > this.largest.get() ) {
+            this.largest.accumulateAndGet( size, Math::max );
+        }
+        int bucket = 63 - Long.numberOfLeadingZeros( Math.max( nanos, 1 ) );
+        this.histogram.incrementAndGet( Math.min( bucket, BUCKETS - 1 ) );
+        this.totalNanos.add( nanos );
+        if ( nanos > this.maxNanos.get() ) {
+            this.maxNanos.accumulateAndGet( nanos, Math::max );
+        }
+    }
+
+    /**
+     * Show how many programs have been run
+     */
+    @Override
+    public long getPrograms() {
+        return this.programs.sum();
+    }
+
+    /**
+     * Show how many instructions of each kind have been executed.
+     * Superinstructions are counted as the instructions they stand for.
+     */
+    @Override
+    public Map< String, Long > getInstructionCounts() {
+        Map< String, Long > counts = new LinkedHashMap<>();
+        for ( int opcode = 0; opcode < Opcodes.COUNT; ++opcode ) {
+            counts.put( Opcodes.mnemonic( opcode ), this.instructions[ opcode ].sum() );
+        }
+        return counts;
+    }
+
+    /**
+     * Show how many instructions have been executed in all
+     */
+    @Override
+    public long getInstructions() {
+        long total = 0;
+        for ( LongAdder count: this.instructions ) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Show the deepest the value stack has been
+     */
+    @Override
+    public int getStackHighWaterMark() {
+        return this.highWater.get();
+    }
+
+    /**
+     * Show how many variables the last program run had
+     */
+    @Override
+    public int getSymbolTableSize() {
+        return this.symbols;
+    }
+
+    /**
+     * Show how many variables the largest program run had
+     */
+    @Override
+    public int getLargestSymbolTableSize() {
+        return this.largest.get();
+    }
+
+    /**
+     * Show how many runs took from 2<sup>i</sup> up to 2<sup>i+1</sup>
+     * nanoseconds, for each i
+     */
+    @Override
+    public long[] getWallTimeHistogram() {
+        long[] buckets = new long[ BUCKETS ];
+        for ( int i = 0; i < BUCKETS; ++i ) {
+            buckets[ i ] = this.histogram.get( i );
+        }
+        return buckets;
+    }
+
+    /**
+     * Find a percentile of the wall times in the histogram.
+     * @param fraction the percentile, from 0 to 1
+     * @return the upper bound of its bucket, in nanoseconds, or 0 if no
+     *         program has been run
+     */
+    private long percentile( double fraction ) {
+        long[] buckets = getWallTimeHistogram();
+        long total = 0;
+        for ( long count: buckets ) {
+            total += count;
+        }
+        long seen = 0;
+        for ( int i = 0; i < BUCKETS; ++i ) {
+            seen += buckets[ i ];
+            if ( seen > 0 && seen >= fraction * total ) {
+                return 2L << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Show the median time a program took, to within a factor of two
+     */
+    @Override
+    public long getWallTimeP50Nanos() {
+        return percentile( 0.5 );
+    }
+
+    /**
+     * Show the 99th percentile of the time a program took, to within a factor of two
+     */
+    @Override
+    public long getWallTimeP99Nanos() {
+        return percentile( 0.99 );
+    }
+
+    /**
+     * Show the longest time a program took, in nanoseconds
+     */
+    @Override
+    public long getMaxWallTimeNanos() {
+        return this.maxNanos.get();
+    }
+
+    /**
+     * Show the average time a program took, in nanoseconds
+     */
+    @Override
+    public double getMeanWallTimeNanos() {
+        long programs = this.programs.sum();
+        return programs == 0 ? 0 : (double) this.totalNanos.sum() / programs;
+    }
+
+    /**
+     * Start every statistic again from zero.
+     */
+    @Override
+    public void reset() {
+        this.programs.reset();
+        for ( LongAdder count: this.instructions ) {
+            count.reset();
+        }
+        this.highWater.set( 0 );
+        this.symbols = 0;
+        this.largest.set( 0 );
+        for ( int i = 0; i < BUCKETS; ++i ) {
+            this.histogram.set( i, 0 );
+        }
+        this.totalNanos.reset();
+        this.maxNanos.set( 0 );
+    }
+}
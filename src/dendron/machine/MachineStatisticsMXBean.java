@@ -0,0 +1,87 @@
+package dendron.machine;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link MachineStatistics}, as seen by JMX
+ * clients such as JConsole or a metrics scraper.
+ *
+ * @author William Johnson
+ */
+public interface MachineStatisticsMXBean {
+
+    /**
+     * Show how many programs have been run
+     * @return the number of programs
+     */
+    long getPrograms();
+
+    /**
+     * Show how many instructions of each kind have been executed.
+     * Superinstructions are counted as the instructions they stand for.
+     * @return the count for each mnemonic, such as "ADD"
+     */
+    Map< String, Long > getInstructionCounts();
+
+    /**
+     * Show how many instructions have been executed in all
+     * @return the sum of the instruction counts
+     */
+    long getInstructions();
+
+    /**
+     * Show the deepest the value stack has been
+     * @return the most values ever on the stack at once
+     */
+    int getStackHighWaterMark();
+
+    /**
+     * Show how many variables the last program run had
+     * @return the size of its symbol table
+     */
+    int getSymbolTableSize();
+
+    /**
+     * Show how many variables the largest program run had
+     * @return the size of the largest symbol table
+     */
+    int getLargestSymbolTableSize();
+
+    /**
+     * Show how long programs took, as a histogram whose bucket i counts
+     * the runs that took from 2<sup>i</sup> up to 2<sup>i+1</sup>
+     * nanoseconds
+     * @return the number of runs in each bucket
+     */
+    long[] getWallTimeHistogram();
+
+    /**
+     * Show the median time a program took, to within a factor of two
+     * @return the upper bound of the median's bucket, in nanoseconds
+     */
+    long getWallTimeP50Nanos();
+
+    /**
+     * Show the 99th percentile of the time a program took, to within a
+     * factor of two
+     * @return the upper bound of the 99th percentile's bucket, in nanoseconds
+     */
+    long getWallTimeP99Nanos();
+
+    /**
+     * Show the longest time a program took
+     * @return the time, in nanoseconds
+     */
+    long getMaxWallTimeNanos();
+
+    /**
+     * Show the average time a program took
+     * @return the time, in nanoseconds
+     */
+    double getMeanWallTimeNanos();
+
+    /**
+     * Start every statistic again from zero.
+     */
+    void reset();
+}
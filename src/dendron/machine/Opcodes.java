@@ -0,0 +1,86 @@
+package dendron.machine;
+
+/**
+ * Numeric codes for the Machine's instructions, used wherever a
+ * program is stored as numbers rather than as Instruction objects.
+ * PUSH, LOAD and STORE are followed by one operand: the constant
+ * for PUSH, the frame slot for LOAD and STORE.
+ *
+ * @author William Johnson
+ */
+public final class Opcodes {
+
+    private Opcodes() {}
+
+    public static final int PUSH = 0;
+    public static final int LOAD = 1;
+    public static final int STORE = 2;
+    public static final int ADD = 3;
+    public static final int SUB = 4;
+    public static final int MUL = 5;
+    public static final int DIV = 6;
+    public static final int NEG = 7;
+    public static final int SQRT = 8;
+    public static final int PRINT = 9;
+    public static final int DUP = 10;
+
+    /** how many opcodes there are */
+    public static final int COUNT = 11;
+
+    /** the assembly language name of each opcode */
+    private static final String[] MNEMONICS = {
+            "PUSH", "LOAD", "STORE", "ADD", "SUB",
+            "MUL", "DIV", "NEG", "SQRT", "PRINT", "DUP"
+    };
+
+    /** how many values each opcode takes off the stack */
+    private static final int[] POPS = { 0, 0, 1, 2, 2, 2, 2, 1, 1, 1, 1 };
+
+    /** how many values each opcode leaves on the stack */
+    private static final int[] PUSHES = { 1, 1, 0, 1, 1, 1, 1, 1, 1, 0, 2 };
+
+    /**
+     * Tell whether a number is a valid opcode
+     * @param opcode the number to check
+     * @return true if it is one of the constants in this class
+     */
+    public static boolean isValid( int opcode ) {
+        return opcode >= 0 && opcode < COUNT;
+    }
+
+    /**
+     * Tell how many values an opcode takes off the stack
+     * @param opcode one of the constants in this class
+     * @return the number of values popped
+     */
+    public static int pops( int opcode ) {
+        return POPS[ opcode ];
+    }
+
+    /**
+     * Tell how many values an opcode leaves on the stack
+     * @param opcode one of the constants in this class
+     * @return the number of values pushed
+     */
+    public static int pushes( int opcode ) {
+        return PUSHES[ opcode ];
+    }
+
+    /**
+     * Show the assembly language name of an opcode
+     * @param opcode one of the constants in this class
+     * @return the mnemonic, as written in .denm files
+     */
+    public static String mnemonic( int opcode ) {
+        return MNEMONICS[ opcode ];
+    }
+
+    /**
+     * Tell whether an opcode is followed by an operand
+     * @param opcode one of the constants in this class
+     * @return true for PUSH, LOAD and STORE
+     */
+    public static boolean hasOperand( int opcode ) {
+        return opcode <= STORE;
+    }
+}
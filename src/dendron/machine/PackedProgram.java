@@ -0,0 +1,210 @@
+package dendron.machine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A verified Machine program stored compactly as an array of ints:
+ * each instruction is its opcode from {@link Opcodes}, followed by its
+ * operand for PUSH, LOAD and STORE. A Machine runs this form with a
+ * single switch loop instead of calling an object per instruction.
+ * Like a CompiledProgram, a PackedProgram never changes once created.
+ *
+ * @author William Johnson
+ */
+public final class PackedProgram {
+    /** the opcodes and inline operands */
+    private final int[] code;
+    /** the same code with superinstructions, as the interpreter runs it */
+    private final int[] fused;
+    /** the names of the variable slots; never modified after construction */
+    private final SymbolTable symbols;
+    /** the most values the program ever has on the stack */
+    private final int maxStackDepth;
+    /** how many instructions the code holds */
+    private final int length;
+    /** how many of each opcode the program has; only counted while
+        {@link MachineStatistics} are enabled */
+    private final long[] opcodeCounts;
+    /** the sample points for the last interval the flight recorder used */
+    private volatile SamplePoints samples;
+
+    /**
+     * Where the instructions sampled at some interval begin.
+     */
+    private static final class SamplePoints {
+        final int interval;
+        final int[] pcs;
+
+        SamplePoints( int interval, int[] pcs ) {
+            this.interval = interval;
+            this.pcs = pcs;
+        }
+    }
+
+    /**
+     * Pack a verified program, using superinstructions.
+     *
+     * @param program the program in object form
+     */
+    public PackedProgram( CompiledProgram program ) {
+        this( program, true );
+    }
+
+    /**
+     * Pack a verified program.
+     *
+     * @param program the program in object form
+     * @param fuse whether the interpreter should run the program
+     *             with superinstructions
+     * @see Superinstructions
+     */
+    public PackedProgram( CompiledProgram program, boolean fuse ) {
+        Machine.Instruction[] instructions = program.getCode();
+        int size = 0;
+        for ( Machine.Instruction instr: instructions ) {
+            size += Opcodes.hasOperand( instr.opcode() ) ? 2 : 1;
+        }
+        this.code = new int[ size ];
+        int pc = 0;
+        for ( Machine.Instruction instr: instructions ) {
+            this.code[ pc++ ] = instr.opcode();
+            if ( Opcodes.hasOperand( instr.opcode() ) ) {
+                this.code[ pc++ ] = instr.operand();
+            }
+        }
+        this.symbols = program.getSymbols();
+        this.maxStackDepth = program.getMaxStackDepth();
+        this.length = instructions.length;
+        this.fused = fuse ? Superinstructions.fuse( this.code ) : this.code;
+        this.opcodeCounts = program.getOpcodeCounts();
+    }
+
+    /**
+     * Adopt packed code that was read from outside the compiler.
+     * The code is fully verified before it is accepted.
+     *
+     * @param code opcodes with inline operands; the array is kept, not copied
+     * @param symbols the names of the frame's slots
+     */
+    PackedProgram( int[] code, SymbolTable symbols ) {
+        this.maxStackDepth = Verifier.maxStackDepth( code, symbols );
+        this.code = code;
+        this.fused = Superinstructions.fuse( code );
+        this.symbols = symbols;
+        int count = 0;
+        for ( int pc = 0; pc < code.length; ++count ) {
+            pc += Opcodes.hasOperand( code[ pc ] ) ? 2 : 1;
+        }
+        this.length = count;
+        this.opcodeCounts = MachineStatistics.ENABLED ? MachineStatistics.count( code ) : null;
+    }
+
+    /**
+     * Show how many instructions of each kind the program has. Programs
+     * have no branches, so this is also how many of each a run executes,
+     * whether or not it is fused.
+     * @return the counts, indexed by opcode, or null if
+     *         {@link MachineStatistics} are not enabled
+     */
+    long[] getOpcodeCounts() {
+        return this.opcodeCounts;
+    }
+
+    /**
+     * Find where every interval-th instruction of the fused code begins,
+     * so that the Machine can run the code in stretches between them.
+     * The points for the last interval asked for are kept, since a
+     * recording rarely changes it.
+     * @param interval how many instructions from one sample to the next
+     * @return the positions in the fused code, in order
+     * @see InstructionEvent
+     */
+    int[] getSamplePoints( int interval ) {
+        SamplePoints points = this.samples;
+        if ( points == null || points.interval != interval ) {
+            int[] pcs = new int[ 16 ];
+            int count = 0;
+            int dispatches = 0;
+            for ( int pc = 0; pc < this.fused.length; ) {
+                if ( ++dispatches % interval == 0 ) {
+                    if ( count == pcs.length ) {
+                        pcs = Arrays.copyOf( pcs, 2 * count );
+                    }
+                    pcs[ count++ ] = pc;
+                }
+                pc += 1 + Superinstructions.operandCount( this.fused[ pc ] );
+            }
+            points = new SamplePoints( interval, Arrays.copyOf( pcs, count ) );
+            this.samples = points;
+        }
+        return points.pcs;
+    }
+
+    /**
+     * Show how many instructions the program holds
+     * @return the number of instructions, not counting operands
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Show the most values the program ever has on the stack
+     * @return the maximum stack depth computed by the Verifier
+     */
+    public int getMaxStackDepth() {
+        return this.maxStackDepth;
+    }
+
+    /**
+     * Show how many variable slots the program uses
+     * @return the size of the frame the program needs
+     */
+    public int getFrameSize() {
+        return this.symbols.size();
+    }
+
+    /**
+     * Rebuild the object form of the program, e.g. for display.
+     * @return a new list of Machine instructions
+     */
+    public List< Machine.Instruction > getInstructions() {
+        List< Machine.Instruction > result = new ArrayList<>( this.length );
+        int pc = 0;
+        while ( pc < this.code.length ) {
+            int opcode = this.code[ pc++ ];
+            int operand = Opcodes.hasOperand( opcode ) ? this.code[ pc++ ] : 0;
+            result.add( Machine.instruction( opcode, operand,
+                    Opcodes.hasOperand( opcode ) && opcode != Opcodes.PUSH
+                            ? this.symbols.getName( operand ) : null ) );
+        }
+        return result;
+    }
+
+    /**
+     * Give a Machine direct access to the packed code.
+     * @return the code array, which must not be modified
+     */
+    int[] getCode() {
+        return this.code;
+    }
+
+    /**
+     * Give a Machine the code to interpret, which may contain
+     * superinstructions.
+     * @return the fused code array, which must not be modified
+     */
+    int[] getFusedCode() {
+        return this.fused;
+    }
+
+    /**
+     * Give a Machine the slot-to-name table for its final report.
+     * @return the symbol table, which must not be modified
+     */
+    SymbolTable getSymbols() {
+        return this.symbols;
+    }
+}
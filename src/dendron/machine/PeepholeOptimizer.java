@@ -0,0 +1,240 @@
+package dendron.machine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A peephole optimizer for Machine programs. Instructions are copied
+ * to the output one at a time, and after each one the last few output
+ * instructions (the window) are checked against a set of rewrite rules.
+ * Because a rewrite can expose another match at the new end of the
+ * output, whole constant expressions collapse in a single pass.
+ *
+ * Programs are straight-line code, so the optimizer can also remember
+ * which variables currently hold a known constant and replace loads
+ * of them with pushes.
+ *
+ * @author William Johnson
+ */
+public class PeepholeOptimizer {
+
+    /**
+     * The rewrites the optimizer can make.
+     */
+    public enum Rule {
+        /** PUSH a; PUSH b; ADD/SUB/MUL/DIV becomes one PUSH, and so does PUSH a; SQRT */
+        FOLD_CONSTANTS( 3 ),
+        /** NEG; NEG disappears */
+        CANCEL_NEGATION( 2 ),
+        /** PUSH c; NEG becomes PUSH -c */
+        NEGATE_CONSTANT( 2 ),
+        /** LOAD x becomes PUSH c while x holds a constant stored by PUSH c; STORE x */
+        FORWARD_CONSTANTS( 1 ),
+        /** STORE x; LOAD x becomes DUP; STORE x */
+        STORE_RELOAD( 2 );
+
+        /** how many instructions the rule looks at */
+        private final int width;
+
+        Rule( int width ) {
+            this.width = width;
+        }
+    }
+
+    /** the largest window that any rule needs */
+    public static final int DEFAULT_WINDOW = 3;
+
+    /** the rules in effect, limited to those that fit the window */
+    private final Set< Rule > rules;
+    /** how many instructions the last call to optimize removed */
+    private int removed;
+
+    /** the constant each slot is known to hold, where known[ slot ] is set */
+    private int[] values;
+    /** whether each slot's value is known */
+    private boolean[] known;
+
+    /**
+     * Create an optimizer that applies every rule.
+     */
+    public PeepholeOptimizer() {
+        this( EnumSet.allOf( Rule.class ), DEFAULT_WINDOW );
+    }
+
+    /**
+     * Create an optimizer that applies only some rules.
+     *
+     * @param rules the rewrites to make
+     * @param window the most instructions a rewrite may look at;
+     *               rules needing a wider window are not applied
+     */
+    public PeepholeOptimizer( Set< Rule > rules, int window ) {
+        this.rules = EnumSet.noneOf( Rule.class );
+        for ( Rule rule: rules ) {
+            if ( rule.width <= window ) {
+                this.rules.add( rule );
+            }
+        }
+        this.removed = 0;
+    }
+
+    /**
+     * Show how many instructions the last call to optimize removed
+     * @return the difference in length between its input and output
+     */
+    public int getRemoved() {
+        return this.removed;
+    }
+
+    /**
+     * Optimize a program. The result computes the same output and
+     * leaves the same variable values as the original.
+     *
+     * @param program a list of Machine instructions
+     * @return a new, usually shorter, list of instructions
+     */
+    public List< Machine.Instruction > optimize(
+            List< Machine.Instruction > program ) {
+        List< Machine.Instruction > out = new ArrayList<>( program.size() );
+        this.values = new int[ 16 ];
+        this.known = new boolean[ 16 ];
+        for ( Machine.Instruction instr: program ) {
+            out.add( instr );
+            while ( rewrite( out ) ) {
+                // keep going while each rewrite exposes another
+            }
+        }
+        this.removed = program.size() - out.size();
+        return out;
+    }
+
+    /**
+     * Show the instruction a given distance from the end of the output.
+     */
+    private static Machine.Instruction back( List< Machine.Instruction > out,
+                                             int distance ) {
+        return out.get( out.size() - distance );
+    }
+
+    /**
+     * Remove instructions from the end of the output.
+     */
+    private static void drop( List< Machine.Instruction > out, int count ) {
+        for ( int i = 0; i < count; ++i ) {
+            out.remove( out.size() - 1 );
+        }
+    }
+
+    /**
+     * Make sure the known-value arrays cover a slot.
+     */
+    private void cover( int slot ) {
+        if ( slot >= this.known.length ) {
+            int size = Math.max( slot + 1, 2 * this.known.length );
+            this.values = Arrays.copyOf( this.values, size );
+            this.known = Arrays.copyOf( this.known, size );
+        }
+    }
+
+    /**
+     * Try to rewrite the end of the output.
+     *
+     * @param out the instructions output so far
+     * @return true if a rewrite was made
+     */
+    private boolean rewrite( List< Machine.Instruction > out ) {
+        int size = out.size();
+        Machine.Instruction last = back( out, 1 );
+        int opcode = last.opcode();
+        if ( opcode == Opcodes.STORE ) {
+            int slot = last.operand();
+            cover( slot );
+            this.known[ slot ] = size >= 2
+                    && back( out, 2 ).opcode() == Opcodes.PUSH;
+            if ( this.known[ slot ] ) {
+                this.values[ slot ] = back( out, 2 ).operand();
+            }
+            return false;
+        }
+        if ( opcode == Opcodes.LOAD ) {
+            int slot = last.operand();
+            cover( slot );
+            if ( this.rules.contains( Rule.FORWARD_CONSTANTS )
+                    && this.known[ slot ] ) {
+                drop( out, 1 );
+                out.add( new Machine.PushConst( this.values[ slot ] ) );
+                return true;
+            }
+            if ( this.rules.contains( Rule.STORE_RELOAD ) && size >= 2
+                    && back( out, 2 ).opcode() == Opcodes.STORE
+                    && back( out, 2 ).operand() == slot ) {
+                Machine.Instruction store = back( out, 2 );
+                drop( out, 2 );
+                out.add( new Machine.Duplicate() );
+                out.add( store );
+                return false;
+            }
+            return false;
+        }
+        if ( size < 2 ) {
+            return false;
+        }
+        Machine.Instruction prev = back( out, 2 );
+        if ( opcode == Opcodes.NEG ) {
+            if ( this.rules.contains( Rule.CANCEL_NEGATION )
+                    && prev.opcode() == Opcodes.NEG ) {
+                drop( out, 2 );
+                return true;
+            }
+            if ( this.rules.contains( Rule.NEGATE_CONSTANT )
+                    && prev.opcode() == Opcodes.PUSH ) {
+                drop( out, 2 );
+                out.add( new Machine.PushConst( -prev.operand() ) );
+                return true;
+            }
+            return false;
+        }
+        if ( !this.rules.contains( Rule.FOLD_CONSTANTS )
+                || prev.opcode() != Opcodes.PUSH ) {
+            return false;
+        }
+        if ( opcode == Opcodes.SQRT ) {
+            drop( out, 2 );
+            out.add( new Machine.PushConst(
+                    (int) Math.pow( prev.operand(), 0.5 ) ) );
+            return true;
+        }
+        if ( size < 3 || back( out, 3 ).opcode() != Opcodes.PUSH ) {
+            return false;
+        }
+        int op1 = back( out, 3 ).operand();
+        int op2 = prev.operand();
+        int result;
+        switch ( opcode ) {
+            case Opcodes.ADD:
+                result = op1 + op2;
+                break;
+            case Opcodes.SUB:
+                result = op1 - op2;
+                break;
+            case Opcodes.MUL:
+                result = op1 * op2;
+                break;
+            case Opcodes.DIV:
+                if ( op2 == 0 ) {
+                    // leave it for the Machine to report at run time
+                    return false;
+                }
+                result = op1 / op2;
+                break;
+            default:
+                return false;
+        }
+        drop( out, 3 );
+        out.add( new Machine.PushConst( result ) );
+        return true;
+    }
+}
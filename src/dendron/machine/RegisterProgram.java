@@ -0,0 +1,312 @@
+package dendron.machine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Machine program translated into three-address register code, such
+ * as "t0 = x * y", for a register interpreter. The translation removes
+ * every LOAD and PUSH, because operations read variables and constants
+ * directly from registers, and most STOREs, because the operation
+ * that computed a value can write it straight into the variable.
+ *
+ * The register file is laid out as the program's variables (in frame
+ * slot order), then one register per distinct constant, then one
+ * temporary per level of the Machine stack. A value at depth d of the
+ * stack is always computed into temporary d, which is all the register
+ * allocation straight-line stack code needs.
+ *
+ * Like a PackedProgram, a RegisterProgram never changes once created.
+ *
+ * @author William Johnson
+ */
+public final class RegisterProgram {
+
+    /** dest = a + b */
+    public static final int ADD = 0;
+    /** dest = a - b */
+    public static final int SUB = 1;
+    /** dest = a * b */
+    public static final int MUL = 2;
+    /** dest = a / b */
+    public static final int DIV = 3;
+    /** dest = -a */
+    public static final int NEG = 4;
+    /** dest = sqrt( a ) */
+    public static final int SQRT = 5;
+    /** dest = a */
+    public static final int MOV = 6;
+    /** print a */
+    public static final int PRINT = 7;
+
+    /** how many ints each instruction takes: opcode, dest, a, b */
+    public static final int WIDTH = 4;
+
+    private static final String[] OPERATORS = { "+", "-", "*", "/" };
+
+    /** the instructions, WIDTH ints each */
+    private final int[] code;
+    /** the initial contents of the constant registers */
+    private final int[] constants;
+    /** the names of the variable slots; never modified after construction */
+    private final SymbolTable symbols;
+    /** how many variable registers there are */
+    private final int variables;
+    /** how many registers there are in all */
+    private final int registers;
+    /** how many values the program leaves on the Machine stack */
+    private final int leftOnStack;
+    /** how many instructions the stack form had */
+    private final int stackLength;
+
+    /**
+     * Translate a packed program.
+     *
+     * @param program the program to translate
+     */
+    public RegisterProgram( PackedProgram program ) {
+        int[] stackCode = program.getCode();
+        this.symbols = program.getSymbols();
+        this.variables = this.symbols.size();
+        this.stackLength = program.getLength();
+
+        Map< Integer, Integer > constantRegister = new HashMap<>();
+        List< Integer > constantValues = new ArrayList<>();
+        for ( int pc = 0; pc < stackCode.length; ) {
+            int opcode = stackCode[ pc++ ];
+            if ( opcode == Opcodes.PUSH
+                    && !constantRegister.containsKey( stackCode[ pc ] ) ) {
+                constantRegister.put( stackCode[ pc ],
+                        this.variables + constantValues.size() );
+                constantValues.add( stackCode[ pc ] );
+            }
+            if ( Opcodes.hasOperand( opcode ) ) {
+                ++pc;
+            }
+        }
+        this.constants = new int[ constantValues.size() ];
+        for ( int i = 0; i < this.constants.length; ++i ) {
+            this.constants[ i ] = constantValues.get( i );
+        }
+        int temps = this.variables + this.constants.length;
+        this.registers = temps + program.getMaxStackDepth();
+
+        // the register holding each Machine stack entry
+        int[] stack = new int[ Math.max( 1, program.getMaxStackDepth() ) ];
+        int sp = 0;
+        int[] out = new int[ WIDTH * Math.max( 1, this.stackLength ) ];
+        int length = 0;
+        for ( int pc = 0; pc < stackCode.length; ) {
+            int opcode = stackCode[ pc++ ];
+            int operand = Opcodes.hasOperand( opcode ) ? stackCode[ pc++ ] : 0;
+            switch ( opcode ) {
+                case Opcodes.PUSH:
+                    stack[ sp++ ] = constantRegister.get( operand );
+                    break;
+                case Opcodes.LOAD:
+                    stack[ sp++ ] = operand;
+                    break;
+                case Opcodes.DUP:
+                    stack[ sp ] = stack[ sp - 1 ];
+                    ++sp;
+                    break;
+                case Opcodes.STORE: {
+                    int value = stack[ --sp ];
+                    // entries still on the stack that read the variable
+                    // must keep its old value
+                    boolean aliased = false;
+                    for ( int i = 0; i < sp; ++i ) {
+                        if ( stack[ i ] == operand ) {
+                            length = emit( out, length, MOV, temps + i,
+                                    operand, 0 );
+                            stack[ i ] = temps + i;
+                            aliased = true;
+                        }
+                    }
+                    if ( !aliased && length > 0 && value == temps + sp
+                            && out[ length - WIDTH ] != PRINT
+                            && out[ length - WIDTH + 1 ] == value
+                            && !onStack( stack, sp, value ) ) {
+                        // retarget the instruction that computed the value
+                        out[ length - WIDTH + 1 ] = operand;
+                    }
+                    else {
+                        length = emit( out, length, MOV, operand, value, 0 );
+                    }
+                    break;
+                }
+                case Opcodes.PRINT:
+                    length = emit( out, length, PRINT, 0, stack[ --sp ], 0 );
+                    break;
+                case Opcodes.NEG:
+                case Opcodes.SQRT:
+                    length = emit( out, length,
+                            opcode == Opcodes.NEG ? NEG : SQRT,
+                            temps + sp - 1, stack[ sp - 1 ], 0 );
+                    stack[ sp - 1 ] = temps + sp - 1;
+                    break;
+                default: {
+                    int b = stack[ --sp ];
+                    int a = stack[ sp - 1 ];
+                    length = emit( out, length, opcode - Opcodes.ADD + ADD,
+                            temps + sp - 1, a, b );
+                    stack[ sp - 1 ] = temps + sp - 1;
+                    break;
+                }
+            }
+        }
+        this.code = Arrays.copyOf( out, length );
+        this.leftOnStack = sp;
+    }
+
+    /**
+     * Translate a verified program.
+     *
+     * @param program the program in object form
+     */
+    public RegisterProgram( CompiledProgram program ) {
+        this( new PackedProgram( program ) );
+    }
+
+    /**
+     * Translate a list of instructions, verifying them first.
+     *
+     * @param program a list of Machine instructions
+     */
+    public RegisterProgram( List< Machine.Instruction > program ) {
+        this( new CompiledProgram( program ) );
+    }
+
+    /**
+     * Tell whether a register is referred to by any stack entry.
+     */
+    private static boolean onStack( int[] stack, int sp, int register ) {
+        for ( int i = 0; i < sp; ++i ) {
+            if ( stack[ i ] == register ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Append an instruction to the code being generated. The array has
+     * room for one instruction per stack instruction, which is enough:
+     * every copy made for a STORE replaces a stack entry that was put
+     * there by a LOAD or DUP that generated nothing.
+     */
+    private static int emit( int[] out, int length, int opcode, int dest,
+                             int a, int b ) {
+        out[ length ] = opcode;
+        out[ length + 1 ] = dest;
+        out[ length + 2 ] = a;
+        out[ length + 3 ] = b;
+        return length + WIDTH;
+    }
+
+    /**
+     * Show how many register instructions the program has
+     * @return the number of instructions the register interpreter dispatches
+     */
+    public int getLength() {
+        return this.code.length / WIDTH;
+    }
+
+    /**
+     * Show how many instructions the stack form of the program had
+     * @return the number of instructions the stack interpreter dispatches
+     */
+    public int getStackLength() {
+        return this.stackLength;
+    }
+
+    /**
+     * Show how many registers the program uses
+     * @return the size of the register file
+     */
+    public int getRegisterCount() {
+        return this.registers;
+    }
+
+    /**
+     * Show the name of a register: the variable's name, the constant's
+     * value, or "t" and the stack depth for a temporary.
+     * @param register the register number
+     * @return a name a person can read
+     */
+    public String registerName( int register ) {
+        if ( register < this.variables ) {
+            return this.symbols.getName( register );
+        }
+        if ( register < this.variables + this.constants.length ) {
+            return String.valueOf( this.constants[ register - this.variables ] );
+        }
+        return "t" + ( register - this.variables - this.constants.length );
+    }
+
+    /**
+     * List the program as three-address code, one instruction per line.
+     * @return the listing
+     */
+    public List< String > getListing() {
+        List< String > result = new ArrayList<>( getLength() );
+        for ( int pc = 0; pc < this.code.length; pc += WIDTH ) {
+            int opcode = this.code[ pc ];
+            String dest = registerName( this.code[ pc + 1 ] );
+            String a = registerName( this.code[ pc + 2 ] );
+            switch ( opcode ) {
+                case NEG:
+                    result.add( dest + " = -" + a );
+                    break;
+                case SQRT:
+                    result.add( dest + " = #" + a );
+                    break;
+                case MOV:
+                    result.add( dest + " = " + a );
+                    break;
+                case PRINT:
+                    result.add( "print " + a );
+                    break;
+                default:
+                    result.add( dest + " = " + a + " " + OPERATORS[ opcode ]
+                            + " " + registerName( this.code[ pc + 3 ] ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Give a Machine direct access to the register code.
+     * @return the code array, which must not be modified
+     */
+    int[] getCode() {
+        return this.code;
+    }
+
+    /**
+     * Give a Machine the constants to load into the register file.
+     * @return the constants, which must not be modified
+     */
+    int[] getConstants() {
+        return this.constants;
+    }
+
+    /**
+     * Show how many values the program leaves on the Machine stack.
+     * @return the final stack depth
+     */
+    int getLeftOnStack() {
+        return this.leftOnStack;
+    }
+
+    /**
+     * Give a Machine the slot-to-name table for its final report.
+     * @return the symbol table, which must not be modified
+     */
+    SymbolTable getSymbols() {
+        return this.symbols;
+    }
+}
@@ -0,0 +1,409 @@
+package dendron.machine;
+
+import dendron.DendronException;
+import dendron.Errors;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Superinstructions: single opcodes that do the work of a short
+ * sequence of Machine instructions, so that the packed interpreter
+ * dispatches once instead of two or three times. A fused opcode is
+ * followed in the code by the operands of all of its parts, in order.
+ *
+ * The fixed set below covers the sequences that dominate compiled
+ * Dendron code. Running this class as a program profiles a corpus of
+ * .denm files for its most frequent n-grams and prints a handler for
+ * each one that is not already fused, ready to be added to the table
+ * and to the interpreter's switch.
+ *
+ * Fused code is only ever run by the packed interpreter; everywhere
+ * else a PackedProgram hands out its ordinary code.
+ *
+ * @author William Johnson
+ */
+public final class Superinstructions {
+
+    private Superinstructions() {}
+
+    /** the first fused opcode; all come after the ordinary ones */
+    public static final int FIRST = 16;
+
+    public static final int LOAD_LOAD_ADD = 16;
+    public static final int LOAD_LOAD_SUB = 17;
+    public static final int LOAD_LOAD_MUL = 18;
+    public static final int LOAD_LOAD_DIV = 19;
+    public static final int LOAD_ADD = 20;
+    public static final int LOAD_SUB = 21;
+    public static final int LOAD_MUL = 22;
+    public static final int LOAD_DIV = 23;
+    public static final int PUSH_ADD = 24;
+    public static final int PUSH_SUB = 25;
+    public static final int PUSH_MUL = 26;
+    public static final int PUSH_DIV = 27;
+    public static final int LOAD_STORE = 28;
+    public static final int PUSH_STORE = 29;
+    public static final int PUSH_NEG = 30;
+    public static final int LOAD_PRINT = 31;
+    public static final int DUP_STORE = 32;
+    public static final int STORE_LOAD = 33;
+    public static final int LOAD_PUSH_ADD = 34;
+    public static final int LOAD_PUSH_SUB = 35;
+    public static final int LOAD_PUSH_MUL = 36;
+
+    /** the instructions each fused opcode stands for, by opcode - FIRST */
+    private static final int[][] PATTERNS = {
+            { Opcodes.LOAD, Opcodes.LOAD, Opcodes.ADD },
+            { Opcodes.LOAD, Opcodes.LOAD, Opcodes.SUB },
+            { Opcodes.LOAD, Opcodes.LOAD, Opcodes.MUL },
+            { Opcodes.LOAD, Opcodes.LOAD, Opcodes.DIV },
+            { Opcodes.LOAD, Opcodes.ADD },
+            { Opcodes.LOAD, Opcodes.SUB },
+            { Opcodes.LOAD, Opcodes.MUL },
+            { Opcodes.LOAD, Opcodes.DIV },
+            { Opcodes.PUSH, Opcodes.ADD },
+            { Opcodes.PUSH, Opcodes.SUB },
+            { Opcodes.PUSH, Opcodes.MUL },
+            { Opcodes.PUSH, Opcodes.DIV },
+            { Opcodes.LOAD, Opcodes.STORE },
+            { Opcodes.PUSH, Opcodes.STORE },
+            { Opcodes.PUSH, Opcodes.NEG },
+            { Opcodes.LOAD, Opcodes.PRINT },
+            { Opcodes.DUP, Opcodes.STORE },
+            { Opcodes.STORE, Opcodes.LOAD },
+            { Opcodes.LOAD, Opcodes.PUSH, Opcodes.ADD },
+            { Opcodes.LOAD, Opcodes.PUSH, Opcodes.SUB },
+            { Opcodes.LOAD, Opcodes.PUSH, Opcodes.MUL },
+    };
+
+    /** the longest pattern */
+    private static final int LONGEST = 3;
+
+    /**
+     * Tell whether an opcode is a superinstruction
+     * @param opcode an opcode from Opcodes or this class
+     * @return true if it is fused
+     */
+    public static boolean isFused( int opcode ) {
+        return opcode >= FIRST && opcode < FIRST + PATTERNS.length;
+    }
+
+    /**
+     * Show the instructions a fused opcode stands for
+     * @param opcode a fused opcode
+     * @return the ordinary opcodes, in order
+     */
+    public static int[] parts( int opcode ) {
+        return PATTERNS[ opcode - FIRST ].clone();
+    }
+
+    /**
+     * Show how many operands follow an opcode in fused code
+     * @param opcode an opcode from Opcodes or this class
+     * @return the number of operand words
+     */
+    public static int operandCount( int opcode ) {
+        if ( !isFused( opcode ) ) {
+            return Opcodes.hasOperand( opcode ) ? 1 : 0;
+        }
+        int count = 0;
+        for ( int part: PATTERNS[ opcode - FIRST ] ) {
+            count += operandCount( part );
+        }
+        return count;
+    }
+
+    /**
+     * Replace sequences of instructions with superinstructions, taking
+     * the longest match at each point.
+     *
+     * @param code verified packed code
+     * @return new code using fused opcodes where possible
+     */
+    public static int[] fuse( int[] code ) {
+        int[] out = new int[ code.length ];
+        int length = 0;
+        // the opcodes of the next few instructions
+        int[] window = new int[ LONGEST ];
+        int pc = 0;
+        while ( pc < code.length ) {
+            int seen = 0;
+            for ( int at = pc; seen < LONGEST && at < code.length; ++seen ) {
+                window[ seen ] = code[ at ];
+                at += Opcodes.hasOperand( code[ at ] ) ? 2 : 1;
+            }
+            int match = -1;
+            for ( int p = 0; p < PATTERNS.length; ++p ) {
+                int[] pattern = PATTERNS[ p ];
+                if ( pattern.length <= seen
+                        && ( match < 0 || pattern.length > PATTERNS[ match ].length )
+                        && Arrays.equals( pattern, 0, pattern.length,
+                                          window, 0, pattern.length ) ) {
+                    match = p;
+                }
+            }
+            if ( match < 0 ) {
+                out[ length++ ] = code[ pc ];
+                if ( Opcodes.hasOperand( code[ pc++ ] ) ) {
+                    out[ length++ ] = code[ pc++ ];
+                }
+                continue;
+            }
+            out[ length++ ] = FIRST + match;
+            for ( int part = 0; part < PATTERNS[ match ].length; ++part ) {
+                if ( Opcodes.hasOperand( code[ pc++ ] ) ) {
+                    out[ length++ ] = code[ pc++ ];
+                }
+            }
+        }
+        return Arrays.copyOf( out, length );
+    }
+
+    /**
+     * Undo fusion, turning fused code back into ordinary packed code.
+     *
+     * @param fused code that may contain superinstructions
+     * @return the equivalent ordinary code
+     */
+    public static int[] expand( int[] fused ) {
+        List< Integer > out = new ArrayList<>( fused.length * 2 );
+        int pc = 0;
+        while ( pc < fused.length ) {
+            int opcode = fused[ pc++ ];
+            int[] parts = isFused( opcode ) ? PATTERNS[ opcode - FIRST ]
+                                            : new int[]{ opcode };
+            for ( int part: parts ) {
+                out.add( part );
+                if ( Opcodes.hasOperand( part ) ) {
+                    out.add( fused[ pc++ ] );
+                }
+            }
+        }
+        int[] result = new int[ out.size() ];
+        for ( int i = 0; i < result.length; ++i ) {
+            result[ i ] = out.get( i );
+        }
+        return result;
+    }
+
+    /**
+     * Count how many times each sequence of n instructions occurs in a
+     * corpus of programs. Programs are straight-line code, so this is
+     * also how many times each sequence is executed.
+     *
+     * @param corpus the programs, as lists of Machine instructions
+     * @param n the length of the sequences to count
+     * @return the count of each sequence, keyed by its mnemonics
+     *         separated by spaces
+     */
+    public static Map< String, Integer > profile(
+            List< List< Machine.Instruction > > corpus, int n ) {
+        Map< String, Integer > counts = new HashMap<>();
+        for ( List< Machine.Instruction > program: corpus ) {
+            for ( int i = 0; i + n <= program.size(); ++i ) {
+                StringBuilder key = new StringBuilder();
+                for ( int j = i; j < i + n; ++j ) {
+                    if ( j > i ) {
+                        key.append( ' ' );
+                    }
+                    key.append( Opcodes.mnemonic( program.get( j ).opcode() ) );
+                }
+                counts.merge( key.toString(), 1, Integer::sum );
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Tell whether a sequence of opcodes is already fused.
+     */
+    private static boolean known( int[] sequence ) {
+        for ( int[] pattern: PATTERNS ) {
+            if ( Arrays.equals( pattern, sequence ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write the interpreter case for a superinstruction. Every value
+     * the sequence computes is kept in a local, so only the values
+     * left over at the end are written to the stack.
+     *
+     * @param name the constant naming the fused opcode
+     * @param sequence the ordinary opcodes it stands for
+     * @return Java source for a case of Machine.run( PackedProgram )
+     */
+    public static String generateHandler( String name, int[] sequence ) {
+        StringBuilder body = new StringBuilder();
+        List< String > values = new ArrayList<>();
+        int taken = 0;
+        int operand = 0;
+        int local = 0;
+        for ( int opcode: sequence ) {
+            String[] args = new String[ Opcodes.pops( opcode ) ];
+            for ( int i = args.length - 1; i >= 0; --i ) {
+                if ( values.isEmpty() ) {
+                    args[ i ] = "v" + local++;
+                    body.append( "    final int " ).append( args[ i ] )
+                        .append( " = stack[ " ).append( offset( "sp", -++taken ) )
+                        .append( " ];\n" );
+                }
+                else {
+                    args[ i ] = values.remove( values.size() - 1 );
+                }
+            }
+            String code = "code[ " + offset( "pc", operand ) + " ]";
+            String result = null;
+            switch ( opcode ) {
+                case Opcodes.PUSH:
+                    result = code;
+                    break;
+                case Opcodes.LOAD:
+                    result = "frame[ " + code + " ]";
+                    break;
+                case Opcodes.STORE:
+                    body.append( "    frame[ " ).append( code ).append( " ] = " )
+                        .append( args[ 0 ] ).append( ";\n" );
+                    break;
+                case Opcodes.ADD:
+                    result = args[ 0 ] + " + " + args[ 1 ];
+                    break;
+                case Opcodes.SUB:
+                    result = args[ 0 ] + " - " + args[ 1 ];
+                    break;
+                case Opcodes.MUL:
+                    result = args[ 0 ] + " * " + args[ 1 ];
+                    break;
+                case Opcodes.DIV:
+                    body.append( "    if ( " ).append( args[ 1 ] ).append( " == 0 ) {\n" )
+                        .append( "        Errors.report( Errors.Type.DIVIDE_BY_ZERO, null );\n" )
+                        .append( "    }\n" );
+                    result = args[ 0 ] + " / " + args[ 1 ];
+                    break;
+                case Opcodes.NEG:
+                    result = "-" + args[ 0 ];
+                    break;
+                case Opcodes.SQRT:
+                    result = "(int) Math.pow( " + args[ 0 ] + ", 0.5 )";
+                    break;
+                case Opcodes.PRINT:
+                    body.append( "    this.out.println( \"*** \" + " )
+                        .append( args[ 0 ] ).append( " );\n" );
+                    break;
+                case Opcodes.DUP:
+                    values.add( args[ 0 ] );
+                    values.add( args[ 0 ] );
+                    break;
+            }
+            if ( result != null ) {
+                String next = "v" + local++;
+                body.append( "    final int " ).append( next ).append( " = " )
+                    .append( result ).append( ";\n" );
+                values.add( next );
+            }
+            if ( Opcodes.hasOperand( opcode ) ) {
+                ++operand;
+            }
+        }
+        StringBuilder handler = new StringBuilder();
+        handler.append( "case Superinstructions." ).append( name ).append( ": {\n" );
+        handler.append( body );
+        for ( int i = 0; i < values.size(); ++i ) {
+            handler.append( "    stack[ " ).append( offset( "sp", i - taken ) )
+                   .append( " ] = " ).append( values.get( i ) ).append( ";\n" );
+        }
+        if ( values.size() != taken ) {
+            handler.append( "    sp += " ).append( values.size() - taken ).append( ";\n" );
+        }
+        if ( operand > 0 ) {
+            handler.append( "    pc += " ).append( operand ).append( ";\n" );
+        }
+        handler.append( "    break;\n}\n" );
+        return handler.toString();
+    }
+
+    /**
+     * Write an index expression such as "sp - 2".
+     */
+    private static String offset( String base, int delta ) {
+        return delta == 0 ? base
+                : delta > 0 ? base + " + " + delta : base + " - " + -delta;
+    }
+
+    /**
+     * Profile a corpus and print the most frequent n-grams, with a
+     * generated handler for each one that has no superinstruction yet.
+     *
+     * @param args the directory of .denm files, then optionally the
+     *             n-gram length (default 2) and how many to show
+     *             (default 10)
+     */
+    public static void main( String[] args ) {
+        if ( args.length < 1 ) {
+            System.err.println(
+                    "Usage: java Superinstructions corpus-directory [n [count]]" );
+            System.exit( 1 );
+        }
+        int n = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 2;
+        int count = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 10;
+        File[] files = new File( args[ 0 ] ).listFiles(
+                ( dir, name ) -> name.endsWith( ".denm" ) );
+        if ( files == null ) {
+            System.err.println( "Could not read directory " + args[ 0 ] );
+            System.exit( 1 );
+        }
+        List< List< Machine.Instruction > > corpus = new ArrayList<>();
+        long total = 0;
+        try {
+            for ( File file: files ) {
+                List< Machine.Instruction > program =
+                        InstructionReader.assemble( file.getPath() );
+                if ( program != null ) {
+                    corpus.add( program );
+                    total += program.size();
+                }
+            }
+        }
+        catch ( DendronException e ) {
+            Errors.abort( e );
+        }
+        List< Map.Entry< String, Integer > > ranked =
+                new ArrayList<>( profile( corpus, n ).entrySet() );
+        ranked.sort( ( a, b ) -> b.getValue() - a.getValue() );
+        System.out.printf( "%d programs, %d instructions%n", corpus.size(), total );
+        List< String > handlers = new ArrayList<>();
+        for ( Map.Entry< String, Integer > entry:
+                ranked.subList( 0, Math.min( count, ranked.size() ) ) ) {
+            String[] mnemonics = entry.getKey().split( " " );
+            int[] sequence = new int[ mnemonics.length ];
+            for ( int i = 0; i < mnemonics.length; ++i ) {
+                for ( int op = 0; op < Opcodes.COUNT; ++op ) {
+                    if ( Opcodes.mnemonic( op ).equals( mnemonics[ i ] ) ) {
+                        sequence[ i ] = op;
+                    }
+                }
+            }
+            boolean fused = known( sequence );
+            System.out.printf( "%10d %6.2f%%  %-24s%s%n", entry.getValue(),
+                    100.0 * entry.getValue() / total, entry.getKey(),
+                    fused ? "  (fused)" : "" );
+            if ( !fused ) {
+                handlers.add( generateHandler(
+                        entry.getKey().replace( ' ', '_' ), sequence ) );
+            }
+        }
+        if ( !handlers.isEmpty() ) {
+            System.out.println( "\nGenerated handlers:\n" );
+            for ( String handler: handlers ) {
+                System.out.println( handler );
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package dendron.machine;
+
+import dendron.Errors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The compile-time symbol table shared by the parse tree and the
+ * assembler. Each variable is given a dense slot number the first time
+ * it is assigned, so that at run time its value can be kept in a plain
+ * int array (the frame) indexed by slot instead of being looked up by name.
+ *
+ * Programs are straight-line code, so a variable that is read before it
+ * has a slot can never have been assigned; such reads are reported as
+ * uninitialized while the program is being resolved. The exception is
+ * an input, whose value is supplied from outside: it is given a slot
+ * the first time it is used, so an input the program never uses takes
+ * no slot at all.
+ *
+ * @author William Johnson
+ */
+public class SymbolTable {
+    /** the first character of the names of compiler temporaries,
+     *  which cannot begin a Dendron identifier */
+    public static final String TEMPORARY_PREFIX = "$";
+
+    /** the slot number of each variable that has been assigned */
+    private final Map<String, Integer> slots;
+    /** the name of each slot, indexed by slot number */
+    private final List<String> names;
+    /** the variables that may be read before they are assigned */
+    private final Set<String> inputs;
+
+    /**
+     * Create an empty symbol table.
+     */
+    public SymbolTable() {
+        this.slots = new HashMap<>();
+        this.names = new ArrayList<>();
+        this.inputs = new HashSet<>();
+    }
+
+    /**
+     * Rebuild the slot-to-name table of a program that has already been
+     * resolved, using the names carried by its LOAD and STORE instructions.
+     * A slot that no instruction uses is left without a name.
+     *
+     * @param program a list of Machine instructions
+     * @return a symbol table whose slots match those in the program
+     */
+    public static SymbolTable of(List<Machine.Instruction> program) {
+        SymbolTable symbols = new SymbolTable();
+        for (Machine.Instruction instr : program) {
+            if (instr instanceof Machine.Store) {
+                Machine.Store s = (Machine.Store) instr;
+                symbols.define(s.getSlot(), s.getName());
+            } else if (instr instanceof Machine.Load) {
+                Machine.Load l = (Machine.Load) instr;
+                symbols.define(l.getSlot(), l.getVarname());
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * Record the name of a slot that was allocated elsewhere.
+     *
+     * @param slot the slot number
+     * @param name the variable name
+     */
+    private void define(int slot, String name) {
+        while (this.names.size() <= slot) {
+            this.names.add(null);
+        }
+        if (this.names.get(slot) == null) {
+            this.names.set(slot, name);
+            this.slots.put(name, slot);
+        }
+    }
+
+    /**
+     * Allocate a slot that has no name, such as one that a program
+     * leaves unused.
+     *
+     * @return the new slot number
+     */
+    public int unnamed() {
+        this.names.add(null);
+        return this.names.size() - 1;
+    }
+
+    /**
+     * Declare a variable whose value is supplied from outside the
+     * program. It gets a slot the first time it is read or assigned.
+     *
+     * @param name the variable name
+     */
+    public void input(String name) {
+        this.inputs.add(name);
+    }
+
+    /**
+     * Find the slot for a variable that is about to be assigned,
+     * allocating the next free slot if this is its first assignment.
+     *
+     * @param name the variable name
+     * @return the variable's slot number
+     */
+    public int store(String name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) {
+            slot = this.names.size();
+            this.slots.put(name, slot);
+            this.names.add(name);
+        }
+        return slot;
+    }
+
+    /**
+     * Find the slot for one of the compiler's temporaries, allocating
+     * it if it does not exist yet. Temporaries never clash with program
+     * variables and are left out of symbol table dumps.
+     *
+     * @param number which temporary, counting from 0
+     * @return the temporary's slot number
+     */
+    public int temporary(int number) {
+        return store(TEMPORARY_PREFIX + number);
+    }
+
+    /**
+     * Tell whether a slot name belongs to a compiler temporary.
+     *
+     * @param name the slot name
+     * @return true if the name was made by {@link #temporary(int)}
+     */
+    public static boolean isTemporary(String name) {
+        return name.startsWith(TEMPORARY_PREFIX);
+    }
+
+    /**
+     * Find the slot for a variable that is about to be read.
+     * A variable that has never been assigned is reported as uninitialized,
+     * unless it is an input.
+     *
+     * @param name the variable name
+     * @return the variable's slot number
+     */
+    public int load(String name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null && this.inputs.contains(name)) {
+            slot = store(name);
+        }
+        if (slot == null) {
+            Errors.report(Errors.Type.UNINITIALIZED, name);
+        }
+        return slot;
+    }
+
+    /**
+     * Look up the slot of a variable without reporting anything.
+     *
+     * @param name the variable name
+     * @return the variable's slot number, or -1 if it has none
+     */
+    public int find(String name) {
+        Integer slot = this.slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Show the name of a variable given its slot
+     * @param slot the slot number
+     * @return the variable name, or null if the slot has none
+     */
+    public String getName(int slot) {
+        return this.names.get(slot);
+    }
+
+    /**
+     * Show how many slots have been allocated
+     * @return the number of slots a frame for this table needs
+     */
+    public int size() {
+        return this.names.size();
+    }
+}
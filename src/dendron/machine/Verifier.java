@@ -0,0 +1,172 @@
+package dendron.machine;
+
+import dendron.DendronException;
+import dendron.Errors;
+
+import java.util.List;
+
+/**
+ * A load-time check of Machine programs. Because Dendron programs
+ * are straight-line code, the stack depth before every instruction
+ * is known exactly, so a single pass can find the deepest the stack
+ * will ever get and rule out stack underflow before anything runs.
+ *
+ * @author William Johnson
+ */
+public class Verifier {
+
+    private Verifier() {}
+
+    /**
+     * Compute the maximum stack depth of a program that starts
+     * with an empty stack.
+     *
+     * @param program a list of Machine instructions
+     * @return the most values that will ever be on the stack at once
+     */
+    public static int maxStackDepth( List< Machine.Instruction > program ) {
+        return maxStackDepth( program, 0 );
+    }
+
+    /**
+     * Compute the maximum stack depth of a piece of a program,
+     * given how many values are already on the stack when it starts.
+     * An instruction that would pop more values than are present is
+     * reported as a stack underflow.
+     *
+     * @param program a list of Machine instructions
+     * @param initialDepth the number of values on the stack beforehand
+     * @return the most values that will ever be on the stack at once,
+     *         counting those already there
+     */
+    public static int maxStackDepth( List< Machine.Instruction > program,
+                                     int initialDepth ) {
+        int depth = initialDepth;
+        int max = initialDepth;
+        int pc = 0;
+        for ( Machine.Instruction instr: program ) {
+            depth -= instr.popCount();
+            if ( depth < 0 ) {
+                Errors.report( Errors.Type.STACK_UNDERFLOW,
+                        "instruction " + pc + " (" + instr + ")" );
+            }
+            depth += instr.pushCount();
+            max = Math.max( max, depth );
+            ++pc;
+        }
+        return max;
+    }
+
+    /**
+     * Check that a program stores into each slot before it loads from
+     * it, so that it never sees a value left in the frame by whatever
+     * ran before it.
+     *
+     * @param program the Machine instructions, in order
+     * @param bound which slots hold values before the program starts;
+     *              the array is updated as the code stores into slots
+     */
+    public static void checkInitialized( Machine.Instruction[] program,
+                                         boolean[] bound ) {
+        for ( Machine.Instruction instr: program ) {
+            if ( instr instanceof Machine.Store ) {
+                bound[ instr.operand() ] = true;
+            }
+            else if ( instr instanceof Machine.Load
+                      && !bound[ instr.operand() ] ) {
+                Errors.report( Errors.Type.UNINITIALIZED,
+                        ( (Machine.Load) instr ).getVarname() );
+            }
+        }
+    }
+
+    /**
+     * Check a packed program that came from outside the compiler,
+     * such as a .denb file, and compute its maximum stack depth.
+     * Besides stack underflow, this rejects unknown opcodes, code that
+     * ends in the middle of an instruction, slots outside the frame,
+     * and slots that are loaded before they are stored.
+     *
+     * @param code opcodes with inline operands, as in PackedProgram
+     * @param symbols the names of the frame's slots
+     * @return the most values that will ever be on the stack at once
+     */
+    public static int maxStackDepth( int[] code, SymbolTable symbols ) {
+        return maxStackDepth( code, symbols, new boolean[ symbols.size() ] );
+    }
+
+    /**
+     * Check a packed program whose frame arrives with some slots
+     * already holding values, such as the input columns of a batch,
+     * and compute its maximum stack depth.
+     *
+     * @param code opcodes with inline operands, as in PackedProgram
+     * @param symbols the names of the frame's slots
+     * @param bound which slots hold values before the program starts;
+     *              the array is updated as the code stores into slots
+     * @return the most values that will ever be on the stack at once
+     * @see #maxStackDepth(int[], SymbolTable)
+     */
+    public static int maxStackDepth( int[] code, SymbolTable symbols,
+                                     boolean[] bound ) {
+        boolean[] stored = bound;
+        int depth = 0;
+        int max = 0;
+        int pc = 0;
+        while ( pc < code.length ) {
+            int start = pc;
+            int opcode = code[ pc++ ];
+            if ( !Opcodes.isValid( opcode ) ) {
+                Errors.report( Errors.Type.ILLEGAL_VALUE,
+                        "opcode " + opcode + " at word " + start );
+            }
+            if ( Opcodes.hasOperand( opcode ) ) {
+                if ( pc == code.length ) {
+                    Errors.report( Errors.Type.PREMATURE_END,
+                            "operand missing at word " + start );
+                }
+                int operand = code[ pc++ ];
+                if ( opcode != Opcodes.PUSH ) {
+                    if ( operand < 0 || operand >= stored.length ) {
+                        Errors.report( Errors.Type.ILLEGAL_VALUE,
+                                "slot " + operand + " at word " + start );
+                    }
+                    if ( opcode == Opcodes.STORE ) {
+                        stored[ operand ] = true;
+                    }
+                    else if ( !stored[ operand ] ) {
+                        Errors.report( Errors.Type.UNINITIALIZED,
+                                symbols.getName( operand ) );
+                    }
+                }
+            }
+            depth -= Opcodes.pops( opcode );
+            if ( depth < 0 ) {
+                Errors.report( Errors.Type.STACK_UNDERFLOW,
+                        "word " + start + " (" + Opcodes.mnemonic( opcode ) + ")" );
+            }
+            depth += Opcodes.pushes( opcode );
+            max = Math.max( max, depth );
+        }
+        return max;
+    }
+
+    /**
+     * Report the maximum stack depth of an assembly language program.
+     * @param args the name of the assembly language source file
+     */
+    public static void main( String[] args ) {
+        if ( args.length != 1 ) {
+            System.err.println( "Usage: java Verifier assembly-code-file" );
+            System.exit( 1 );
+        }
+        try {
+            List< Machine.Instruction > code =
+                    InstructionReader.assemble( args[ 0 ] );
+            System.out.println( "Maximum stack depth: " + maxStackDepth( code ) );
+        }
+        catch ( DendronException e ) {
+            Errors.abort( e );
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package dendron.tree;
 
-import java.util.Map;
-
 /**
  * A dendron.tree.DendronNode that performs an action but does not
  * calculate a new value. The distinction between
@@ -14,7 +12,8 @@ public interface ActionNode extends DendronNode {
     /**
      * Perform the action represented by this node. Actions are
      * things like changing variable values.
-     * @param symTab the table where variable values are stored
+     * @param frame the variable values, indexed by the slots
+     *              assigned when the node was resolved
      */
-    void execute( Map< String, Integer > symTab );
+    void execute( int[] frame );
 }
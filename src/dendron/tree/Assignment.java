@@ -0,0 +1,128 @@
+package dendron.tree;
+
+import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Dendron assignment statement (":=").
+ *
+ * @author William Johnson
+ */
+public class Assignment implements ActionNode {
+    /** the token that starts an assignment */
+    public static final String ASSIGN = ":=";
+
+    /** the name of the target variable */
+    private final String ident;
+    /** the expression whose value is assigned */
+    private final ExpressionNode rhs;
+    /** the frame slot of the target variable, once resolved */
+    private int slot;
+
+    /**
+     * Create an assignment node.
+     *
+     * @param ident the name of the target variable
+     * @param rhs the expression whose value is assigned
+     */
+    public Assignment(String ident, ExpressionNode rhs) {
+        this.ident = ident;
+        this.rhs = rhs;
+        this.slot = -1;
+    }
+
+    /**
+     * Create an assignment node whose target is already resolved.
+     *
+     * @param ident the name of the target variable
+     * @param rhs the expression whose value is assigned
+     * @param slot the frame slot of the target variable
+     */
+    Assignment(String ident, ExpressionNode rhs, int slot) {
+        this.ident = ident;
+        this.rhs = rhs;
+        this.slot = slot;
+    }
+
+    /**
+     * Show the name of the target variable
+     * @return the name of the target variable
+     */
+    public String getIdent() {
+        return this.ident;
+    }
+
+    /**
+     * Show the expression whose value is assigned
+     * @return the right-hand side of the assignment
+     */
+    public ExpressionNode getRhs() {
+        return this.rhs;
+    }
+
+    /**
+     * Show the frame slot of the target variable
+     * @return the slot, or -1 if the node has not been resolved
+     */
+    public int getSlot() {
+        return this.slot;
+    }
+
+    /**
+     * Print the assignment on standard output.
+     */
+    @Override
+    public void infixDisplay() {
+        System.out.print(this.ident + " " + ASSIGN + " ");
+        this.rhs.infixDisplay();
+    }
+
+    /**
+     * Resolve the expression's variables, then give the target its slot.
+     * The target is resolved last so that an expression reading the
+     * variable it is about to initialize is still reported.
+     *
+     * @param symbols the program's symbol table
+     */
+    @Override
+    public void resolve(SymbolTable symbols) {
+        this.rhs.resolve(symbols);
+        this.slot = symbols.store(this.ident);
+    }
+
+    /**
+     * Generate the expression's code followed by a STORE instruction.
+     *
+     * @return the Machine Instructions for this node
+     */
+    @Override
+    public List<Machine.Instruction> emit() {
+        List<Machine.Instruction> code = new ArrayList<>();
+        emit(code);
+        return code;
+    }
+
+    /**
+     * Append the expression's code followed by a STORE instruction.
+     *
+     * @param code the instruction list being generated
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        this.rhs.emit(code);
+        code.add(new Machine.Store(this.slot, this.ident));
+    }
+
+    /**
+     * Evaluate the expression and store its value in the target's slot.
+     *
+     * @param frame the variable values, indexed by slot
+     */
+    @Override
+    public void execute(int[] frame) {
+        frame[this.slot] = this.rhs.evaluate(frame);
+    }
+}
@@ -0,0 +1,164 @@
+package dendron.tree;
+
+import dendron.Errors;
+import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An arithmetic operation ("+", "-", "*" or "/") on two Dendron expressions.
+ *
+ * @author William Johnson
+ */
+public class BinaryOperation implements ExpressionNode {
+    /** the token for addition */
+    public static final String ADD = "+";
+    /** the token for subtraction */
+    public static final String SUB = "-";
+    /** the token for multiplication */
+    public static final String MUL = "*";
+    /** the token for division */
+    public static final String DIV = "/";
+
+    /** one of ADD, SUB, MUL or DIV */
+    private final String operator;
+    /** the left operand */
+    private final ExpressionNode left;
+    /** the right operand */
+    private final ExpressionNode right;
+
+    /**
+     * Create a binary operation node.
+     *
+     * @param operator one of ADD, SUB, MUL or DIV
+     * @param left the left operand
+     * @param right the right operand
+     */
+    public BinaryOperation(String operator, ExpressionNode left, ExpressionNode right) {
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Check whether a token names a binary operator.
+     *
+     * @param token the token to check
+     * @return true if the token is "+", "-", "*" or "/"
+     */
+    public static boolean isOperator(String token) {
+        return token.equals(ADD) || token.equals(SUB) || token.equals(MUL) || token.equals(DIV);
+    }
+
+    /**
+     * Show the operator of this node
+     * @return one of ADD, SUB, MUL or DIV
+     */
+    public String getOperator() {
+        return this.operator;
+    }
+
+    /**
+     * Show the left operand
+     * @return the left operand
+     */
+    public ExpressionNode getLeft() {
+        return this.left;
+    }
+
+    /**
+     * Show the right operand
+     * @return the right operand
+     */
+    public ExpressionNode getRight() {
+        return this.right;
+    }
+
+    /**
+     * Print the operation, fully parenthesized, on standard output.
+     */
+    @Override
+    public void infixDisplay() {
+        System.out.print("( ");
+        this.left.infixDisplay();
+        System.out.print(" " + this.operator + " ");
+        this.right.infixDisplay();
+        System.out.print(" )");
+    }
+
+    /**
+     * Resolve the variables in both operands.
+     *
+     * @param symbols the program's symbol table
+     */
+    @Override
+    public void resolve(SymbolTable symbols) {
+        this.left.resolve(symbols);
+        this.right.resolve(symbols);
+    }
+
+    /**
+     * Generate both operands' code followed by the operator's instruction.
+     *
+     * @return the Machine Instructions for this node
+     */
+    @Override
+    public List<Machine.Instruction> emit() {
+        List<Machine.Instruction> code = new ArrayList<>();
+        emit(code);
+        return code;
+    }
+
+    /**
+     * Append both operands' code followed by the operator's instruction.
+     *
+     * @param code the instruction list being generated
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        this.left.emit(code);
+        this.right.emit(code);
+        switch (this.operator) {
+            case ADD:
+                code.add(new Machine.Add());
+                break;
+            case SUB:
+                code.add(new Machine.Subtract());
+                break;
+            case MUL:
+                code.add(new Machine.Multiply());
+                break;
+            default:
+                code.add(new Machine.Divide());
+                break;
+        }
+    }
+
+    /**
+     * Evaluate both operands and combine them.
+     * Division by zero is reported as an error.
+     *
+     * @param frame the variable values, indexed by slot
+     * @return the result of the operation
+     */
+    @Override
+    public int evaluate(int[] frame) {
+        int op1 = this.left.evaluate(frame);
+        int op2 = this.right.evaluate(frame);
+        switch (this.operator) {
+            case ADD:
+                return op1 + op2;
+            case SUB:
+                return op1 - op2;
+            case MUL:
+                return op1 * op2;
+            default:
+                if (op2 == 0) {
+                    Errors.report(Errors.Type.DIVIDE_BY_ZERO, null);
+                }
+                return op1 / op2;
+        }
+    }
+}
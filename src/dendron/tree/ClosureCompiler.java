@@ -0,0 +1,178 @@
+package dendron.tree;
+
+import dendron.Errors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Closure compilation of a parse tree: each node is turned into a
+ * lambda over the frame of variable values, chosen for the shape of
+ * the node and its operands. For example, the sum of two variables
+ * becomes a single lambda that reads both slots and adds them, with no
+ * calls to child nodes at all. Running the closures is a direct
+ * interpretation of the tree that needs no instruction list, and
+ * because every kind of node gets its own lambda classes, each call
+ * site sees only a few receiver types.
+ *
+ * Nothing is evaluated ahead of time except operations on two
+ * constants, and a division by a constant zero is still only reported
+ * when it is reached, so the closures behave exactly like
+ * {@link ActionNode#execute(int[])}.
+ *
+ * @author William Johnson
+ */
+public class ClosureCompiler {
+
+    private ClosureCompiler() {}
+
+    /**
+     * Compile a whole program.
+     *
+     * @param statements the program's resolved statements, in order
+     * @return a closure that runs every statement on a frame
+     */
+    public static Consumer<int[]> compile(List<ActionNode> statements) {
+        List<Consumer<int[]>> closures = new ArrayList<>(statements.size());
+        for (ActionNode statement : statements) {
+            closures.add(compile(statement));
+        }
+        return frame -> {
+            for (Consumer<int[]> closure : closures) {
+                closure.accept(frame);
+            }
+        };
+    }
+
+    /**
+     * Compile one statement.
+     *
+     * @param statement a resolved Assignment or Print node
+     * @return a closure that executes the statement on a frame
+     */
+    public static Consumer<int[]> compile(ActionNode statement) {
+        if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            int slot = assignment.getSlot();
+            ExpressionNode rhs = assignment.getRhs();
+            if (rhs instanceof Constant) {
+                int value = ((Constant) rhs).getValue();
+                return frame -> frame[slot] = value;
+            } else if (rhs instanceof Variable) {
+                int from = ((Variable) rhs).getSlot();
+                return frame -> frame[slot] = frame[from];
+            }
+            ToIntFunction<int[]> value = compile(rhs);
+            return frame -> frame[slot] = value.applyAsInt(frame);
+        }
+        ToIntFunction<int[]> value = compile(((Print) statement).getExpr());
+        return frame -> System.out.println("=== " + value.applyAsInt(frame));
+    }
+
+    /**
+     * Compile an expression.
+     *
+     * @param expr a resolved expression
+     * @return a closure that evaluates the expression on a frame
+     */
+    public static ToIntFunction<int[]> compile(ExpressionNode expr) {
+        if (expr instanceof Constant) {
+            int value = ((Constant) expr).getValue();
+            return frame -> value;
+        } else if (expr instanceof Variable) {
+            int slot = ((Variable) expr).getSlot();
+            return frame -> frame[slot];
+        } else if (expr instanceof UnaryOperation) {
+            ExpressionNode operand = ((UnaryOperation) expr).getExpr();
+            if (operand instanceof Variable) {
+                int slot = ((Variable) operand).getSlot();
+                return frame -> -frame[slot];
+            }
+            ToIntFunction<int[]> value = compile(operand);
+            return frame -> -value.applyAsInt(frame);
+        } else if (expr instanceof SquareRoot) {
+            ToIntFunction<int[]> value = compile(((SquareRoot) expr).getExpr());
+            return frame -> (int) Math.pow(value.applyAsInt(frame), 0.5);
+        }
+        BinaryOperation binary = (BinaryOperation) expr;
+        ExpressionNode left = binary.getLeft();
+        ExpressionNode right = binary.getRight();
+        if (left instanceof Constant && right instanceof Constant
+                && !(binary.getOperator().equals(BinaryOperation.DIV)
+                     && ((Constant) right).getValue() == 0)) {
+            int value = binary.evaluate(null);
+            return frame -> value;
+        } else if (left instanceof Variable && right instanceof Variable) {
+            return variables(binary.getOperator(),
+                    ((Variable) left).getSlot(), ((Variable) right).getSlot());
+        } else if (left instanceof Variable && right instanceof Constant) {
+            return variableConstant(binary.getOperator(),
+                    ((Variable) left).getSlot(), ((Constant) right).getValue());
+        }
+        return general(binary.getOperator(), compile(left), compile(right));
+    }
+
+    /**
+     * Build the closure for an operation on two variables.
+     */
+    private static ToIntFunction<int[]> variables(String operator, int a, int b) {
+        switch (operator) {
+            case BinaryOperation.ADD:
+                return frame -> frame[a] + frame[b];
+            case BinaryOperation.SUB:
+                return frame -> frame[a] - frame[b];
+            case BinaryOperation.MUL:
+                return frame -> frame[a] * frame[b];
+            default:
+                return frame -> divide(frame[a], frame[b]);
+        }
+    }
+
+    /**
+     * Build the closure for an operation on a variable and a constant.
+     */
+    private static ToIntFunction<int[]> variableConstant(String operator, int a, int b) {
+        switch (operator) {
+            case BinaryOperation.ADD:
+                return frame -> frame[a] + b;
+            case BinaryOperation.SUB:
+                return frame -> frame[a] - b;
+            case BinaryOperation.MUL:
+                return frame -> frame[a] * b;
+            default:
+                if (b == 0) {
+                    return frame -> divide(frame[a], 0);
+                }
+                return frame -> frame[a] / b;
+        }
+    }
+
+    /**
+     * Build the closure for an operation on any two expressions.
+     */
+    private static ToIntFunction<int[]> general(String operator, ToIntFunction<int[]> left,
+                                                ToIntFunction<int[]> right) {
+        switch (operator) {
+            case BinaryOperation.ADD:
+                return frame -> left.applyAsInt(frame) + right.applyAsInt(frame);
+            case BinaryOperation.SUB:
+                return frame -> left.applyAsInt(frame) - right.applyAsInt(frame);
+            case BinaryOperation.MUL:
+                return frame -> left.applyAsInt(frame) * right.applyAsInt(frame);
+            default:
+                return frame -> divide(left.applyAsInt(frame), right.applyAsInt(frame));
+        }
+    }
+
+    /**
+     * Divide, reporting division by zero the same way the tree does.
+     */
+    private static int divide(int dividend, int divisor) {
+        if (divisor == 0) {
+            Errors.report(Errors.Type.DIVIDE_BY_ZERO, null);
+        }
+        return dividend / divisor;
+    }
+}
@@ -0,0 +1,317 @@
+package dendron.tree;
+
+import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Code generation that computes each repeated subexpression only once.
+ *
+ * The expressions of a whole program are hash-consed into a DAG: every
+ * distinct (operator, operands) combination becomes a single value, and
+ * a variable read becomes a value of the variable's current version.
+ * Each assignment starts a new version of its target, so an expression
+ * read before a reassignment never matches the same text read after it.
+ *
+ * A value that the program needs more than once is computed where it is
+ * first needed, left on the stack with DUP, and saved in a compiler
+ * temporary; later uses load the temporary instead. Temporaries are only
+ * used where they shorten the code, and each one is recycled once its
+ * last use has been generated.
+ *
+ * @author William Johnson
+ */
+public class CommonSubexpressions {
+
+    /**
+     * A node of the DAG: one distinct value computed by the program.
+     */
+    private static final class Value {
+        /** the operator token, or null for a constant or variable */
+        final String operator;
+        /** the operands, for an operator */
+        final Value left, right;
+        /** the constant, or the slot of the variable */
+        final int number;
+        /** the version of the variable, or -1 for a constant */
+        final int version;
+        /** the name of the variable */
+        final String name;
+        /** how many instructions compute the value from scratch */
+        final long size;
+        /** how many times the generated code needs the value */
+        int uses;
+        /** whether the value is kept in a temporary after it is first computed */
+        boolean saved;
+        /** how many uses remain to be generated once it is saved */
+        int remaining;
+        /** the temporary slot holding the value, or -1 */
+        int temporary;
+
+        Value(String operator, Value left, Value right, int number, int version, String name) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+            this.number = number;
+            this.version = version;
+            this.name = name;
+            this.size = 1 + (left == null ? 0 : left.size) + (right == null ? 0 : right.size);
+            this.temporary = -1;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Value)) {
+                return false;
+            }
+            Value value = (Value) other;
+            return this.number == value.number && this.version == value.version
+                    && (this.operator == null ? value.operator == null
+                                              : this.operator.equals(value.operator))
+                    && operandsMatch(value);
+        }
+
+        /**
+         * Compare operands by identity, since they are already interned.
+         * The operands of + and * may appear in either order.
+         */
+        private boolean operandsMatch(Value value) {
+            if (this.left == value.left && this.right == value.right) {
+                return true;
+            }
+            return commutative(this.operator)
+                    && this.left == value.right && this.right == value.left;
+        }
+
+        @Override
+        public int hashCode() {
+            int operands = System.identityHashCode(this.left) + System.identityHashCode(this.right);
+            return 31 * (31 * (31 * (this.operator == null ? 0 : this.operator.hashCode())
+                    + operands) + this.number) + this.version;
+        }
+    }
+
+    /** the program's symbol table, where temporaries are also allocated */
+    private final SymbolTable symbols;
+    /** the interned values */
+    private final Map<Value, Value> values;
+    /** the interned values in the order they were created, operands first */
+    private final List<Value> created;
+    /** the current version of each variable, indexed by slot */
+    private int[] versions;
+    /** temporaries whose values are no longer needed */
+    private final Deque<Integer> free;
+    /** how many temporaries have been created */
+    private int temporaries;
+    /** how many instructions the last call to compile saved */
+    private long saved;
+
+    /**
+     * Prepare to compile a program.
+     *
+     * @param symbols the program's symbol table
+     */
+    public CommonSubexpressions(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.values = new HashMap<>();
+        this.created = new ArrayList<>();
+        this.versions = new int[symbols.size()];
+        this.free = new ArrayDeque<>();
+        this.temporaries = 0;
+        this.saved = 0;
+    }
+
+    /**
+     * Show how many instructions the last call to compile saved
+     * @return how many fewer instructions were generated than emit would generate
+     */
+    public long getSaved() {
+        return this.saved;
+    }
+
+    /**
+     * Tell whether an operator's operands can be swapped.
+     */
+    private static boolean commutative(String operator) {
+        return BinaryOperation.ADD.equals(operator) || BinaryOperation.MUL.equals(operator);
+    }
+
+    /**
+     * Generate code for a program.
+     *
+     * @param statements the program's resolved statements, in order
+     * @return the Machine instructions
+     */
+    public List<Machine.Instruction> compile(List<ActionNode> statements) {
+        List<Value> roots = new ArrayList<>(statements.size());
+        long literal = 0;
+        for (ActionNode statement : statements) {
+            Value root;
+            if (statement instanceof Assignment) {
+                Assignment assignment = (Assignment) statement;
+                root = number(assignment.getRhs());
+                cover(assignment.getSlot());
+                this.versions[assignment.getSlot()]++;
+            } else {
+                root = number(((Print) statement).getExpr());
+            }
+            roots.add(root);
+            literal += root.size + 1;
+        }
+        this.values.clear();
+        for (Value root : roots) {
+            root.uses++;
+        }
+        count();
+        this.created.clear();
+        List<Machine.Instruction> code = new ArrayList<>();
+        for (int i = 0; i < roots.size(); i++) {
+            generate(roots.get(i), code);
+            ActionNode statement = statements.get(i);
+            if (statement instanceof Assignment) {
+                Assignment assignment = (Assignment) statement;
+                code.add(new Machine.Store(assignment.getSlot(), assignment.getIdent()));
+            } else {
+                code.add(new Machine.Print());
+            }
+        }
+        this.saved = literal - code.size();
+        return code;
+    }
+
+    /**
+     * Make sure the version array covers a slot.
+     */
+    private void cover(int slot) {
+        if (slot >= this.versions.length) {
+            int[] bigger = new int[Math.max(slot + 1, 2 * this.versions.length)];
+            System.arraycopy(this.versions, 0, bigger, 0, this.versions.length);
+            this.versions = bigger;
+        }
+    }
+
+    /**
+     * Find the DAG value of an expression.
+     *
+     * @param expr a resolved expression
+     * @return the interned value
+     */
+    private Value number(ExpressionNode expr) {
+        Value value;
+        if (expr instanceof Constant) {
+            value = new Value(null, null, null, ((Constant) expr).getValue(), -1, null);
+        } else if (expr instanceof Variable) {
+            Variable variable = (Variable) expr;
+            cover(variable.getSlot());
+            value = new Value(null, null, null, variable.getSlot(),
+                    this.versions[variable.getSlot()], variable.getName());
+        } else if (expr instanceof UnaryOperation) {
+            value = new Value(UnaryOperation.NEG, number(((UnaryOperation) expr).getExpr()),
+                    null, 0, 0, null);
+        } else if (expr instanceof SquareRoot) {
+            value = new Value(SquareRoot.SQRT, number(((SquareRoot) expr).getExpr()),
+                    null, 0, 0, null);
+        } else {
+            BinaryOperation binary = (BinaryOperation) expr;
+            Value left = number(binary.getLeft());
+            Value right = number(binary.getRight());
+            value = new Value(binary.getOperator(), left, right, 0, 0, null);
+        }
+        Value known = this.values.putIfAbsent(value, value);
+        if (known != null) {
+            return known;
+        }
+        this.created.add(value);
+        return value;
+    }
+
+    /**
+     * Count how many times the code will need each value, and decide
+     * which values to save. A saved value computes its operands once;
+     * any other value computes them every time it is needed, so its
+     * operands are needed that many times. Every value is created after
+     * its operands, so going backwards settles each value's uses before
+     * they are passed on to its operands.
+     */
+    private void count() {
+        for (int i = this.created.size() - 1; i >= 0; i--) {
+            Value value = this.created.get(i);
+            value.saved = worthSaving(value);
+            int computed = value.saved ? Math.min(value.uses, 1) : value.uses;
+            if (value.left != null) {
+                value.left.uses += computed;
+            }
+            if (value.right != null) {
+                value.right.uses += computed;
+            }
+        }
+    }
+
+    /**
+     * Tell whether saving a value in a temporary makes the code shorter.
+     * The first use costs an extra DUP and STORE; every other use costs
+     * one LOAD instead of the value's whole computation.
+     */
+    private static boolean worthSaving(Value value) {
+        return value.operator != null && (value.uses - 1) * (value.size - 1) > 2;
+    }
+
+    /**
+     * Append the code that leaves a value on the stack.
+     */
+    private void generate(Value value, List<Machine.Instruction> code) {
+        if (value.temporary >= 0) {
+            code.add(new Machine.Load(value.temporary, this.symbols.getName(value.temporary)));
+            if (--value.remaining == 0) {
+                this.free.push(value.temporary);
+            }
+            return;
+        }
+        if (value.operator == null) {
+            if (value.version < 0) {
+                code.add(new Machine.PushConst(value.number));
+            } else {
+                code.add(new Machine.Load(value.number, value.name));
+            }
+            return;
+        }
+        generate(value.left, code);
+        if (value.right != null) {
+            generate(value.right, code);
+        }
+        code.add(operation(value.operator));
+        if (value.saved) {
+            value.temporary = this.free.isEmpty() ? this.symbols.temporary(this.temporaries++)
+                                                  : this.free.pop();
+            value.remaining = value.uses - 1;
+            code.add(new Machine.Duplicate());
+            code.add(new Machine.Store(value.temporary, this.symbols.getName(value.temporary)));
+        }
+    }
+
+    /**
+     * Make the instruction for an operator.
+     */
+    private static Machine.Instruction operation(String operator) {
+        switch (operator) {
+            case BinaryOperation.ADD:
+                return new Machine.Add();
+            case BinaryOperation.SUB:
+                return new Machine.Subtract();
+            case BinaryOperation.MUL:
+                return new Machine.Multiply();
+            case BinaryOperation.DIV:
+                return new Machine.Divide();
+            case UnaryOperation.NEG:
+                return new Machine.Negate();
+            default:
+                return new Machine.SquareRoot();
+        }
+    }
+}
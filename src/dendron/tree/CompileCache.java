@@ -0,0 +1,301 @@
+package dendron.tree;
+
+import dendron.DendronException;
+import dendron.machine.BinaryFormat;
+import dendron.machine.CompiledProgram;
+import dendron.machine.Machine;
+import dendron.machine.PackedProgram;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A cache of compiled programs, so that a program that has been
+ * compiled once does not have to be parsed and compiled again.
+ * Programs are found by a SHA-256 hash of their tokens.
+ *
+ * There are two tiers. Recently used programs are kept in memory, up
+ * to a limit on their total number of instructions; when the limit is
+ * passed, the least recently used programs are dropped. Every program
+ * compiled is also written, in .denb form, to a directory on disk that
+ * outlives the JVM, so other jobs compiling the same source can load it
+ * instead. The disk tier keeps one subdirectory per
+ * {@link ParseTree#COMPILER_VERSION}, so raising the version makes every
+ * program cached by an older compiler invisible, and
+ * {@link #purgeStale()} deletes them.
+ *
+ * One cache may be used by many threads at once.
+ *
+ * @author William Johnson
+ */
+public class CompileCache {
+
+    /** the programs in memory, least recently used first */
+    private final LinkedHashMap<String, List<Machine.Instruction>> memory;
+    /** the most instructions the memory tier may hold in all */
+    private final long capacity;
+    /** where this compiler version's programs are kept on disk, or null */
+    private final Path directory;
+    /** how many instructions the memory tier holds */
+    private long size;
+    /** how many programs were found in memory */
+    private long hits;
+    /** how many programs were found on disk */
+    private long diskHits;
+    /** how many programs had to be compiled */
+    private long misses;
+    /** how many programs were dropped from memory to make room */
+    private long evictions;
+
+    /**
+     * Create a cache.
+     *
+     * @param capacity the most instructions to keep in memory
+     * @param root the directory of the disk tier, or null for a cache
+     *             that is kept only in memory
+     * @throws IOException if the disk tier's directory cannot be created
+     */
+    public CompileCache(long capacity, Path root) throws IOException {
+        this.memory = new LinkedHashMap<>(16, 0.75f, true);
+        this.capacity = capacity;
+        this.directory = root == null ? null : root.resolve("v" + ParseTree.COMPILER_VERSION);
+        if (this.directory != null) {
+            Files.createDirectories(this.directory);
+        }
+    }
+
+    /**
+     * Compute the key a program is cached under: the SHA-256 hash of
+     * its tokens, in hexadecimal.
+     *
+     * @param tokens the program's tokens
+     * @return the key
+     */
+    public static String key(List<String> tokens) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String token : tokens) {
+            digest.update(token.getBytes(StandardCharsets.UTF_8));
+            // tokens never contain white space, so this separates them
+            digest.update((byte) ' ');
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16));
+            key.append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Find the compiled form of a program, compiling it only if neither
+     * tier has it.
+     *
+     * @param tokens the program's tokens
+     * @return the Machine.Instruction list, which must not be modified
+     * @see ParseTree#compile()
+     */
+    public List<Machine.Instruction> compile(List<String> tokens) {
+        String key = key(tokens);
+        synchronized (this) {
+            List<Machine.Instruction> code = this.memory.get(key);
+            if (code != null) {
+                this.hits++;
+                return code;
+            }
+        }
+        List<Machine.Instruction> code = load(key);
+        boolean fromDisk = code != null;
+        if (!fromDisk) {
+            code = Collections.unmodifiableList(new ParseTree(tokens).compile());
+            store(key, code);
+        }
+        synchronized (this) {
+            if (fromDisk) {
+                this.diskHits++;
+            } else {
+                this.misses++;
+            }
+            if (code.size() <= this.capacity && !this.memory.containsKey(key)) {
+                this.memory.put(key, code);
+                this.size += code.size();
+                evict();
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Drop the least recently used programs until the memory tier is
+     * back within its capacity. A program larger than the whole
+     * capacity is never put in memory, so it cannot empty the tier.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, List<Machine.Instruction>>> entries =
+                this.memory.entrySet().iterator();
+        while (this.size > this.capacity && entries.hasNext()) {
+            this.size -= entries.next().getValue().size();
+            entries.remove();
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Find the file a program is kept in on disk.
+     */
+    private Path file(String key) {
+        return this.directory.resolve(key + ".denb");
+    }
+
+    /**
+     * Load a program from the disk tier. A file that cannot be read or
+     * does not verify is deleted, so that the program is compiled and
+     * written again.
+     *
+     * @param key the program's key
+     * @return the program's instructions, or null if it is not on disk
+     *         or cannot be read
+     */
+    private List<Machine.Instruction> load(String key) {
+        if (this.directory == null || !Files.exists(file(key))) {
+            return null;
+        }
+        try {
+            return Collections.unmodifiableList(BinaryFormat.load(file(key)).getInstructions());
+        } catch (IOException | DendronException e) {
+            try {
+                Files.deleteIfExists(file(key));
+            } catch (IOException ignored) {
+                // store() will replace it
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Write a program to the disk tier. The file is written under a
+     * temporary name and then renamed, so other jobs never see half of
+     * it. A program that cannot be written is simply not cached on disk.
+     *
+     * @param key the program's key
+     * @param code the program's instructions
+     */
+    private void store(String key, List<Machine.Instruction> code) {
+        if (this.directory == null) {
+            return;
+        }
+        try {
+            Path temporary = Files.createTempFile(this.directory, key, ".tmp");
+            try {
+                BinaryFormat.write(new PackedProgram(new CompiledProgram(code), false), temporary);
+                Files.move(temporary, file(key), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // the program is still cached in memory
+        }
+    }
+
+    /**
+     * Delete the programs that older or newer compiler versions left in
+     * the disk tier.
+     *
+     * @throws IOException if they cannot be deleted
+     */
+    public void purgeStale() throws IOException {
+        if (this.directory == null) {
+            return;
+        }
+        try (DirectoryStream<Path> versions = Files.newDirectoryStream(this.directory.getParent())) {
+            for (Path version : versions) {
+                if (!version.equals(this.directory) && Files.isDirectory(version)
+                        && version.getFileName().toString().startsWith("v")) {
+                    try (Stream<Path> files = Files.walk(version)) {
+                        for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                            Files.delete(file);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget every program in the memory tier. The disk tier is kept.
+     */
+    public synchronized void clear() {
+        this.memory.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Show how many programs were found in memory
+     * @return the number of memory hits
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Show how many programs were found on disk but not in memory
+     * @return the number of disk hits
+     */
+    public synchronized long getDiskHits() {
+        return this.diskHits;
+    }
+
+    /**
+     * Show how many programs were in neither tier and had to be compiled
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Show how many programs were dropped from memory to make room
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Show how many instructions the memory tier holds
+     * @return the total length of the programs in memory
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Summarize the cache's statistics on one line.
+     * @return the hit, miss and eviction counts and the memory size
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("%d memory hits, %d disk hits, %d misses, %d evictions, "
+                        + "%d programs (%d instructions) in memory",
+                this.hits, this.diskHits, this.misses, this.evictions,
+                this.memory.size(), this.size);
+    }
+}
@@ -0,0 +1,30 @@
+package dendron.tree;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for compiling one ParseTree into Machine
+ * instructions.
+ *
+ * @author William Johnson
+ */
+@Name("dendron.Compile")
+@Label("Compile")
+@Category("Dendron")
+@Description("A ParseTree compiled into Machine instructions")
+final class CompileEvent extends jdk.jfr.Event {
+
+    @Label("Statements")
+    int statements;
+
+    @Label("Instructions")
+    @Description("How many instructions were generated")
+    int instructions;
+
+    @Label("Shared")
+    @Description("How many instructions sharing common subexpressions saved")
+    long shared;
+}
@@ -0,0 +1,84 @@
+package dendron.tree;
+
+import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An integer literal appearing in a Dendron expression.
+ *
+ * @author William Johnson
+ */
+public class Constant implements ExpressionNode {
+    /** the value of the literal */
+    private final int value;
+
+    /**
+     * Create a constant node.
+     *
+     * @param value the value of the literal
+     */
+    public Constant(int value) {
+        this.value = value;
+    }
+
+    /**
+     * Show the value of the literal
+     * @return the value of the literal
+     */
+    public int getValue() {
+        return this.value;
+    }
+
+    /**
+     * Print the literal on standard output.
+     */
+    @Override
+    public void infixDisplay() {
+        System.out.print(this.value);
+    }
+
+    /**
+     * A constant names no variables, so there is nothing to resolve.
+     *
+     * @param symbols not used
+     */
+    @Override
+    public void resolve(SymbolTable symbols) {
+    }
+
+    /**
+     * Generate a single PUSH instruction for the literal.
+     *
+     * @return the Machine Instructions for this node
+     */
+    @Override
+    public List<Machine.Instruction> emit() {
+        List<Machine.Instruction> code = new ArrayList<>();
+        emit(code);
+        return code;
+    }
+
+    /**
+     * Append a single PUSH instruction for the literal.
+     *
+     * @param code the instruction list being generated
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        code.add(new Machine.PushConst(this.value));
+    }
+
+    /**
+     * A constant always evaluates to itself.
+     *
+     * @param frame not used
+     * @return the value of the literal
+     */
+    @Override
+    public int evaluate(int[] frame) {
+        return this.value;
+    }
+}
@@ -2,6 +2,7 @@ package dendron.tree;
 
 import java.util.List;
 import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
 
 /**
  * The top-level abstraction for all nodes in the Dendron parse tree.
@@ -18,12 +19,28 @@ public interface DendronNode {
      */
     void infixDisplay();
 
+    /**
+     * Give every variable named in this DendronNode and its descendants
+     * its slot number. Variables that are read before ever being
+     * assigned are reported as uninitialized.
+     * @param symbols the program's symbol table
+     */
+    void resolve( SymbolTable symbols );
+
     /**
      * Generate a list of instructions that, when executed, represents
      * the intent of this DendronNode and its descendants.
      * @return the Machine Instructions for this node
      */
     List<  Machine.Instruction> emit();
+
+    /**
+     * Append the instructions for this DendronNode and its descendants
+     * to a list that is being built up, so that a whole program can be
+     * generated without copying each subtree's instructions.
+     * @param code the list of Machine Instructions generated so far
+     */
+    void emit( List< Machine.Instruction > code );
 }
 
 
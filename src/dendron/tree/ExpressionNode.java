@@ -1,7 +1,5 @@
 package dendron.tree;
 
-import java.util.Map;
-
 /**
  * An abstraction for all DendronNodes that can be evaluated to
  * get a value back. By definition they do not alter the "state"
@@ -13,8 +11,9 @@ public interface ExpressionNode extends DendronNode {
     /**
      * Evaluate the expression represented by this node.
      *
-     * @param symTab symbol table, if needed, to fetch variable values
+     * @param frame the variable values, if needed, indexed by the
+     *              slots assigned when the node was resolved
      * @return the result of the evaluation
      */
-    int evaluate( Map< String, Integer > symTab );
+    int evaluate( int[] frame );
 }
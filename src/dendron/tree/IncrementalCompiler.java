@@ -0,0 +1,240 @@
+package dendron.tree;
+
+import dendron.Errors;
+import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiler for a program that is compiled over and over as it is
+ * edited. The Machine code of each statement is kept from one
+ * compilation to the next, so only the statements that changed have to
+ * be parsed and compiled again; the code of the others is copied into
+ * the new program as it is.
+ *
+ * Statements begin at the same ":=" and "@" tokens the ParseTree
+ * constructor recognizes. A statement's code depends only on its tokens
+ * and on the frame slots of the variables it names, so those are what
+ * it is remembered by. A statement after an edit keeps its code unless
+ * the edit changed the slots of its variables, for example by assigning
+ * a new variable earlier in the program.
+ *
+ * Each statement is simplified and compiled on its own, as
+ * {@link ParseTree#runStream} does, so common subexpressions are not
+ * shared across statements the way {@link ParseTree#compile()} shares
+ * them. Errors are reported just as a full compilation would report them.
+ *
+ * @author William Johnson
+ */
+public class IncrementalCompiler {
+
+    /**
+     * What a statement's code is remembered by: its tokens and the slots
+     * of the variables it names, in the order they appear.
+     */
+    private static final class Key {
+        private final List<String> tokens;
+        private final int[] slots;
+        private final int hash;
+
+        /**
+         * Create the key of a statement.
+         */
+        Key(List<String> tokens, int[] slots) {
+            this.tokens = tokens;
+            this.slots = slots;
+            this.hash = 31 * tokens.hashCode() + Arrays.hashCode(slots);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return this.hash == key.hash && Arrays.equals(this.slots, key.slots)
+                    && this.tokens.equals(key.tokens);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    /**
+     * The code of one statement, and the key it is remembered by.
+     */
+    private static final class Entry {
+        private final Key key;
+        private final List<Machine.Instruction> code;
+
+        /**
+         * Remember the code of a statement.
+         */
+        Entry(Key key, List<Machine.Instruction> code) {
+            this.key = key;
+            this.code = code;
+        }
+    }
+
+    /** the code of every statement of the last program compiled */
+    private Map<Key, Entry> cache;
+    /** the symbol table of the last program compiled */
+    private SymbolTable symbols;
+    /** how many instructions the last program compiled to */
+    private int length;
+    /** how many statements the last compilation copied from the cache */
+    private int reused;
+    /** how many statements the last compilation parsed and compiled */
+    private int compiled;
+
+    /**
+     * Create a compiler that has not compiled anything yet.
+     */
+    public IncrementalCompiler() {
+        this.cache = new HashMap<>();
+        this.symbols = new SymbolTable();
+    }
+
+    /**
+     * Compile a program, reusing the code of any statement that is the
+     * same as a statement of the last program compiled.
+     *
+     * @param program the token list (Strings)
+     * @return the Machine.Instruction list
+     */
+    public List<Machine.Instruction> compile(List<String> program) {
+        Map<Key, Entry> next = new HashMap<>(2 * this.cache.size());
+        SymbolTable table = new SymbolTable();
+        List<Machine.Instruction> code = new ArrayList<>(this.length);
+        this.reused = 0;
+        this.compiled = 0;
+        int start = 0;
+        while (start < program.size()) {
+            int end = start + 1;
+            while (end < program.size() && !isStatementStart(program.get(end))) {
+                end++;
+            }
+            List<String> tokens = program.subList(start, end);
+            int[] slots = resolve(tokens, table);
+            // the key looks at the program's own tokens; it is only
+            // copied if the statement has to be compiled
+            Key key = slots == null ? null : new Key(tokens, slots);
+            Entry entry = key == null ? null : this.cache.get(key);
+            if (entry == null && key != null) {
+                entry = next.get(key);
+            }
+            if (entry != null) {
+                this.reused++;
+            } else {
+                List<Machine.Instruction> statementCode = compile(tokens, table);
+                this.compiled++;
+                if (key != null) {
+                    entry = new Entry(new Key(new ArrayList<>(tokens), slots), statementCode);
+                } else {
+                    code.addAll(statementCode);
+                }
+            }
+            if (entry != null) {
+                next.put(entry.key, entry);
+                code.addAll(entry.code);
+            }
+            start = end;
+        }
+        this.cache = next;
+        this.symbols = table;
+        this.length = code.size();
+        return code;
+    }
+
+    /**
+     * Tell whether a token begins a statement.
+     */
+    private static boolean isStatementStart(String token) {
+        return token.equals(Assignment.ASSIGN) || token.equals(Print.PRINT);
+    }
+
+    /**
+     * Find the slots of the variables a statement names, giving the
+     * target of an assignment a slot if it does not have one yet, as
+     * {@link ActionNode#resolve} would.
+     *
+     * @param tokens the statement's tokens
+     * @param table the symbol table of the statements before it
+     * @return the slots, in the order the variables appear, or null if
+     *         the statement does not begin well or reads a variable with
+     *         no slot, so it must be parsed to report the error
+     */
+    private static int[] resolve(List<String> tokens, SymbolTable table) {
+        if (!isStatementStart(tokens.get(0))) {
+            return null;
+        }
+        boolean assignment = tokens.get(0).equals(Assignment.ASSIGN);
+        int first = assignment ? 2 : 1;
+        if (assignment && (tokens.size() < 2 || !ParseTree.isIdentifier(tokens.get(1)))) {
+            return null;
+        }
+        int[] slots = new int[tokens.size()];
+        int count = 0;
+        for (int i = first; i < tokens.size(); i++) {
+            if (ParseTree.isIdentifier(tokens.get(i))) {
+                int slot = table.find(tokens.get(i));
+                if (slot < 0) {
+                    return null;
+                }
+                slots[count++] = slot;
+            }
+        }
+        if (assignment) {
+            slots[count++] = table.store(tokens.get(1));
+        }
+        return Arrays.copyOf(slots, count);
+    }
+
+    /**
+     * Parse, resolve, simplify and compile one statement.
+     *
+     * @param tokens the statement's tokens
+     * @param table the symbol table of the statements before it
+     * @return the statement's code
+     */
+    private static List<Machine.Instruction> compile(List<String> tokens, SymbolTable table) {
+        Iterator<String> rest = tokens.iterator();
+        ActionNode statement = ParseTree.parseAction(rest, table);
+        if (rest.hasNext()) {
+            Errors.report(Errors.Type.UNKNOWN_STATEMENT, rest.next());
+        }
+        return Simplifier.simplify(statement).emit();
+    }
+
+    /**
+     * Show the slot assigned to each of the last program's variables
+     * @return the last program's symbol table
+     */
+    public SymbolTable getSymbols() {
+        return this.symbols;
+    }
+
+    /**
+     * Show how many statements the last compilation reused
+     * @return the number of statements whose code came from the cache
+     */
+    public int getReused() {
+        return this.reused;
+    }
+
+    /**
+     * Show how many statements the last compilation had to compile
+     * @return the number of statements parsed and compiled
+     */
+    public int getCompiled() {
+        return this.compiled;
+    }
+}
@@ -0,0 +1,27 @@
+package dendron.tree;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for parsing one program into a ParseTree.
+ *
+ * @author William Johnson
+ */
+@Name("dendron.Parse")
+@Label("Parse")
+@Category("Dendron")
+@Description("A Dendron program parsed into a ParseTree")
+final class ParseEvent extends jdk.jfr.Event {
+
+    @Label("Tokens")
+    int tokens;
+
+    @Label("Statements")
+    int statements;
+
+    @Label("Variables")
+    int variables;
+}
@@ -2,10 +2,13 @@ package dendron.tree;
 
 import dendron.Errors;
 import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
 import dendron.tree.ActionNode;
 import dendron.tree.ExpressionNode;
 
+import java.io.Reader;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Operations that are done on a Dendron code parse tree.
@@ -13,31 +16,98 @@ import java.util.*;
  * @author William Johnson
  */
 public class ParseTree implements ExpressionNode, ActionNode {
-    private List<Machine.Instruction> instructions;
-    private Map<String, Integer> symTab;
-    private List<String> program;
+    /**
+     * The version of the code {@link #compile()} generates. It must be
+     * raised whenever a change to the compiler changes its output, so
+     * that programs cached by an older compiler are not reused.
+     *
+     * @see CompileCache
+     */
+    public static final int COMPILER_VERSION = 2;
+
+    /** the statements of the program, in order */
+    private List<ActionNode> statements;
+    /** the slot assigned to each of the program's variables */
+    private SymbolTable symbols;
+    /** how many instructions common subexpressions saved in the last compile */
+    private long shared;
 
     /**
      * Parse the entire list of program tokens. The program is a
      * sequence of actions (statements), each of which modifies something
      * in the program's set of variables. The resulting parse tree is
      * stored internally.
+     * The tokens are read exactly once, front to back, so parsing takes
+     * time proportional to the length of the program. Each statement's
+     * variables are resolved to frame slots as soon as it is parsed.
      *
      * @param program the token list (Strings)
      */
     public ParseTree(List<String> program) {
-        this.instructions = new ArrayList<>();
-        this.symTab = new HashMap<>();
-        int start = 0;
-        int end = program.size();
-        for (int i = 1; i < program.size(); i++) {
-            if (program.get(i).equals(":=") || program.get(i).equals("@")) {
-                parseExpr(program.subList(start, i));
-                start = i;
-            }
+        this(program, List.of());
+    }
+
+    /**
+     * Parse a program some of whose variables are supplied from outside
+     * rather than assigned by the program, such as the input columns of
+     * a batch. The inputs may be read before they are assigned. Each
+     * gets a frame slot where the program first uses it, so an input
+     * the program never uses takes no slot.
+     *
+     * @param program the token list (Strings)
+     * @param inputs the names of the variables that start out with values
+     * @see dendron.machine.BatchProgram
+     */
+    public ParseTree(List<String> program, List<String> inputs) {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        this.statements = new ArrayList<>();
+        this.symbols = new SymbolTable();
+        for (String input : inputs) {
+            this.symbols.input(input);
+        }
+        Iterator<String> tokens = program.iterator();
+        while (tokens.hasNext()) {
+            this.statements.add(parseAction(tokens, this.symbols));
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.tokens = program.size();
+            event.statements = this.statements.size();
+            event.variables = this.symbols.size();
+            event.commit();
         }
-        parseExpr(program.subList(start, end));
-        this.program = program;
+    }
+
+    /**
+     * Parse, compile and execute a program one statement at a time,
+     * straight from its source text. Each statement is discarded once it
+     * has run, so memory use depends only on the program's variables,
+     * not on its length.
+     *
+     * @param source the program text
+     * @see Machine#executeStatement(List)
+     */
+    public static void runStream(Reader source) {
+        runStream(new Tokenizer(source));
+    }
+
+    /**
+     * Parse, compile and execute a program one statement at a time.
+     * Statements begin at the same ":=" and "@" tokens the constructor
+     * recognizes, and each is executed before the next is read.
+     *
+     * @param tokens the program tokens, read exactly once
+     */
+    public static void runStream(Iterator<String> tokens) {
+        SymbolTable symbols = new SymbolTable();
+        Machine machine = new Machine();
+        machine.begin(symbols);
+        while (tokens.hasNext()) {
+            ActionNode statement = parseAction(tokens, symbols);
+            machine.executeStatement(Simplifier.simplify(statement).emit());
+        }
+        machine.finish();
     }
 
     public static boolean isInteger(String str) {
@@ -65,402 +135,155 @@ public class ParseTree implements ExpressionNode, ActionNode {
     }
 
     /**
-     * Parse the next action (statement) in the list.
-     * (This method is not required, just suggested.)
+     * Check whether a token can be used as a variable name:
+     * a letter followed by any number of letters and digits.
      *
-     * @param program the list of tokens
-     * @return a parse tree for the action
+     * @param str the token to check
+     * @return true if the token is a legal identifier
      */
-    private ActionNode parseAction(List<String> program) {
-        if (program.get(0).equals("@")) {
-            if (isInteger(program.get(1))) {
-                Machine.Instruction pr = new Machine.Print(Integer.parseInt(program.get(1)));
-                this.instructions.add(pr);
-            } else if (this.symTab.containsKey(program.get(1))) {
-                Machine.Load l = new Machine.Load(program.get(1));
-                this.instructions.add(l);
-                Machine.Instruction pr = new Machine.Print(this.symTab.get(program.get(1)));
-                this.instructions.add(pr);
-            }
-        } else if (program.get(0).equals("_")) {
-            int num2 = 0;
-            if (isInteger(program.get(1))) {
-                Machine.Negate n = new Machine.Negate();
-                this.instructions.add(n);
-                num2 = -1 * Integer.parseInt(program.get(1));
-            } else if (this.symTab.containsKey(program.get(1))) {
-                Machine.Load l = new Machine.Load(program.get(1));
-                this.instructions.add(l);
-                Machine.Negate n = new Machine.Negate();
-                this.instructions.add(n);
-                num2 = -1 * this.symTab.get(program.get(1));
-                this.symTab.put(program.get(1), this.symTab.get(program.get(1)) * -1);
-
-            }
-            ArrayList<String> program1 = new ArrayList<>(program);
-            program1.add(0, String.valueOf(num2));
-            program1.remove(1);
-            program1.remove(1);
-            List<String> program2 = new ArrayList<>(program1);
-            this.program = program2;
-
-        } else if (program.get(0).equals("/")) {
-            int count = 0;
-            int num = 0;
-            int num1 = 0;
-            boolean a = true;
-            for (int i = 1; i < program.size(); i++) {
-                if (isInteger(program.get(i)) && count < 1 && !this.symTab.containsValue(program.get(i))) {
-                    num = Integer.parseInt(program.get(i));
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseExpr(program.subList(i - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        num *= -1;
-                    }
-                    count++;
-                } else if (isInteger(program.get(i)) && count < 2 && !this.symTab.containsValue(program.get(i))) {
-                    num1 = Integer.parseInt(program.get(i));
-                    if (!a) {
-                        Machine.PushConst p = new Machine.PushConst(Integer.parseInt(program.get(i)));
-                        this.instructions.add(p);
-                    }
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseExpr(program.subList(i - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        num1 *= -1;
-                    }
-                    count++;
-                } else if (this.symTab.containsKey(program.get(i)) && count < 1) {
-                    Machine.Load l = new Machine.Load(program.get(i));
-                    num = this.symTab.get(program.get(i));
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseExpr(program.subList(i - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        num *= -1;
-                    }
-                    this.instructions.add(l);
-                    a = false;
-                    count++;
-                } else if (this.symTab.containsKey(program.get(i)) && count < 2) {
-                    Machine.Load l = new Machine.Load(program.get(i));
-                    num1 = this.symTab.get(program.get(i));
-                    this.instructions.add(l);
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseExpr(program.subList(i - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        num1 *= -1;
-                    }
-                    count++;
-                }
-                else if(count<2){
-                    Errors.report(Errors.Type.UNINITIALIZED,null);
-                }
-            }
-            Machine.Divide d = new Machine.Divide();
-            this.instructions.add(d);
-            int num2 = num / num1;
-            ArrayList<String> program1 = new ArrayList<>(program);
-            program1.add(0, String.valueOf(num2));
-            program1.remove(1);
-            program1.remove(1);
-            program1.remove(1);
-            List<String> program2 = new ArrayList<>(program1);
-            this.program = program2;
-        } else if (program.get(0).equals("*")) {
-            int count = 0;
-            int mul = 1;
-            for (int i = 0; i < program.size(); i++) {
-                if (isInteger(program.get(i)) && count < 2 && !this.symTab.containsValue(program.get(i))) {
-                    mul *= Integer.parseInt(program.get(i));
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseExpr(program.subList(i - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        mul = mul * -1;
-                    }
-                    count++;
-                } else if (this.symTab.containsKey(program.get(i)) && count < 2) {
-                    Machine.Load l = new Machine.Load(program.get(i));
-                    this.instructions.add(l);
-                    mul *= this.symTab.get(program.get(i));
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseExpr(program.subList(i - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        mul = mul * -1;
-                    }
-                    count++;
-                }
-                else{
-                    Errors.report(Errors.Type.UNINITIALIZED,null);
-                }
-            }
-            Machine.Multiply m = new Machine.Multiply();
-            this.instructions.add(m);
-            ArrayList<String> program1 = new ArrayList<>(program);
-            program1.add(0, String.valueOf(mul));
-            program1.remove(1);
-            program1.remove(1);
-            program1.remove(1);
-            List<String> program2 = new ArrayList<>(program1);
-            this.program = program2;
-        } else if (program.get(0).equals("+")) {
-            int count = 0;
-            int num = 0;
-            for (int i = 1; i < program.size(); i++) {
-                if (isInteger(program.get(i)) && count < 2) {
-                    //Machine.PushConst p = new Machine.PushConst(Integer.parseInt(program.get(i)));
-                    //this.instructions.add(p);
-                    int num1 = Integer.parseInt(program.get(i));
-                    count++;
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseExpr(program.subList(i - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        num1 *= -1;
-                    }
-                    num = num + num1;
-                } else if (this.symTab.containsKey(program.get(i)) && count < 2) {
-                    Machine.Load l = new Machine.Load(program.get(i));
-                    this.instructions.add(l);
-                    int num1 = this.symTab.get(program.get(i));
-
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseExpr(program.subList(i - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        num1 *= -1;
-                    }
-                    count++;
-                    num = num + num1;
-                }
-                else{
-                    Errors.report(Errors.Type.UNINITIALIZED,null);
-                }
+    public static boolean isIdentifier(String str) {
+        if (str == null || str.length() == 0 || !Character.isLetter(str.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < str.length(); i++) {
+            if (!Character.isLetterOrDigit(str.charAt(i))) {
+                return false;
             }
-            Machine.Add a = new Machine.Add();
-            this.instructions.add(a);
-            ArrayList<String> program1 = new ArrayList<>(program);
-            program1.add(0, String.valueOf(num));
-            program1.remove(1);
-            program1.remove(1);
-            program1.remove(1);
-            List<String> program2 = new ArrayList<>(program1);
-            this.program = program2;
-        } else if (program.get(0).equals("-")) {
-            int count = 0;
-            int num = 0;
-            int num1 = 0;
-            for (int i = 1; i < program.size(); i++) {
-                if (isInteger(program.get(i)) && count < 1) {
-                    num = Integer.parseInt(program.get(i));
-                    count++;
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseExpr(program.subList(i - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        num *= -1;
-                    }
-                } else if (isInteger(program.get(i)) && count < 2) {
-                    num1 = Integer.parseInt(program.get(i));
-                    count++;
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseExpr(program.subList(i - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        num1 *= -1;
-                    }
-                } else if (this.symTab.containsKey(program.get(i)) && count < 1) {
-                    Machine.Load l = new Machine.Load(program.get(i));
-                    this.instructions.add(l);
-                    num = this.symTab.get(program.get(i));
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseExpr(program.subList(i - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        num *= -1;
-                    }
-                    count++;
+        }
+        return true;
+    }
 
-                } else if (this.symTab.containsKey(program.get(i)) && count < 2) {
-                    num1 = this.symTab.get(program.get(i));
-                    if (program.get(i - 1).equals("_")) {
-                        List<String> p1 = program.subList(0, i - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseAction(program.subList(i - 1, program.size()));
+    /**
+     * Fetch the next token of the statement being parsed.
+     * Running out of tokens is reported as a premature end.
+     *
+     * @param tokens the remaining program tokens
+     * @return the next token
+     */
+    private static String nextToken(Iterator<String> tokens) {
+        if (!tokens.hasNext()) {
+            Errors.report(Errors.Type.PREMATURE_END, null);
+        }
+        return tokens.next();
+    }
 
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        num1 *= -1;
-                    } else {
-                        Machine.Load l = new Machine.Load(program.get(i));
-                        this.instructions.add(l);
-                    }
-                    count++;
-                }
-                else if(count>2){
+    /**
+     * An operator whose operands are still being parsed.
+     */
+    private static final class Pending {
+        /** the operator token */
+        final String operator;
+        /** the first operand of a binary operator, once it is parsed */
+        ExpressionNode left;
 
-                    Errors.report(Errors.Type.UNINITIALIZED,null);
+        Pending(String operator) {
+            this.operator = operator;
+        }
+    }
 
-                }
-            }
-            int num2 = num - num1;
-            Machine.Subtract sub = new Machine.Subtract();
-            this.instructions.add(sub);
-            ArrayList<String> program1 = new ArrayList<>(program);
-            program1.add(0, String.valueOf(num2));
-            program1.remove(1);
-            program1.remove(1);
-            program1.remove(1);
-            List<String> program2 = new ArrayList<>(program1);
-            this.program = program2;
-        } else if (program.get(0).equals("#")) {
-            int num = 0;
-            if (isInteger(program.get(1))) {
-                num = (int) Math.pow(Double.parseDouble(program.get(1)), 0.5);
-            } else if (this.symTab.containsKey(program.get(1))) {
-                Machine.Load l = new Machine.Load(program.get(1));
-                num = (int) Math.pow(Double.valueOf(String.valueOf(this.symTab.get(program.get(1)))), 0.5);
-                this.instructions.add(l);
-            }
-            else{
-                Errors.report(Errors.Type.UNINITIALIZED,null);
+    /**
+     * Parse the next action (statement) in the token stream and resolve
+     * its variables. The expression's variables are resolved in the
+     * order they appear, and the target of an assignment last, once the
+     * whole statement has been parsed; so a syntax error is reported
+     * before any uninitialized variable in the same statement.
+     *
+     * @param tokens the remaining program tokens
+     * @param symbols the program's symbol table
+     * @return a parse tree for the action
+     */
+    static ActionNode parseAction(Iterator<String> tokens, SymbolTable symbols) {
+        String token = nextToken(tokens);
+        List<Variable> variables = new ArrayList<>();
+        if (token.equals(Assignment.ASSIGN)) {
+            String ident = nextToken(tokens);
+            if (!isIdentifier(ident)) {
+                Errors.report(Errors.Type.ILLEGAL_VALUE, ident);
             }
-            Machine.SquareRoot n = new Machine.SquareRoot();
-            this.instructions.add(n);
-            ArrayList<String> program1 = new ArrayList<>(program);
-            program1.add(0, String.valueOf(num));
-            program1.remove(1);
-            program1.remove(1);
-            List<String> program2 = new ArrayList<>(program1);
-            this.program = program2;
-        }
-        else{
-            Errors.report(Errors.Type.ILLEGAL_VALUE,null);
+            ExpressionNode rhs = parseExpr(tokens, variables);
+            resolve(variables, symbols);
+            return new Assignment(ident, rhs, symbols.store(ident));
+        } else if (token.equals(Print.PRINT)) {
+            ExpressionNode expr = parseExpr(tokens, variables);
+            resolve(variables, symbols);
+            return new Print(expr);
         }
+        Errors.report(Errors.Type.UNKNOWN_STATEMENT, token);
         return null;
     }
 
     /**
-     * Parse the next expression in the list.
-     * (This method is not required, just suggested.)
+     * Resolve the variables an expression reads, in order.
+     *
+     * @param variables the expression's variable nodes
+     * @param symbols the program's symbol table
+     */
+    private static void resolve(List<Variable> variables, SymbolTable symbols) {
+        for (Variable variable : variables) {
+            variable.resolve(symbols);
+        }
+    }
+
+    /**
+     * Parse the next expression in the token stream. Expressions are in
+     * prefix form, so each operator is immediately followed by its
+     * operands. Operators wait on an explicit stack until their operands
+     * are complete, rather than on the Java call stack, so an expression
+     * may be nested as deeply as memory allows.
      *
-     * @param program the list of tokens
+     * @param tokens the remaining program tokens
+     * @param variables where to add the expression's variable nodes, in order
      * @return a parse tree for this expression
      */
-    private ExpressionNode parseExpr(List<String> program) {
-        int count = 2;
-        int count1 = 1;
-        boolean a = false;
-        if (program.get(0).equals(":=")) {
-            if (program.size() == 3) {
-                a = true;
+    private static ExpressionNode parseExpr(Iterator<String> tokens, List<Variable> variables) {
+        Deque<Pending> pending = new ArrayDeque<>();
+        while (true) {
+            String token = nextToken(tokens);
+            ExpressionNode node;
+            if (BinaryOperation.isOperator(token) || token.equals(UnaryOperation.NEG)
+                    || token.equals(SquareRoot.SQRT)) {
+                pending.push(new Pending(token));
+                continue;
             }
-            while (program.size() > 3 && count < 100) {
-                if (count >= program.size()) {
-                    count = 2;
-                    count1++;
+            if (isInteger(token)) {
+                try {
+                    node = new Constant(Integer.parseInt(token));
+                } catch (NumberFormatException nfe) {
+                    Errors.report(Errors.Type.ILLEGAL_VALUE, token);
+                    return null;
                 }
-                if (isInteger(program.get(count)) || this.symTab.containsKey(program.get(count))) {
-                    if (!isInteger(program.get(count - 1)) && !this.symTab.containsKey(program.get(count - 1))) {
-                        if (isInteger(program.get(count)) && !program.get(count - 1).equals("#")) {
-                            Machine.PushConst p = new Machine.PushConst(Integer.parseInt(program.get(count)));
-                            this.instructions.add(p);
-                        }
-                        List<String> p1 = program.subList(0, count - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseAction(program.subList(count - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        count -= count1;
-                    }
-                }
-                count++;
-
-            }
-            if (a) {
-                Machine.PushConst p = new Machine.PushConst(Integer.parseInt(program.get(2)));
-                this.instructions.add(p);
+            } else if (isIdentifier(token)) {
+                Variable variable = new Variable(token);
+                variables.add(variable);
+                node = variable;
+            } else if (token.equals(Assignment.ASSIGN) || token.equals(Print.PRINT)) {
+                Errors.report(Errors.Type.PREMATURE_END, null);
+                return null;
+            } else {
+                Errors.report(Errors.Type.ILLEGAL_VALUE, token);
+                return null;
             }
-
-
-            this.symTab.put(program.get(1), Integer.parseInt(program.get(2)));
-            Machine.Store s = new Machine.Store(program.get(1));
-            this.instructions.add(s);
-            ArrayList<String> p3 = new ArrayList<>(program);
-            p3.remove(0);
-            p3.remove(0);
-            p3.remove(0);
-            this.program = p3;
-        } else if (program.get(0).equals("@")){
-            while (program.size() > 2 && count < 100) {
-                if (count >= program.size()) {
-                    count = 0;
-                    count1++;
-                }
-                if (isInteger(program.get(count)) || this.symTab.containsKey(program.get(count))) {
-                    if (!isInteger(program.get(count - 1)) && !this.symTab.containsKey(program.get(count - 1))) {
-                        List<String> p1 = program.subList(0, count - 1);
-                        ArrayList<String> p2 = new ArrayList<>(p1);
-                        parseAction(program.subList(count - 1, program.size()));
-                        p2.addAll(p2.size(), this.program);
-                        program = p2;
-                        this.program = p2;
-                        count -= count1;
+            // hand the operand to the operators it completes
+            while (node != null && !pending.isEmpty()) {
+                Pending operator = pending.peek();
+                if (BinaryOperation.isOperator(operator.operator) && operator.left == null) {
+                    operator.left = node;
+                    node = null;
+                } else {
+                    pending.pop();
+                    if (operator.operator.equals(UnaryOperation.NEG)) {
+                        node = new UnaryOperation(node);
+                    } else if (operator.operator.equals(SquareRoot.SQRT)) {
+                        node = new SquareRoot(node);
+                    } else {
+                        node = new BinaryOperation(operator.operator, operator.left, node);
                     }
                 }
-                count++;
-
             }
-            parseAction(program);
-            ArrayList<String> p3 = new ArrayList<>(program);
-            p3.remove(0);
-            p3.remove(0);
-            this.program = p3;
-        }
-        else{
-            Errors.report(Errors.Type.UNKNOWN_STATEMENT,null);
+            if (node != null) {
+                return node;
+            }
         }
-        return null;
     }
 
     /**
@@ -474,39 +297,115 @@ public class ParseTree implements ExpressionNode, ActionNode {
     }
 
     /**
-     * Run the program represented by the tree directly
+     * Run the program represented by the tree directly, without
+     * generating Machine instructions. The tree is first turned into
+     * closures, one specialized lambda per node.
      *
-     * @see dendron.tree.ActionNode#execute(Map)
+     * @see ClosureCompiler
+     * @see dendron.tree.ActionNode#execute(int[])
      */
     public void interpret() {
         System.out.println("Interpreting the parse tree...");
-        for (Machine.Instruction a : this.instructions) {
-            if (a.toString().equals("PRINT")) {
-                Machine.Print b = (Machine.Print) a;
-                System.out.println("=== " + b.getValue());
-            }
-        }
+        int[] frame = new int[this.symbols.size()];
+        ClosureCompiler.compile(this.statements).accept(frame);
+        System.out.println("Interpretation complete");
+        Errors.dump(this.symbols, frame);
+    }
+
+    /**
+     * Run the program represented by the tree directly, running
+     * statements that do not depend on each other at the same time.
+     * The output is the same as that of {@link #interpret()}.
+     *
+     * @param pool the threads to run statements on
+     * @see StatementGraph
+     */
+    public void interpret(ForkJoinPool pool) {
+        System.out.println("Interpreting the parse tree...");
+        int[] frame = new int[this.symbols.size()];
+        getDependencyGraph().execute(frame, pool);
         System.out.println("Interpretation complete");
+        Errors.dump(this.symbols, frame);
+    }
+
+    /**
+     * Find which of the program's statements depend on which others
+     * @return a new graph of the program's statements
+     */
+    public StatementGraph getDependencyGraph() {
+        return new StatementGraph(this.statements);
+    }
+
+    /**
+     * Show the slot assigned to each of the program's variables
+     * @return the program's symbol table
+     */
+    public SymbolTable getSymbols() {
+        return this.symbols;
     }
 
     /**
      * Build the list of machine instructions for
-     * the program represented by the tree.
+     * the program represented by the tree. Each statement's expression
+     * is simplified first, so constant subexpressions are computed here
+     * rather than by the Machine, and a division by a constant zero is
+     * reported before the program runs. Subexpressions that the program
+     * computes more than once are then computed only once.
      *
      * @return the Machine.Instruction list
-     * @see Machine.Instruction#execute()
+     * @see Machine.Instruction#execute(Machine)
+     * @see Simplifier
+     * @see CommonSubexpressions
      */
     public List<Machine.Instruction> compile() {
-        return this.instructions;
+        CompileEvent event = new CompileEvent();
+        event.begin();
+        List<ActionNode> simplified = new ArrayList<>(this.statements.size());
+        for (ActionNode statement : this.statements) {
+            simplified.add(Simplifier.simplify(statement));
+        }
+        CommonSubexpressions generator = new CommonSubexpressions(this.symbols);
+        List<Machine.Instruction> code = generator.compile(simplified);
+        this.shared = generator.getSaved();
+        event.end();
+        if (event.shouldCommit()) {
+            event.statements = this.statements.size();
+            event.instructions = code.size();
+            event.shared = this.shared;
+            event.commit();
+        }
+        return code;
+    }
+
+    /**
+     * Show how many instructions the last call to compile saved by
+     * not recomputing common subexpressions
+     * @return the number of instructions saved
+     */
+    public long getSharedSavings() {
+        return this.shared;
     }
 
     /**
-     * Prints out the table where variable values are stored
-     * @param symTab the table where variable values are stored
+     * Execute every statement of the program, in order
+     * @param frame the variable values, indexed by slot
      */
     @Override
-    public void execute(Map<String, Integer> symTab) {
-        System.out.println(symTab);
+    public void execute(int[] frame) {
+        for (ActionNode statement : this.statements) {
+            statement.execute(frame);
+        }
+    }
+
+    /**
+     * Resolve every statement of the program, in order
+     * @param symbols the program's symbol table
+     */
+    @Override
+    public void resolve(SymbolTable symbols) {
+        for (ActionNode statement : this.statements) {
+            statement.resolve(symbols);
+        }
     }
 
 
@@ -516,82 +415,41 @@ public class ParseTree implements ExpressionNode, ActionNode {
     @Override
     public void infixDisplay() {
         System.out.println("The Program, with expressions in infix notation:\n");
-        int start = 0;
-        int end = program.size();
-        for (int i = 1; i < program.size(); i++) {
-            if (program.get(i).equals(":=") || program.get(i).equals("@")) {
-                List<String> e = program.subList(start, i);
-                ArrayList<String> equation = new ArrayList<>(e);
-                if (equation.get(0).equals(":=")) {
-                    System.out.print(equation.get(1) + " ");
-                    if (equation.size() == 3) {
-                        System.out.print(equation.get(0) + " " + equation.get(2));
-                        System.out.println();
-                    } else {
-                        System.out.print(equation.get(0) + " (");
-                        for (int j = 2; j < equation.size(); j++) {
-                            if (equation.get(j).equals("+") || equation.get(j).equals("-") || equation.get(j).equals("*") || equation.get(j).equals("/")) {
-                                System.out.print(equation.get(j + 1) + " " + equation.get(j) + " ");
-                                j++;
-                            } else {
-                                System.out.print(equation.get(j));
-                                if (!equation.get(j).equals("_")) {
-                                    System.out.print(" ");
-                                }
-                            }
-
-                        }
-                        System.out.print(" )");
-                        System.out.println();
-                    }
-                } else {
-                    System.out.println("PRINT " + equation.get(1));
-                }
-                start = i;
-            }
-        }
-        List<String> e = program.subList(start, end);
-        ArrayList<String> equation = new ArrayList<>(e);
-        System.out.print(equation.get(1) + " " + equation.get(0) + " ");
-        int k = 2;
-        if (equation.get(k).equals("#")) {
-            System.out.print(equation.get(k));
-            k++;
-        }
-        System.out.print("( ");
-        for (; k < equation.size(); k++) {
-            if (equation.get(k).equals("#")) {
-                System.out.print(equation.get(k) + "( ");
-            } else if (equation.get(k).equals("+") || equation.get(k).equals("-") || equation.get(k).equals("*") || equation.get(k).equals("/")) {
-                System.out.print(equation.get(k + 1) + " " + equation.get(k) + " ");
-                k++;
-            } else {
-                System.out.print(equation.get(k));
-                if (!equation.get(k).equals("_")) {
-                    System.out.print(" ");
-                }
-            }
+        for (ActionNode statement : this.statements) {
+            statement.infixDisplay();
+            System.out.println();
         }
-        System.out.print(" )");
-        System.out.println();
     }
 
     /**
-     * Returns null
-     * @return null
+     * Generate the instructions for every statement of the program
+     * @return the Machine.Instruction list
      */
     @Override
     public List<Machine.Instruction> emit() {
-        return null;
+        List<Machine.Instruction> code = new ArrayList<>();
+        emit(code);
+        return code;
+    }
+
+    /**
+     * Append the instructions for every statement of the program
+     * @param code the list of Machine Instructions generated so far
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        for (ActionNode statement : this.statements) {
+            statement.emit(code);
+        }
     }
 
     /**
      * Returns 0
-     * @param symTab symbol table, if needed, to fetch variable values
+     * @param frame not used
      * @return 0
      */
     @Override
-    public int evaluate(Map<String, Integer> symTab) {
+    public int evaluate(int[] frame) {
         return 0;
     }
 }
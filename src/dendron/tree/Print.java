@@ -0,0 +1,89 @@
+package dendron.tree;
+
+import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Dendron print statement ("@").
+ *
+ * @author William Johnson
+ */
+public class Print implements ActionNode {
+    /** the token that starts a print statement */
+    public static final String PRINT = "@";
+
+    /** the expression whose value is printed */
+    private final ExpressionNode expr;
+
+    /**
+     * Create a print node.
+     *
+     * @param expr the expression whose value is printed
+     */
+    public Print(ExpressionNode expr) {
+        this.expr = expr;
+    }
+
+    /**
+     * Show the expression whose value is printed
+     * @return the printed expression
+     */
+    public ExpressionNode getExpr() {
+        return this.expr;
+    }
+
+    /**
+     * Print the print statement on standard output.
+     */
+    @Override
+    public void infixDisplay() {
+        System.out.print("PRINT ");
+        this.expr.infixDisplay();
+    }
+
+    /**
+     * Resolve the variables in the operand.
+     *
+     * @param symbols the program's symbol table
+     */
+    @Override
+    public void resolve(SymbolTable symbols) {
+        this.expr.resolve(symbols);
+    }
+
+    /**
+     * Generate the expression's code followed by a PRINT instruction.
+     *
+     * @return the Machine Instructions for this node
+     */
+    @Override
+    public List<Machine.Instruction> emit() {
+        List<Machine.Instruction> code = new ArrayList<>();
+        emit(code);
+        return code;
+    }
+
+    /**
+     * Append the expression's code followed by a PRINT instruction.
+     *
+     * @param code the instruction list being generated
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        this.expr.emit(code);
+        code.add(new Machine.Print());
+    }
+
+    /**
+     * Evaluate the expression and show its value on standard output.
+     *
+     * @param frame the variable values, indexed by slot
+     */
+    @Override
+    public void execute(int[] frame) {
+        System.out.println("=== " + this.expr.evaluate(frame));
+    }
+}
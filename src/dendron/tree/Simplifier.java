@@ -0,0 +1,230 @@
+package dendron.tree;
+
+import dendron.Errors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Constant folding and algebraic simplification of Dendron expression
+ * trees, done before code is generated. The trees themselves are not
+ * changed; simplified copies are built, sharing any subtrees that
+ * could not be improved.
+ *
+ * Chains of "+" and of "*" are flattened so that every constant in the
+ * chain can be combined, wherever it appears. Integer addition and
+ * multiplication wrap around identically in any order, so this never
+ * changes a result.
+ *
+ * @author William Johnson
+ */
+public class Simplifier {
+
+    private Simplifier() {}
+
+    /**
+     * Simplify the expression in a statement.
+     *
+     * @param statement an Assignment or Print node that has been resolved
+     * @return an equivalent statement, possibly the same one
+     */
+    public static ActionNode simplify(ActionNode statement) {
+        if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            ExpressionNode rhs = simplify(assignment.getRhs());
+            return rhs == assignment.getRhs() ? statement
+                    : new Assignment(assignment.getIdent(), rhs, assignment.getSlot());
+        } else if (statement instanceof Print) {
+            Print print = (Print) statement;
+            ExpressionNode expr = simplify(print.getExpr());
+            return expr == print.getExpr() ? statement : new Print(expr);
+        }
+        return statement;
+    }
+
+    /**
+     * Simplify an expression. A division by a divisor that simplifies to
+     * zero is reported now rather than when the program runs.
+     *
+     * @param expr the expression
+     * @return an equivalent expression, possibly the same one
+     */
+    public static ExpressionNode simplify(ExpressionNode expr) {
+        if (expr instanceof UnaryOperation) {
+            return negate(simplify(((UnaryOperation) expr).getExpr()), expr);
+        } else if (expr instanceof SquareRoot) {
+            ExpressionNode operand = simplify(((SquareRoot) expr).getExpr());
+            if (operand instanceof Constant) {
+                return new Constant((int) Math.pow(((Constant) operand).getValue(), 0.5));
+            }
+            return operand == ((SquareRoot) expr).getExpr() ? expr : new SquareRoot(operand);
+        } else if (expr instanceof BinaryOperation) {
+            return simplifyBinary((BinaryOperation) expr);
+        }
+        return expr;
+    }
+
+    /**
+     * Build the negation of an already simplified expression.
+     *
+     * @param operand the simplified operand
+     * @param original the negation being simplified, reused if nothing changed
+     * @return an equivalent expression
+     */
+    private static ExpressionNode negate(ExpressionNode operand, ExpressionNode original) {
+        if (operand instanceof Constant) {
+            return new Constant(-((Constant) operand).getValue());
+        } else if (operand instanceof UnaryOperation) {
+            return ((UnaryOperation) operand).getExpr();
+        } else if (original instanceof UnaryOperation
+                && ((UnaryOperation) original).getExpr() == operand) {
+            return original;
+        }
+        return new UnaryOperation(operand);
+    }
+
+    /**
+     * Simplify a binary operation.
+     */
+    private static ExpressionNode simplifyBinary(BinaryOperation expr) {
+        String op = expr.getOperator();
+        if (op.equals(BinaryOperation.ADD) || op.equals(BinaryOperation.MUL)) {
+            return simplifyChain(expr);
+        }
+        ExpressionNode left = simplify(expr.getLeft());
+        ExpressionNode right = simplify(expr.getRight());
+        boolean leftConstant = left instanceof Constant;
+        boolean rightConstant = right instanceof Constant;
+        int leftValue = leftConstant ? ((Constant) left).getValue() : 0;
+        int rightValue = rightConstant ? ((Constant) right).getValue() : 0;
+        if (op.equals(BinaryOperation.DIV)) {
+            if (rightConstant && rightValue == 0) {
+                Errors.report(Errors.Type.DIVIDE_BY_ZERO, null);
+            }
+            if (leftConstant && rightConstant) {
+                return new Constant(leftValue / rightValue);
+            }
+            if (rightConstant && rightValue == 1) {
+                return left;
+            }
+            if (rightConstant && rightValue == -1) {
+                return negate(left, null);
+            }
+        } else {
+            if (leftConstant && rightConstant) {
+                return new Constant(leftValue - rightValue);
+            }
+            if (rightConstant && rightValue == 0) {
+                return left;
+            }
+            if (leftConstant && leftValue == 0) {
+                return negate(right, null);
+            }
+        }
+        if (left == expr.getLeft() && right == expr.getRight()) {
+            return expr;
+        }
+        return new BinaryOperation(op, left, right);
+    }
+
+    /**
+     * Simplify a chain of additions or of multiplications: gather every
+     * operand of the chain, combine all of the constants into one, apply
+     * the identities for 0 and 1, and rebuild the chain with the combined
+     * constant last.
+     */
+    private static ExpressionNode simplifyChain(BinaryOperation expr) {
+        String op = expr.getOperator();
+        boolean product = op.equals(BinaryOperation.MUL);
+        List<ExpressionNode> operands = new ArrayList<>();
+        int[] constant = { product ? 1 : 0 };
+        gather(expr, op, operands, constant);
+        int value = constant[0];
+        if (product && value == 0 && !canFail(operands)) {
+            return new Constant(0);
+        }
+        if (operands.isEmpty()) {
+            return new Constant(value);
+        }
+        ExpressionNode result = operands.get(0);
+        for (int i = 1; i < operands.size(); i++) {
+            result = new BinaryOperation(op, result, operands.get(i));
+        }
+        if (product && value == -1) {
+            return negate(result, null);
+        }
+        if (value != (product ? 1 : 0)) {
+            result = new BinaryOperation(op, result, new Constant(value));
+        }
+        return result;
+    }
+
+    /**
+     * Collect the simplified operands of a chain of one operator.
+     * In a product, negations are pulled out as a factor of -1.
+     *
+     * @param expr a node in the chain
+     * @param op the chain's operator
+     * @param operands where to put the operands that are not constants
+     * @param constant the combination of the constant operands so far
+     */
+    private static void gather(ExpressionNode expr, String op,
+                               List<ExpressionNode> operands, int[] constant) {
+        if (expr instanceof BinaryOperation && ((BinaryOperation) expr).getOperator().equals(op)) {
+            gather(((BinaryOperation) expr).getLeft(), op, operands, constant);
+            gather(((BinaryOperation) expr).getRight(), op, operands, constant);
+            return;
+        }
+        ExpressionNode operand = simplify(expr);
+        boolean product = op.equals(BinaryOperation.MUL);
+        if (product && operand instanceof UnaryOperation) {
+            constant[0] = -constant[0];
+            operand = ((UnaryOperation) operand).getExpr();
+        }
+        if (operand instanceof BinaryOperation && ((BinaryOperation) operand).getOperator().equals(op)) {
+            // simplification produced another chain of the same operator
+            gather(((BinaryOperation) operand).getLeft(), op, operands, constant);
+            gather(((BinaryOperation) operand).getRight(), op, operands, constant);
+        } else if (operand instanceof Constant) {
+            int value = ((Constant) operand).getValue();
+            constant[0] = product ? constant[0] * value : constant[0] + value;
+        } else {
+            operands.add(operand);
+        }
+    }
+
+    /**
+     * Tell whether evaluating any of some simplified expressions might
+     * fail, so that they cannot simply be discarded. Only a division by
+     * something other than a constant can fail.
+     */
+    private static boolean canFail(List<ExpressionNode> exprs) {
+        for (ExpressionNode expr : exprs) {
+            if (canFail(expr)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tell whether evaluating an expression might fail: that is,
+     * whether it divides by anything but a nonzero constant.
+     */
+    static boolean canFail(ExpressionNode expr) {
+        if (expr instanceof BinaryOperation) {
+            BinaryOperation binary = (BinaryOperation) expr;
+            if (binary.getOperator().equals(BinaryOperation.DIV)
+                    && !(binary.getRight() instanceof Constant
+                         && ((Constant) binary.getRight()).getValue() != 0)) {
+                return true;
+            }
+            return canFail(binary.getLeft()) || canFail(binary.getRight());
+        } else if (expr instanceof UnaryOperation) {
+            return canFail(((UnaryOperation) expr).getExpr());
+        } else if (expr instanceof SquareRoot) {
+            return canFail(((SquareRoot) expr).getExpr());
+        }
+        return false;
+    }
+}
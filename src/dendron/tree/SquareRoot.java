@@ -0,0 +1,92 @@
+package dendron.tree;
+
+import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The integer square root ("#") of a Dendron expression.
+ *
+ * @author William Johnson
+ */
+public class SquareRoot implements ExpressionNode {
+    /** the token for square root */
+    public static final String SQRT = "#";
+
+    /** the expression whose root is taken */
+    private final ExpressionNode expr;
+
+    /**
+     * Create a square root node.
+     *
+     * @param expr the expression whose root is taken
+     */
+    public SquareRoot(ExpressionNode expr) {
+        this.expr = expr;
+    }
+
+    /**
+     * Show the expression whose root is taken
+     * @return the operand of this node
+     */
+    public ExpressionNode getExpr() {
+        return this.expr;
+    }
+
+    /**
+     * Print the square root on standard output.
+     */
+    @Override
+    public void infixDisplay() {
+        System.out.print(SQRT + "( ");
+        this.expr.infixDisplay();
+        System.out.print(" )");
+    }
+
+    /**
+     * Resolve the variables in the operand.
+     *
+     * @param symbols the program's symbol table
+     */
+    @Override
+    public void resolve(SymbolTable symbols) {
+        this.expr.resolve(symbols);
+    }
+
+    /**
+     * Generate the operand's code followed by a SQRT instruction.
+     *
+     * @return the Machine Instructions for this node
+     */
+    @Override
+    public List<Machine.Instruction> emit() {
+        List<Machine.Instruction> code = new ArrayList<>();
+        emit(code);
+        return code;
+    }
+
+    /**
+     * Append the operand's code followed by a SQRT instruction.
+     *
+     * @param code the instruction list being generated
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        this.expr.emit(code);
+        code.add(new Machine.SquareRoot());
+    }
+
+    /**
+     * Evaluate the operand and take its root, truncated the same
+     * way the Machine's SQRT instruction does.
+     *
+     * @param frame the variable values, indexed by slot
+     * @return the integer square root
+     */
+    @Override
+    public int evaluate(int[] frame) {
+        return (int) Math.pow(this.expr.evaluate(frame), 0.5);
+    }
+}
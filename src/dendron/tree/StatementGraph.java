@@ -0,0 +1,301 @@
+package dendron.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * The dependences between a program's statements, through the
+ * variables they read and write, and a way of running statements that
+ * do not depend on each other at the same time.
+ *
+ * A statement depends on the last earlier statement that assigns a
+ * variable it reads or assigns, and an assignment also depends on every
+ * earlier statement that reads the variable's previous value. Each
+ * statement is put at the lowest level above all the statements it
+ * depends on. The statements of one level are then independent, so the
+ * levels are run one after another and the statements within a level
+ * are shared out among the threads of a fork-join pool.
+ *
+ * The program's output is the same as if it had run in order. The
+ * values of "@" statements are saved as they are computed and written
+ * in program order. Statements that can divide by zero are run in
+ * program order relative to each other, each at a level above every
+ * earlier "@". Before one runs, all the output that comes before it in
+ * the program is written, and none of the output that comes after.
+ *
+ * @author William Johnson
+ */
+public class StatementGraph {
+
+    /** levels with fewer statements than this run on one thread */
+    private static final int THRESHOLD = 256;
+
+    /**
+     * One statement, ready to run.
+     */
+    private interface Step {
+        /**
+         * Run the statement.
+         * @param frame the variable values, indexed by slot
+         * @param printed the values of the program's "@" statements,
+         *                in program order
+         */
+        void run(int[] frame, int[] printed);
+    }
+
+    /** the statements, sorted by level and then into program order */
+    private final Step[] steps;
+    /** where each level starts in steps, with the end of the last at the end */
+    private final int[] levelStart;
+    /** how many values must be printed before each level runs */
+    private final int[] flushBefore;
+    /** how many "@" statements the program has */
+    private final int prints;
+
+    /**
+     * Find the dependences between a program's statements.
+     *
+     * @param statements the program's resolved statements, in order
+     */
+    public StatementGraph(List<ActionNode> statements) {
+        int n = statements.size();
+        int slots = 0;
+        List<int[]> reads = new ArrayList<>(n);
+        for (ActionNode statement : statements) {
+            List<Integer> slotsRead = new ArrayList<>();
+            reads(expression(statement), slotsRead);
+            int[] array = new int[slotsRead.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = slotsRead.get(i);
+                slots = Math.max(slots, array[i] + 1);
+            }
+            reads.add(array);
+            if (statement instanceof Assignment) {
+                slots = Math.max(slots, ((Assignment) statement).getSlot() + 1);
+            }
+        }
+
+        // the level of the last statement to assign each slot, and the
+        // highest level of any statement that has read that value
+        int[] writer = new int[slots];
+        int[] reader = new int[slots];
+        Arrays.fill(writer, -1);
+        Arrays.fill(reader, -1);
+        int lastFailing = -1;
+        int lastPrint = -1;
+        int levels = 0;
+        int[] level = new int[n];
+        List<Integer> flushes = new ArrayList<>();
+        int printCount = 0;
+        for (int s = 0; s < n; s++) {
+            ActionNode statement = statements.get(s);
+            int l = 0;
+            for (int slot : reads.get(s)) {
+                l = Math.max(l, writer[slot] + 1);
+            }
+            if (statement instanceof Assignment) {
+                int slot = ((Assignment) statement).getSlot();
+                l = Math.max(l, Math.max(writer[slot], reader[slot]) + 1);
+            }
+            boolean failing = Simplifier.canFail(expression(statement));
+            if (failing) {
+                l = Math.max(l, Math.max(lastFailing, lastPrint) + 1);
+                lastFailing = l;
+            }
+            for (int slot : reads.get(s)) {
+                reader[slot] = Math.max(reader[slot], l);
+            }
+            if (statement instanceof Assignment) {
+                int slot = ((Assignment) statement).getSlot();
+                writer[slot] = l;
+                reader[slot] = -1;
+            } else {
+                lastPrint = Math.max(lastPrint, l);
+            }
+            while (flushes.size() <= l) {
+                flushes.add(0);
+            }
+            if (failing) {
+                flushes.set(l, printCount);
+            }
+            if (statement instanceof Print) {
+                printCount++;
+            }
+            level[s] = l;
+            levels = Math.max(levels, l + 1);
+        }
+        this.prints = printCount;
+
+        this.levelStart = new int[levels + 1];
+        for (int s = 0; s < n; s++) {
+            this.levelStart[level[s] + 1]++;
+        }
+        for (int l = 0; l < levels; l++) {
+            this.levelStart[l + 1] += this.levelStart[l];
+        }
+        this.flushBefore = new int[levels];
+        for (int l = 0; l < levels; l++) {
+            this.flushBefore[l] = flushes.get(l);
+        }
+        this.steps = new Step[n];
+        int[] next = Arrays.copyOf(this.levelStart, levels);
+        int ordinal = 0;
+        for (int s = 0; s < n; s++) {
+            ActionNode statement = statements.get(s);
+            if (statement instanceof Print) {
+                this.steps[next[level[s]]++] = print(ordinal++, ((Print) statement).getExpr());
+            } else {
+                Consumer<int[]> assignment = ClosureCompiler.compile(statement);
+                this.steps[next[level[s]]++] = (frame, printed) -> assignment.accept(frame);
+            }
+        }
+    }
+
+    /**
+     * Build the step for an "@" statement, which saves its value to be
+     * printed later.
+     */
+    private static Step print(int ordinal, ExpressionNode expr) {
+        ToIntFunction<int[]> value = ClosureCompiler.compile(expr);
+        return (frame, printed) -> printed[ordinal] = value.applyAsInt(frame);
+    }
+
+    /**
+     * Find the expression a statement evaluates.
+     */
+    private static ExpressionNode expression(ActionNode statement) {
+        if (statement instanceof Assignment) {
+            return ((Assignment) statement).getRhs();
+        }
+        return ((Print) statement).getExpr();
+    }
+
+    /**
+     * Collect the slots an expression reads.
+     */
+    private static void reads(ExpressionNode expr, List<Integer> slots) {
+        if (expr instanceof Variable) {
+            slots.add(((Variable) expr).getSlot());
+        } else if (expr instanceof UnaryOperation) {
+            reads(((UnaryOperation) expr).getExpr(), slots);
+        } else if (expr instanceof SquareRoot) {
+            reads(((SquareRoot) expr).getExpr(), slots);
+        } else if (expr instanceof BinaryOperation) {
+            reads(((BinaryOperation) expr).getLeft(), slots);
+            reads(((BinaryOperation) expr).getRight(), slots);
+        }
+    }
+
+    /**
+     * Show how many levels the statements were divided into. A program
+     * whose statements all depend on the one before has one level per
+     * statement; one whose statements are all independent has one level.
+     * @return the number of levels
+     */
+    public int getLevelCount() {
+        return this.flushBefore.length;
+    }
+
+    /**
+     * Show how many statements the largest level has
+     * @return the most statements that can run at once
+     */
+    public int getWidestLevel() {
+        int widest = 0;
+        for (int l = 0; l < getLevelCount(); l++) {
+            widest = Math.max(widest, this.levelStart[l + 1] - this.levelStart[l]);
+        }
+        return widest;
+    }
+
+    /**
+     * Run the program, one level at a time, writing the values of its
+     * "@" statements to standard output.
+     *
+     * @param frame the variable values, indexed by slot
+     * @param pool the threads to share the statements of each level among
+     */
+    public void execute(int[] frame, ForkJoinPool pool) {
+        int[] printed = new int[this.prints];
+        int flushed = 0;
+        for (int l = 0; l < getLevelCount(); l++) {
+            flushed = flush(printed, flushed, this.flushBefore[l]);
+            int start = this.levelStart[l];
+            int end = this.levelStart[l + 1];
+            if (end - start < THRESHOLD) {
+                run(frame, printed, start, end);
+            } else {
+                pool.invoke(new Level(this, frame, printed, start, end));
+            }
+        }
+        flush(printed, flushed, this.prints);
+    }
+
+    /**
+     * Print saved values that have not been printed yet.
+     *
+     * @param printed the values of the "@" statements
+     * @param from how many have already been printed
+     * @param to how many should have been printed afterward
+     * @return how many have been printed
+     */
+    private static int flush(int[] printed, int from, int to) {
+        for (int i = from; i < to; i++) {
+            System.out.println("=== " + printed[i]);
+        }
+        return Math.max(from, to);
+    }
+
+    /**
+     * Run a range of statements on the current thread.
+     */
+    private void run(int[] frame, int[] printed, int start, int end) {
+        for (int i = start; i < end; i++) {
+            this.steps[i].run(frame, printed);
+        }
+    }
+
+    /**
+     * Part of a level, run by dividing it in half until the pieces are
+     * small enough to run on one thread.
+     */
+    private static final class Level extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final StatementGraph graph;
+        private final int[] frame;
+        private final int[] printed;
+        private final int start;
+        private final int end;
+
+        /**
+         * Describe a range of statements to run.
+         */
+        Level(StatementGraph graph, int[] frame, int[] printed, int start, int end) {
+            this.graph = graph;
+            this.frame = frame;
+            this.printed = printed;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Run the range, splitting it if it is large.
+         */
+        @Override
+        protected void compute() {
+            if (this.end - this.start <= THRESHOLD) {
+                this.graph.run(this.frame, this.printed, this.start, this.end);
+            } else {
+                int middle = (this.start + this.end) >>> 1;
+                invokeAll(new Level(this.graph, this.frame, this.printed, this.start, middle),
+                        new Level(this.graph, this.frame, this.printed, middle, this.end));
+            }
+        }
+    }
+}
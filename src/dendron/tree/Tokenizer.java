@@ -0,0 +1,98 @@
+package dendron.tree;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Split Dendron source text into whitespace-separated tokens,
+ * reading the text only as far as the next token requires.
+ * Only the current token is ever held in memory, so arbitrarily
+ * long programs can be read.
+ *
+ * @author William Johnson
+ */
+public class Tokenizer implements Iterator<String> {
+    /** how many characters to read from the source at a time */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** where the source text comes from */
+    private final Reader in;
+    /** characters read from the source but not yet tokenized */
+    private final char[] buffer;
+    /** the position of the next unexamined character in buffer */
+    private int pos;
+    /** the number of valid characters in buffer, or -1 at end of input */
+    private int limit;
+    /** collects the characters of the current token */
+    private final StringBuilder token;
+
+    /**
+     * Create a tokenizer for some Dendron source text.
+     *
+     * @param in the source text; it is not closed by this class
+     */
+    public Tokenizer(Reader in) {
+        this.in = in;
+        this.buffer = new char[BUFFER_SIZE];
+        this.pos = 0;
+        this.limit = 0;
+        this.token = new StringBuilder();
+    }
+
+    /**
+     * Make sure there are characters available in the buffer.
+     *
+     * @return false if the source has been exhausted
+     */
+    private boolean fill() {
+        if (this.pos < this.limit) {
+            return true;
+        }
+        if (this.limit < 0) {
+            return false;
+        }
+        try {
+            this.limit = this.in.read(this.buffer);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        this.pos = 0;
+        return this.limit > 0 || (this.limit == 0 && fill());
+    }
+
+    /**
+     * Skip whitespace and report whether another token follows.
+     *
+     * @return true if there is at least one more token
+     */
+    @Override
+    public boolean hasNext() {
+        while (fill()) {
+            if (!Character.isWhitespace(this.buffer[this.pos])) {
+                return true;
+            }
+            this.pos++;
+        }
+        return false;
+    }
+
+    /**
+     * Read the next token.
+     *
+     * @return the characters up to the next whitespace or end of input
+     */
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        this.token.setLength(0);
+        while (fill() && !Character.isWhitespace(this.buffer[this.pos])) {
+            this.token.append(this.buffer[this.pos++]);
+        }
+        return this.token.toString();
+    }
+}
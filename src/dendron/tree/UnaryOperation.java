@@ -0,0 +1,90 @@
+package dendron.tree;
+
+import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The unary minus ("_") operation on a Dendron expression.
+ *
+ * @author William Johnson
+ */
+public class UnaryOperation implements ExpressionNode {
+    /** the token for negation */
+    public static final String NEG = "_";
+
+    /** the expression being negated */
+    private final ExpressionNode expr;
+
+    /**
+     * Create a negation node.
+     *
+     * @param expr the expression being negated
+     */
+    public UnaryOperation(ExpressionNode expr) {
+        this.expr = expr;
+    }
+
+    /**
+     * Show the expression being negated
+     * @return the operand of this node
+     */
+    public ExpressionNode getExpr() {
+        return this.expr;
+    }
+
+    /**
+     * Print the negation on standard output.
+     */
+    @Override
+    public void infixDisplay() {
+        System.out.print(NEG);
+        this.expr.infixDisplay();
+    }
+
+    /**
+     * Resolve the variables in the operand.
+     *
+     * @param symbols the program's symbol table
+     */
+    @Override
+    public void resolve(SymbolTable symbols) {
+        this.expr.resolve(symbols);
+    }
+
+    /**
+     * Generate the operand's code followed by a NEG instruction.
+     *
+     * @return the Machine Instructions for this node
+     */
+    @Override
+    public List<Machine.Instruction> emit() {
+        List<Machine.Instruction> code = new ArrayList<>();
+        emit(code);
+        return code;
+    }
+
+    /**
+     * Append the operand's code followed by a NEG instruction.
+     *
+     * @param code the instruction list being generated
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        this.expr.emit(code);
+        code.add(new Machine.Negate());
+    }
+
+    /**
+     * Evaluate the operand and negate it.
+     *
+     * @param frame the variable values, indexed by slot
+     * @return the negated value
+     */
+    @Override
+    public int evaluate(int[] frame) {
+        return -this.expr.evaluate(frame);
+    }
+}
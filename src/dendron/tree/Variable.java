@@ -0,0 +1,96 @@
+package dendron.tree;
+
+import dendron.machine.Machine;
+import dendron.machine.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A reference to a variable appearing in a Dendron expression.
+ *
+ * @author William Johnson
+ */
+public class Variable implements ExpressionNode {
+    /** the name of the variable */
+    private final String name;
+    /** the frame slot of the variable, once resolved */
+    private int slot;
+
+    /**
+     * Create a variable reference node.
+     *
+     * @param name the name of the variable
+     */
+    public Variable(String name) {
+        this.name = name;
+        this.slot = -1;
+    }
+
+    /**
+     * Show the name of the variable
+     * @return the name of the variable
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Print the variable name on standard output.
+     */
+    @Override
+    public void infixDisplay() {
+        System.out.print(this.name);
+    }
+
+    /**
+     * Show the frame slot of the variable
+     * @return the slot number, or -1 if not yet resolved
+     */
+    public int getSlot() {
+        return this.slot;
+    }
+
+    /**
+     * Look up the slot of the variable; it must already have been assigned.
+     *
+     * @param symbols the program's symbol table
+     */
+    @Override
+    public void resolve(SymbolTable symbols) {
+        this.slot = symbols.load(this.name);
+    }
+
+    /**
+     * Generate a single LOAD instruction for the variable.
+     *
+     * @return the Machine Instructions for this node
+     */
+    @Override
+    public List<Machine.Instruction> emit() {
+        List<Machine.Instruction> code = new ArrayList<>();
+        emit(code);
+        return code;
+    }
+
+    /**
+     * Append a single LOAD instruction for the variable.
+     *
+     * @param code the instruction list being generated
+     */
+    @Override
+    public void emit(List<Machine.Instruction> code) {
+        code.add(new Machine.Load(this.slot, this.name));
+    }
+
+    /**
+     * Fetch the current value of the variable from its slot.
+     *
+     * @param frame the variable values, indexed by slot
+     * @return the value of the variable
+     */
+    @Override
+    public int evaluate(int[] frame) {
+        return frame[this.slot];
+    }
+}